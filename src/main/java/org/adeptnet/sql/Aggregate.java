@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * Aggregate function for SQLStreams#groupAggregate. The state of a group is a
+ * single long, doubles are kept as their raw long bits, so the states of all
+ * groups live in one primitive array and can be spilled and merged without
+ * boxing
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ * @param <T> the type of the rows
+ */
+public final class Aggregate<T> {
+
+    /**
+     *
+     * Folds a row into the state of its group
+     *
+     * @param <T> the type of the rows
+     */
+    @FunctionalInterface
+    interface Accumulator<T> {
+
+        long accumulate(long state, T row);
+    }
+
+    final boolean floating;
+    final long initial;
+    final Accumulator<T> accumulator;
+    final java.util.function.LongBinaryOperator merge;
+
+    private Aggregate(final boolean floating, final long initial, final Accumulator<T> accumulator, final java.util.function.LongBinaryOperator merge) {
+        this.floating = floating;
+        this.initial = initial;
+        this.accumulator = accumulator;
+        this.merge = merge;
+    }
+
+    private static long bits(final double value) {
+        return Double.doubleToRawLongBits(value);
+    }
+
+    private static double value(final long bits) {
+        return Double.longBitsToDouble(bits);
+    }
+
+    /**
+     *
+     * @param <T> the type of the rows
+     * @return number of rows, read with AggregateGroup#getLong
+     */
+    public static <T> Aggregate<T> count() {
+        return new Aggregate<>(false, 0, (state, row) -> state + 1, Long::sum);
+    }
+
+    /**
+     *
+     * @param <T> the type of the rows
+     * @param function value of a row
+     * @return sum, read with AggregateGroup#getLong
+     */
+    public static <T> Aggregate<T> sumLong(final java.util.function.ToLongFunction<? super T> function) {
+        return new Aggregate<>(false, 0, (state, row) -> state + function.applyAsLong(row), Long::sum);
+    }
+
+    /**
+     *
+     * @param <T> the type of the rows
+     * @param function value of a row
+     * @return minimum, Long.MAX_VALUE for no rows, read with
+     * AggregateGroup#getLong
+     */
+    public static <T> Aggregate<T> minLong(final java.util.function.ToLongFunction<? super T> function) {
+        return new Aggregate<>(false, Long.MAX_VALUE, (state, row) -> Math.min(state, function.applyAsLong(row)), Math::min);
+    }
+
+    /**
+     *
+     * @param <T> the type of the rows
+     * @param function value of a row
+     * @return maximum, Long.MIN_VALUE for no rows, read with
+     * AggregateGroup#getLong
+     */
+    public static <T> Aggregate<T> maxLong(final java.util.function.ToLongFunction<? super T> function) {
+        return new Aggregate<>(false, Long.MIN_VALUE, (state, row) -> Math.max(state, function.applyAsLong(row)), Math::max);
+    }
+
+    /**
+     *
+     * @param <T> the type of the rows
+     * @param function value of a row
+     * @return sum, read with AggregateGroup#getDouble
+     */
+    public static <T> Aggregate<T> sumDouble(final java.util.function.ToDoubleFunction<? super T> function) {
+        return new Aggregate<>(true, bits(0), (state, row) -> bits(value(state) + function.applyAsDouble(row)), (a, b) -> bits(value(a) + value(b)));
+    }
+
+    /**
+     *
+     * @param <T> the type of the rows
+     * @param function value of a row
+     * @return minimum, positive infinity for no rows, read with
+     * AggregateGroup#getDouble
+     */
+    public static <T> Aggregate<T> minDouble(final java.util.function.ToDoubleFunction<? super T> function) {
+        return new Aggregate<>(true, bits(Double.POSITIVE_INFINITY), (state, row) -> bits(Math.min(value(state), function.applyAsDouble(row))), (a, b) -> bits(Math.min(value(a), value(b))));
+    }
+
+    /**
+     *
+     * @param <T> the type of the rows
+     * @param function value of a row
+     * @return maximum, negative infinity for no rows, read with
+     * AggregateGroup#getDouble
+     */
+    public static <T> Aggregate<T> maxDouble(final java.util.function.ToDoubleFunction<? super T> function) {
+        return new Aggregate<>(true, bits(Double.NEGATIVE_INFINITY), (state, row) -> bits(Math.max(value(state), function.applyAsDouble(row))), (a, b) -> bits(Math.max(value(a), value(b))));
+    }
+}
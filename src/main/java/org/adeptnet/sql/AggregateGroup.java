@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * Key and aggregated values of one group of SQLStreams#groupAggregate, values
+ * are indexed in the order of the Aggregates
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public final class AggregateGroup {
+
+    private final long key;
+    private final long[] states;
+    private final boolean[] floating;
+
+    AggregateGroup(final long key, final long[] states, final boolean[] floating) {
+        this.key = key;
+        this.states = states;
+        this.floating = floating;
+    }
+
+    /**
+     *
+     * @return key of the group
+     */
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     *
+     * @return number of aggregated values
+     */
+    public int size() {
+        return states.length;
+    }
+
+    /**
+     *
+     * @param index 0 based index of the Aggregate
+     * @return value of a count, sumLong, minLong or maxLong
+     */
+    public long getLong(final int index) {
+        return floating[index] ? (long) Double.longBitsToDouble(states[index]) : states[index];
+    }
+
+    /**
+     *
+     * @param index 0 based index of the Aggregate
+     * @return value of any Aggregate
+     */
+    public double getDouble(final int index) {
+        return floating[index] ? Double.longBitsToDouble(states[index]) : states[index];
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("AggregateGroup[").append(key);
+        for (int i = 0; i < states.length; i++) {
+            sb.append(", ");
+            if (floating[i]) {
+                sb.append(getDouble(i));
+            } else {
+                sb.append(states[i]);
+            }
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Collects point lookups by key and loads them with one query per batch. The
+ * SQL selects the rows for a Collection of keys with IN (:keys), which is
+ * expanded to a bucketed IN list. A batch is dispatched when the window after
+ * its first key passes, when it reaches the maximum batch size or on an
+ * explicit dispatch. Keys requested more than once in a batch share one
+ * future, and with the near cache enabled across batches as well
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ * @param <K> Type of the keys
+ * @param <V> Type of the loaded values
+ */
+public class BatchLoader<K, V> {
+
+    public static final String KEYS_PARAMETER = "keys";
+
+    private static final java.util.concurrent.ScheduledThreadPoolExecutor TIMER = new java.util.concurrent.ScheduledThreadPoolExecutor(1, runnable -> {
+        final Thread thread = new Thread(runnable, "SQLBatchLoaderTimer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final java.util.concurrent.ExecutorService DEFAULT_EXECUTOR = java.util.concurrent.Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "SQLBatchLoader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final FunctionalSql fsql;
+    private final String sql;
+    private final SQLFunction<java.sql.ResultSet, K> keyFunction;
+    private final SQLFunction<java.sql.ResultSet, V> rowFunction;
+    private final Object lock = new Object();
+    private java.util.Map<String, ?> params = java.util.Collections.emptyMap();
+    private long windowNanos = TimeUnit.MILLISECONDS.toNanos(2);
+    private int maxBatchSize = 256;
+    private java.util.concurrent.Executor executor = DEFAULT_EXECUTOR;
+    private volatile java.util.concurrent.ConcurrentMap<K, CompletableFuture<V>> cache;
+    private java.util.Map<K, CompletableFuture<V>> pending = new java.util.LinkedHashMap<>();
+    private java.util.concurrent.ScheduledFuture<?> scheduled;
+
+    /**
+     *
+     * @param fsql FunctionalSql to query with
+     * @param sql SQL Statement selecting the rows with IN (:keys)
+     * @param keyFunction SQLFunction that reads the key of a row
+     * @param rowFunction SQLFunction that transforms ResultSet to V
+     */
+    BatchLoader(final FunctionalSql fsql, final String sql, final SQLFunction<java.sql.ResultSet, K> keyFunction, final SQLFunction<java.sql.ResultSet, V> rowFunction) {
+        this.fsql = fsql;
+        this.sql = sql;
+        this.keyFunction = keyFunction;
+        this.rowFunction = rowFunction;
+    }
+
+    /**
+     *
+     * @param params Map with further Named Parameters of the SQL Statement
+     * @return this
+     */
+    public BatchLoader<K, V> withParameters(final java.util.Map<String, ?> params) {
+        this.params = params;
+        return this;
+    }
+
+    /**
+     *
+     * @param window time a batch collects keys after its first key, zero to
+     * only dispatch explicitly or when full
+     * @return this
+     */
+    public BatchLoader<K, V> withWindow(final java.time.Duration window) {
+        if (window.isNegative()) {
+            throw new IllegalArgumentException("window can not be negative");
+        }
+        this.windowNanos = window.toNanos();
+        return this;
+    }
+
+    /**
+     *
+     * @param maxBatchSize number of keys that dispatches a batch immediately
+     * @return this
+     */
+    public BatchLoader<K, V> withMaxBatchSize(final int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize has to be positive");
+        }
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     *
+     * @param executor Executor that runs the batch queries, defaults to a
+     * shared pool of daemon threads
+     * @return this
+     */
+    public BatchLoader<K, V> withExecutor(final java.util.concurrent.Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * The near cache keeps every loaded value until it is cleared, so it suits
+     * a loader per request or per unit of work
+     *
+     * @param enabled true to keep loaded values across batches
+     * @return this
+     */
+    public BatchLoader<K, V> withCache(final boolean enabled) {
+        this.cache = enabled ? new java.util.concurrent.ConcurrentHashMap<>() : null;
+        return this;
+    }
+
+    /**
+     *
+     * @param key key to load
+     * @return CompletableFuture of the value, completed with null if there is
+     * no row for key
+     */
+    public CompletableFuture<V> load(final K key) {
+        final java.util.concurrent.ConcurrentMap<K, CompletableFuture<V>> near = cache;
+        if (near != null) {
+            final CompletableFuture<V> cached = near.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        java.util.Map<K, CompletableFuture<V>> batch = null;
+        CompletableFuture<V> future;
+        synchronized (lock) {
+            future = pending.get(key);
+            if (future != null) {
+                return future;
+            }
+            future = new CompletableFuture<>();
+            if (near != null) {
+                final CompletableFuture<V> cached = near.putIfAbsent(key, future);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            pending.put(key, future);
+            if (pending.size() >= maxBatchSize) {
+                batch = takePending();
+            } else if (pending.size() == 1 && windowNanos > 0) {
+                scheduled = TIMER.schedule(this::dispatch, windowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (batch != null) {
+            execute(batch);
+        }
+        return future;
+    }
+
+    /**
+     *
+     * @param keys keys to load
+     * @return CompletableFuture of the values by key, keys without a row are
+     * left out
+     */
+    public CompletableFuture<java.util.Map<K, V>> loadMany(final java.util.Collection<? extends K> keys) {
+        final java.util.Map<K, CompletableFuture<V>> futures = new java.util.LinkedHashMap<>(keys.size() * 4 / 3 + 1);
+        for (final K key : keys) {
+            futures.put(key, load(key));
+        }
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[futures.size()])).thenApply(ignored -> {
+            final java.util.Map<K, V> values = new java.util.LinkedHashMap<>(futures.size() * 4 / 3 + 1);
+            for (final java.util.Map.Entry<K, CompletableFuture<V>> entry : futures.entrySet()) {
+                final V value = entry.getValue().join();
+                if (value != null) {
+                    values.put(entry.getKey(), value);
+                }
+            }
+            return values;
+        });
+    }
+
+    /**
+     * Dispatches the keys collected so far without waiting for the window
+     */
+    public void dispatch() {
+        final java.util.Map<K, CompletableFuture<V>> batch;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = takePending();
+        }
+        execute(batch);
+    }
+
+    /**
+     *
+     * @param key key to remove from the near cache
+     */
+    public void clear(final K key) {
+        final java.util.concurrent.ConcurrentMap<K, CompletableFuture<V>> near = cache;
+        if (near != null) {
+            near.remove(key);
+        }
+    }
+
+    /**
+     * Removes all keys from the near cache
+     */
+    public void clearAll() {
+        final java.util.concurrent.ConcurrentMap<K, CompletableFuture<V>> near = cache;
+        if (near != null) {
+            near.clear();
+        }
+    }
+
+    private java.util.Map<K, CompletableFuture<V>> takePending() {
+        final java.util.Map<K, CompletableFuture<V>> batch = pending;
+        pending = new java.util.LinkedHashMap<>();
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+        return batch;
+    }
+
+    private void execute(final java.util.Map<K, CompletableFuture<V>> batch) {
+        try {
+            executor.execute(() -> load(batch));
+        } catch (java.util.concurrent.RejectedExecutionException ex) {
+            fail(batch, ex);
+        }
+    }
+
+    /**
+     *
+     * @param batch futures by key to complete with one query
+     */
+    private void load(final java.util.Map<K, CompletableFuture<V>> batch) {
+        final java.util.Map<String, Object> query = new java.util.HashMap<>(params);
+        query.put(KEYS_PARAMETER, new java.util.ArrayList<>(batch.keySet()));
+        try {
+            final java.util.Map<K, V> values = fsql.executeQuery(fsql.namedParamerterQuery(sql, query), rs -> {
+                final java.util.Map<K, V> rows = new java.util.HashMap<>(batch.size() * 4 / 3 + 1);
+                while (rs.next()) {
+                    rows.put(keyFunction.apply(rs), rowFunction.apply(rs));
+                }
+                return rows;
+            });
+            for (final java.util.Map.Entry<K, CompletableFuture<V>> entry : batch.entrySet()) {
+                entry.getValue().complete(values.get(entry.getKey()));
+            }
+        } catch (java.sql.SQLException | RuntimeException ex) {
+            fail(batch, ex);
+        }
+    }
+
+    private void fail(final java.util.Map<K, CompletableFuture<V>> batch, final Exception ex) {
+        final java.util.concurrent.ConcurrentMap<K, CompletableFuture<V>> near = cache;
+        for (final java.util.Map.Entry<K, CompletableFuture<V>> entry : batch.entrySet()) {
+            if (near != null) {
+                near.remove(entry.getKey(), entry.getValue());
+            }
+            entry.getValue().completeExceptionally(ex);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ *
+ * Binds the properties of a bean to the parameters of a
+ * NamedParameterStatement. A plan is built once per bean class and JDBC SQL,
+ * resolving each parameter to a MethodHandle of its getter, record accessor
+ * or public field and to a setter for its type, with the SQL type for nulls
+ * taken from ParameterMetaData. Primitive properties are bound without boxing
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+final class BindingPlan {
+
+    private static final ClassValue<java.util.concurrent.ConcurrentMap<String, BindingPlan>> PLANS = new ClassValue<java.util.concurrent.ConcurrentMap<String, BindingPlan>>() {
+        @Override
+        protected java.util.concurrent.ConcurrentMap<String, BindingPlan> computeValue(final Class<?> type) {
+            return new java.util.concurrent.ConcurrentHashMap<>();
+        }
+    };
+
+    private final Binder[] binders;
+
+    private BindingPlan(final Binder[] binders) {
+        this.binders = binders;
+    }
+
+    /**
+     *
+     * @param type bean class
+     * @param sql JDBC SQL of the statement, identifies the parameter indices
+     * @param fields parameter indices by name
+     * @param stmt PreparedStatement to read ParameterMetaData from when
+     * building the plan
+     * @return cached BindingPlan
+     * @throws SQLException if a parameter has no property on type
+     */
+    static BindingPlan of(final Class<?> type, final String sql, final java.util.Map<String, java.util.List<Integer>> fields, final PreparedStatement stmt) throws SQLException {
+        final java.util.concurrent.ConcurrentMap<String, BindingPlan> plans = PLANS.get(type);
+        BindingPlan plan = plans.get(sql);
+        if (plan == null) {
+            plan = build(type, fields, stmt);
+            plans.putIfAbsent(sql, plan);
+        }
+        return plan;
+    }
+
+    /**
+     *
+     * @param stmt PreparedStatement to bind
+     * @param bean bean with a property per parameter
+     * @throws SQLException if underlying operation throws SQLException
+     */
+    void bind(final PreparedStatement stmt, final Object bean) throws SQLException {
+        try {
+            for (final Binder binder : binders) {
+                binder.bind(stmt, bean);
+            }
+        } catch (SQLException | RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new SQLException(ex.getMessage(), ex);
+        }
+    }
+
+    private static BindingPlan build(final Class<?> type, final java.util.Map<String, java.util.List<Integer>> fields, final PreparedStatement stmt) throws SQLException {
+        java.sql.ParameterMetaData meta;
+        try {
+            meta = stmt.getParameterMetaData();
+        } catch (SQLException | RuntimeException ex) {
+            meta = null;
+        }
+        final Binder[] binders = new Binder[fields.size()];
+        int i = 0;
+        for (final java.util.Map.Entry<String, java.util.List<Integer>> entry : fields.entrySet()) {
+            final MethodHandle accessor = accessor(type, entry.getKey());
+            final Class<?> propertyType = accessor.type().returnType();
+            final int[] indices = new int[entry.getValue().size()];
+            final int[] sqlTypes = new int[indices.length];
+            for (int j = 0; j < indices.length; j++) {
+                indices[j] = entry.getValue().get(j);
+                sqlTypes[j] = sqlType(meta, indices[j], propertyType);
+            }
+            binders[i++] = binder(accessor, propertyType, indices, sqlTypes);
+        }
+        return new BindingPlan(binders);
+    }
+
+    /**
+     *
+     * @param type bean class
+     * @param name parameter name
+     * @return MethodHandle of the getter, record accessor or public field for
+     * name, taking the bean as Object
+     * @throws SQLException if type has no such property
+     */
+    private static MethodHandle accessor(final Class<?> type, final String name) throws SQLException {
+        final String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (final String methodName : new String[]{"get" + suffix, "is" + suffix, name}) {
+            final java.lang.reflect.Method method;
+            try {
+                method = type.getMethod(methodName);
+            } catch (NoSuchMethodException ex) {
+                continue;
+            }
+            if (method.getReturnType() == void.class || java.lang.reflect.Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            try {
+                return erase(unreflect(method));
+            } catch (IllegalAccessException ex) {
+                throw new SQLException(String.format("Property %s of %s is not accessible", name, type.getName()), ex);
+            }
+        }
+        try {
+            final java.lang.reflect.Field field = type.getField(name);
+            if (!java.lang.reflect.Modifier.isStatic(field.getModifiers())) {
+                return erase(unreflectGetter(field));
+            }
+        } catch (NoSuchFieldException ex) {
+            //fall through to the exception below
+        } catch (IllegalAccessException ex) {
+            throw new SQLException(String.format("Property %s of %s is not accessible", name, type.getName()), ex);
+        }
+        throw new SQLException(String.format("No property %s on %s", name, type.getName()));
+    }
+
+    private static MethodHandle unreflect(final java.lang.reflect.Method method) throws IllegalAccessException {
+        try {
+            return MethodHandles.publicLookup().unreflect(method);
+        } catch (IllegalAccessException ex) {
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        }
+    }
+
+    private static MethodHandle unreflectGetter(final java.lang.reflect.Field field) throws IllegalAccessException {
+        try {
+            return MethodHandles.publicLookup().unreflectGetter(field);
+        } catch (IllegalAccessException ex) {
+            field.setAccessible(true);
+            return MethodHandles.lookup().unreflectGetter(field);
+        }
+    }
+
+    /**
+     *
+     * @param handle accessor
+     * @return accessor taking Object, with its return type unchanged
+     */
+    private static MethodHandle erase(final MethodHandle handle) {
+        return handle.asType(MethodType.methodType(handle.type().returnType(), Object.class));
+    }
+
+    /**
+     *
+     * @param meta ParameterMetaData, null if the driver does not provide it
+     * @param index parameter index
+     * @param propertyType Java type of the property
+     * @return SQL type to use for null values
+     */
+    private static int sqlType(final java.sql.ParameterMetaData meta, final int index, final Class<?> propertyType) {
+        if (meta != null) {
+            try {
+                return meta.getParameterType(index);
+            } catch (SQLException | RuntimeException ex) {
+                //fall back to the Java type
+            }
+        }
+        if (propertyType == String.class) {
+            return Types.VARCHAR;
+        } else if (propertyType == Long.class) {
+            return Types.BIGINT;
+        } else if (propertyType == Integer.class || propertyType == Short.class || propertyType == Byte.class) {
+            return Types.INTEGER;
+        } else if (propertyType == Double.class || propertyType == Float.class) {
+            return Types.DOUBLE;
+        } else if (propertyType == Boolean.class) {
+            return Types.BOOLEAN;
+        } else if (propertyType == java.math.BigDecimal.class) {
+            return Types.NUMERIC;
+        } else if (propertyType == java.sql.Timestamp.class || propertyType == java.time.LocalDateTime.class) {
+            return Types.TIMESTAMP;
+        } else if (propertyType == java.sql.Date.class || propertyType == java.time.LocalDate.class) {
+            return Types.DATE;
+        } else if (propertyType == byte[].class) {
+            return Types.VARBINARY;
+        }
+        return Types.NULL;
+    }
+
+    private static Binder binder(final MethodHandle handle, final Class<?> type, final int[] indices, final int[] sqlTypes) {
+        if (type == long.class) {
+            return (stmt, bean) -> {
+                final long value = (long) handle.invokeExact(bean);
+                for (final int index : indices) {
+                    stmt.setLong(index, value);
+                }
+            };
+        } else if (type == int.class || type == short.class || type == byte.class) {
+            final MethodHandle intHandle = handle.asType(MethodType.methodType(int.class, Object.class));
+            return (stmt, bean) -> {
+                final int value = (int) intHandle.invokeExact(bean);
+                for (final int index : indices) {
+                    stmt.setInt(index, value);
+                }
+            };
+        } else if (type == double.class || type == float.class) {
+            final MethodHandle doubleHandle = handle.asType(MethodType.methodType(double.class, Object.class));
+            return (stmt, bean) -> {
+                final double value = (double) doubleHandle.invokeExact(bean);
+                for (final int index : indices) {
+                    stmt.setDouble(index, value);
+                }
+            };
+        } else if (type == boolean.class) {
+            return (stmt, bean) -> {
+                final boolean value = (boolean) handle.invokeExact(bean);
+                for (final int index : indices) {
+                    stmt.setBoolean(index, value);
+                }
+            };
+        }
+        final MethodHandle objectHandle = handle.asType(MethodType.methodType(Object.class, Object.class));
+        if (type == String.class) {
+            return (stmt, bean) -> {
+                final String value = (String) (Object) objectHandle.invokeExact(bean);
+                for (int i = 0; i < indices.length; i++) {
+                    if (value == null) {
+                        stmt.setNull(indices[i], sqlTypes[i]);
+                    } else {
+                        stmt.setString(indices[i], value);
+                    }
+                }
+            };
+        } else if (type == Long.class || type == Integer.class || type == Short.class || type == Byte.class) {
+            return (stmt, bean) -> {
+                final Number value = (Number) (Object) objectHandle.invokeExact(bean);
+                for (int i = 0; i < indices.length; i++) {
+                    if (value == null) {
+                        stmt.setNull(indices[i], sqlTypes[i]);
+                    } else {
+                        stmt.setLong(indices[i], value.longValue());
+                    }
+                }
+            };
+        }
+        return (stmt, bean) -> {
+            final Object value = (Object) objectHandle.invokeExact(bean);
+            for (int i = 0; i < indices.length; i++) {
+                if (value == null) {
+                    stmt.setNull(indices[i], sqlTypes[i]);
+                } else {
+                    stmt.setObject(indices[i], value);
+                }
+            }
+        };
+    }
+
+    /**
+     *
+     * Binds one parameter
+     */
+    @FunctionalInterface
+    private interface Binder {
+
+        void bind(PreparedStatement stmt, Object bean) throws Throwable;
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ *
+ * Immutable copy of the ResultSetMetaData of a query. Each FunctionalSql
+ * caches shapes by SQLFingerprint and validates them by column count, so
+ * reading the metadata of a repeated query is a lookup instead of a call per
+ * column to the driver, which is a round trip or a heavy object on several
+ * drivers
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public final class ColumnShape implements ResultSetMetaData {
+
+    private final Column[] columns;
+    private final java.util.Map<String, Integer> indices;
+
+    private ColumnShape(final Column[] columns) {
+        this.columns = columns;
+        final java.util.Map<String, Integer> byLabel = new java.util.HashMap<>(columns.length * 4 / 3 + 1);
+        for (int i = columns.length; i > 0; i--) {
+            byLabel.put(columns[i - 1].label.toUpperCase(java.util.Locale.ROOT), i);
+        }
+        this.indices = java.util.Collections.unmodifiableMap(byLabel);
+    }
+
+    /**
+     *
+     * @param meta ResultSetMetaData to copy
+     * @return ColumnShape
+     * @throws SQLException if underlying operation throws SQLException
+     */
+    public static ColumnShape of(final ResultSetMetaData meta) throws SQLException {
+        final Column[] columns = new Column[meta.getColumnCount()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new Column(meta, i + 1);
+        }
+        return new ColumnShape(columns);
+    }
+
+    /**
+     *
+     * @param columnLabel column label, case insensitive
+     * @return 1 based index of the first column with the label, -1 if none
+     */
+    public int indexOf(final String columnLabel) {
+        final Integer index = indices.get(columnLabel.toUpperCase(java.util.Locale.ROOT));
+        return index == null ? -1 : index;
+    }
+
+    private Column column(final int column) throws SQLException {
+        if (column < 1 || column > columns.length) {
+            throw new SQLException(String.format("Invalid column index %d", column));
+        }
+        return columns[column - 1];
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override
+    public boolean isAutoIncrement(final int column) throws SQLException {
+        return column(column).autoIncrement;
+    }
+
+    @Override
+    public boolean isCaseSensitive(final int column) throws SQLException {
+        return column(column).caseSensitive;
+    }
+
+    @Override
+    public boolean isSearchable(final int column) throws SQLException {
+        return column(column).searchable;
+    }
+
+    @Override
+    public boolean isCurrency(final int column) throws SQLException {
+        return column(column).currency;
+    }
+
+    @Override
+    public int isNullable(final int column) throws SQLException {
+        return column(column).nullable;
+    }
+
+    @Override
+    public boolean isSigned(final int column) throws SQLException {
+        return column(column).signed;
+    }
+
+    @Override
+    public int getColumnDisplaySize(final int column) throws SQLException {
+        return column(column).displaySize;
+    }
+
+    @Override
+    public String getColumnLabel(final int column) throws SQLException {
+        return column(column).label;
+    }
+
+    @Override
+    public String getColumnName(final int column) throws SQLException {
+        return column(column).name;
+    }
+
+    @Override
+    public String getSchemaName(final int column) throws SQLException {
+        return column(column).schema;
+    }
+
+    @Override
+    public int getPrecision(final int column) throws SQLException {
+        return column(column).precision;
+    }
+
+    @Override
+    public int getScale(final int column) throws SQLException {
+        return column(column).scale;
+    }
+
+    @Override
+    public String getTableName(final int column) throws SQLException {
+        return column(column).table;
+    }
+
+    @Override
+    public String getCatalogName(final int column) throws SQLException {
+        return column(column).catalog;
+    }
+
+    @Override
+    public int getColumnType(final int column) throws SQLException {
+        return column(column).type;
+    }
+
+    @Override
+    public String getColumnTypeName(final int column) throws SQLException {
+        return column(column).typeName;
+    }
+
+    @Override
+    public boolean isReadOnly(final int column) throws SQLException {
+        return column(column).readOnly;
+    }
+
+    @Override
+    public boolean isWritable(final int column) throws SQLException {
+        return column(column).writable;
+    }
+
+    @Override
+    public boolean isDefinitelyWritable(final int column) throws SQLException {
+        return column(column).definitelyWritable;
+    }
+
+    @Override
+    public String getColumnClassName(final int column) throws SQLException {
+        return column(column).className;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        throw new SQLException(String.format("Not a wrapper for %s", iface.getName()));
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ColumnShape[");
+        for (int i = 0; i < columns.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(columns[i].label).append(' ').append(columns[i].typeName);
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     *
+     * Metadata of one column
+     */
+    private static final class Column {
+
+        private final String label;
+        private final String name;
+        private final String schema;
+        private final String table;
+        private final String catalog;
+        private final String typeName;
+        private final String className;
+        private final int type;
+        private final int precision;
+        private final int scale;
+        private final int nullable;
+        private final int displaySize;
+        private final boolean autoIncrement;
+        private final boolean caseSensitive;
+        private final boolean searchable;
+        private final boolean currency;
+        private final boolean signed;
+        private final boolean readOnly;
+        private final boolean writable;
+        private final boolean definitelyWritable;
+
+        private Column(final ResultSetMetaData meta, final int column) throws SQLException {
+            label = meta.getColumnLabel(column);
+            name = meta.getColumnName(column);
+            schema = meta.getSchemaName(column);
+            table = meta.getTableName(column);
+            catalog = meta.getCatalogName(column);
+            typeName = meta.getColumnTypeName(column);
+            className = meta.getColumnClassName(column);
+            type = meta.getColumnType(column);
+            precision = meta.getPrecision(column);
+            scale = meta.getScale(column);
+            nullable = meta.isNullable(column);
+            displaySize = meta.getColumnDisplaySize(column);
+            autoIncrement = meta.isAutoIncrement(column);
+            caseSensitive = meta.isCaseSensitive(column);
+            searchable = meta.isSearchable(column);
+            currency = meta.isCurrency(column);
+            signed = meta.isSigned(column);
+            readOnly = meta.isReadOnly(column);
+            writable = meta.isWritable(column);
+            definitelyWritable = meta.isDefinitelyWritable(column);
+        }
+    }
+
+    /**
+     *
+     * ColumnShapes of the queries of one FunctionalSql by SQLFingerprint
+     */
+    static final class Cache {
+
+        private static final int MAX_CACHED = 1024;
+
+        private final java.util.concurrent.ConcurrentMap<String, ColumnShape> shapes = new java.util.concurrent.ConcurrentHashMap<>();
+
+        /**
+         *
+         * @param sql SQL Statement of rs, null to skip the cache
+         * @param rs ResultSet of sql
+         * @return cached ColumnShape of sql if the type, precision and scale
+         * of every column match rs, otherwise a new one that replaces it. The
+         * SQLFingerprint hides literals, so a CAST to DECIMAL(12,0) and one to
+         * DECIMAL(12,2) share an entry
+         * @throws SQLException if underlying operation throws SQLException
+         */
+        ColumnShape of(final String sql, final java.sql.ResultSet rs) throws SQLException {
+            final ResultSetMetaData meta = rs.getMetaData();
+            if (sql == null) {
+                return ColumnShape.of(meta);
+            }
+            final String fingerprint = SQLFingerprint.of(sql);
+            final ColumnShape cached = shapes.get(fingerprint);
+            if (cached != null && matches(cached, meta)) {
+                return cached;
+            }
+            final ColumnShape shape = ColumnShape.of(meta);
+            if (shapes.size() >= MAX_CACHED) {
+                shapes.clear();
+            }
+            shapes.put(fingerprint, shape);
+            return shape;
+        }
+
+        void clear() {
+            shapes.clear();
+        }
+
+        private static boolean matches(final ColumnShape shape, final ResultSetMetaData meta) throws SQLException {
+            if (shape.columns.length != meta.getColumnCount()) {
+                return false;
+            }
+            for (int i = 0; i < shape.columns.length; i++) {
+                final Column column = shape.columns[i];
+                if (column.type != meta.getColumnType(i + 1) || column.precision != meta.getPrecision(i + 1) || column.scale != meta.getScale(i + 1)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * Values of one row copied out of a Row, backed by a single array and
+ * sharing the ColumnShape of the query
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public final class DetachedRow {
+
+    private final ColumnShape shape;
+    private final Object[] values;
+
+    DetachedRow(final ColumnShape shape, final Object[] values) {
+        this.shape = shape;
+        this.values = values;
+    }
+
+    /**
+     * Row function that copies the current row, for example for
+     * FunctionalSql#tail
+     *
+     * @param rs ResultSet positioned on a row
+     * @return DetachedRow with the values of the current row
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     */
+    public static DetachedRow of(final java.sql.ResultSet rs) throws java.sql.SQLException {
+        final ColumnShape shape = rs instanceof ForwardOnlyReadResultSet ? ((ForwardOnlyReadResultSet) rs).getColumnShape() : ColumnShape.of(rs.getMetaData());
+        final Object[] values = new Object[shape.getColumnCount()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rs.getObject(i + 1);
+        }
+        return new DetachedRow(shape, values);
+    }
+
+    /**
+     *
+     * @return ColumnShape of the row
+     */
+    public ColumnShape getColumnShape() {
+        return shape;
+    }
+
+    /**
+     *
+     * @return number of columns
+     */
+    public int getColumnCount() {
+        return values.length;
+    }
+
+    private int index(final String columnLabel) throws SQLDataAccessException {
+        final int column = shape.indexOf(columnLabel);
+        if (column < 0) {
+            throw new SQLDataAccessException(String.format("Unknown column %s", columnLabel));
+        }
+        return column;
+    }
+
+    /**
+     *
+     * @param column 1 based column index
+     * @return value, null if SQL NULL
+     */
+    public Object getObject(final int column) {
+        return values[column - 1];
+    }
+
+    /**
+     *
+     * @param columnLabel column label
+     * @return value, null if SQL NULL
+     * @throws SQLDataAccessException if there is no such column
+     */
+    public Object getObject(final String columnLabel) throws SQLDataAccessException {
+        return getObject(index(columnLabel));
+    }
+
+    /**
+     *
+     * @param column 1 based column index
+     * @return true if the value is SQL NULL
+     */
+    public boolean isNull(final int column) {
+        return values[column - 1] == null;
+    }
+
+    /**
+     *
+     * @param column 1 based column index
+     * @return value, 0 if SQL NULL
+     * @throws ClassCastException if the value is not a Number
+     */
+    public long getLong(final int column) {
+        final Object value = values[column - 1];
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+
+    /**
+     *
+     * @param columnLabel column label
+     * @return value, 0 if SQL NULL
+     * @throws SQLDataAccessException if there is no such column
+     */
+    public long getLong(final String columnLabel) throws SQLDataAccessException {
+        return getLong(index(columnLabel));
+    }
+
+    /**
+     *
+     * @param column 1 based column index
+     * @return value, 0 if SQL NULL
+     * @throws ClassCastException if the value is not a Number
+     */
+    public int getInt(final int column) {
+        final Object value = values[column - 1];
+        return value == null ? 0 : ((Number) value).intValue();
+    }
+
+    /**
+     *
+     * @param columnLabel column label
+     * @return value, 0 if SQL NULL
+     * @throws SQLDataAccessException if there is no such column
+     */
+    public int getInt(final String columnLabel) throws SQLDataAccessException {
+        return getInt(index(columnLabel));
+    }
+
+    /**
+     *
+     * @param column 1 based column index
+     * @return value, 0 if SQL NULL
+     * @throws ClassCastException if the value is not a Number
+     */
+    public double getDouble(final int column) {
+        final Object value = values[column - 1];
+        return value == null ? 0 : ((Number) value).doubleValue();
+    }
+
+    /**
+     *
+     * @param columnLabel column label
+     * @return value, 0 if SQL NULL
+     * @throws SQLDataAccessException if there is no such column
+     */
+    public double getDouble(final String columnLabel) throws SQLDataAccessException {
+        return getDouble(index(columnLabel));
+    }
+
+    /**
+     *
+     * @param column 1 based column index
+     * @return value, false if SQL NULL
+     * @throws ClassCastException if the value is not a Boolean or Number
+     */
+    public boolean getBoolean(final int column) {
+        final Object value = values[column - 1];
+        if (value instanceof Number) {
+            return ((Number) value).intValue() != 0;
+        }
+        return value != null && (Boolean) value;
+    }
+
+    /**
+     *
+     * @param columnLabel column label
+     * @return value, false if SQL NULL
+     * @throws SQLDataAccessException if there is no such column
+     */
+    public boolean getBoolean(final String columnLabel) throws SQLDataAccessException {
+        return getBoolean(index(columnLabel));
+    }
+
+    /**
+     *
+     * @param column 1 based column index
+     * @return value as String, null if SQL NULL
+     */
+    public String getString(final int column) {
+        final Object value = values[column - 1];
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     *
+     * @param columnLabel column label
+     * @return value as String, null if SQL NULL
+     * @throws SQLDataAccessException if there is no such column
+     */
+    public String getString(final String columnLabel) throws SQLDataAccessException {
+        return getString(index(columnLabel));
+    }
+
+    /**
+     *
+     * @return copy of the values
+     */
+    public Object[] toArray() {
+        return values.clone();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return obj instanceof DetachedRow && java.util.Arrays.equals(values, ((DetachedRow) obj).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return java.util.Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DetachedRow%s", java.util.Arrays.toString(values));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * Options for FunctionalSql#exportCsv and FunctionalSql#exportNdjson
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class ExportOptions {
+
+    private int bufferSize = 64 * 1024;
+    private boolean gzip;
+    private boolean header = true;
+    private char delimiter = ',';
+    private String nullValue = "";
+
+    /**
+     *
+     * @param bufferSize bytes encoded before they are written to the channel
+     * @return this
+     */
+    public ExportOptions withBufferSize(final int bufferSize) {
+        if (bufferSize < 64) {
+            throw new IllegalArgumentException("bufferSize has to be at least 64");
+        }
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     *
+     * @param gzip true to write gzip compressed output
+     * @return this
+     */
+    public ExportOptions withGzip(final boolean gzip) {
+        this.gzip = gzip;
+        return this;
+    }
+
+    /**
+     *
+     * @param header true to start a CSV export with the column labels
+     * @return this
+     */
+    public ExportOptions withHeader(final boolean header) {
+        this.header = header;
+        return this;
+    }
+
+    /**
+     *
+     * @param delimiter ASCII field delimiter of a CSV export
+     * @return this
+     */
+    public ExportOptions withDelimiter(final char delimiter) {
+        if (delimiter == '"' || delimiter == '\r' || delimiter == '\n' || delimiter > 127) {
+            throw new IllegalArgumentException(String.format("Invalid delimiter %s", delimiter));
+        }
+        this.delimiter = delimiter;
+        return this;
+    }
+
+    /**
+     *
+     * @param nullValue text for SQL NULL in a CSV export, written as is
+     * @return this
+     */
+    public ExportOptions withNullValue(final String nullValue) {
+        this.nullValue = nullValue;
+        return this;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    public boolean isHeader() {
+        return header;
+    }
+
+    public char getDelimiter() {
+        return delimiter;
+    }
+
+    public String getNullValue() {
+        return nullValue;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * Counts and throughput of an export
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public final class ExportResult {
+
+    private final long rows;
+    private final long encodedBytes;
+    private final long bytes;
+    private final long nanos;
+
+    ExportResult(final long rows, final long encodedBytes, final long bytes, final long nanos) {
+        this.rows = rows;
+        this.encodedBytes = encodedBytes;
+        this.bytes = bytes;
+        this.nanos = nanos;
+    }
+
+    /**
+     *
+     * @return number of rows exported
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     *
+     * @return bytes encoded, before compression
+     */
+    public long getEncodedBytes() {
+        return encodedBytes;
+    }
+
+    /**
+     *
+     * @return bytes written to the channel
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     *
+     * @return duration of the export, including the query, in nanoseconds
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     *
+     * @return encoded megabytes (1000000 bytes) per second
+     */
+    public double getMegabytesPerSecond() {
+        return nanos == 0 ? 0 : encodedBytes * 1000.0 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ExportResult[rows=%d, encodedBytes=%d, bytes=%d, ms=%d, MB/s=%.1f]", rows, encodedBytes, bytes, nanos / 1000000, getMegabytesPerSecond());
+    }
+}
@@ -48,9 +48,39 @@ import java.util.Map;
 public class ForwardOnlyReadResultSet implements java.sql.ResultSet {
 
     private final java.sql.ResultSet rs;
+    private final ColumnShape.Cache shapes;
+    private final String sql;
+    private ColumnShape shape;
 
     public ForwardOnlyReadResultSet(final ResultSet rs) {
+        this(rs, null, null);
+    }
+
+    /**
+     *
+     * @param rs ResultSet to read from
+     * @param shapes ColumnShape.Cache to look up the shape of sql in, may be
+     * null
+     * @param sql SQL Statement of rs, may be null
+     */
+    ForwardOnlyReadResultSet(final ResultSet rs, final ColumnShape.Cache shapes, final String sql) {
         this.rs = rs;
+        this.shapes = shapes;
+        this.sql = sql;
+    }
+
+    /**
+     * Resolved once per ResultSet, from the cache when the SQL Statement is
+     * known
+     *
+     * @return ColumnShape of the ResultSet
+     * @throws SQLException if underlying operation throws SQLException
+     */
+    public ColumnShape getColumnShape() throws SQLException {
+        if (shape == null) {
+            shape = shapes == null ? ColumnShape.of(rs.getMetaData()) : shapes.of(sql, rs);
+        }
+        return shape;
     }
 
     @Override
@@ -249,7 +279,7 @@ public class ForwardOnlyReadResultSet implements java.sql.ResultSet {
 
     @Override
     public ResultSetMetaData getMetaData() throws SQLException {
-        return rs.getMetaData();
+        return getColumnShape();
     }
 
     @Override
@@ -29,15 +29,177 @@ import java.util.stream.Stream;
 public class FunctionalSql {
 
     private static final Logger LOG = Logger.getLogger(FunctionalSql.class.getName());
+    private static final long UNKNOWN_SIZE = Long.MAX_VALUE;
+    private static final int STAGE_BATCH_SIZE = 1000;
 
     final SQLSupplier<java.sql.Connection> conProducer;
+    private final SQLMetrics metrics;
+    private final SQLDeadline deadline;
+    private volatile boolean cancelOnEarlyClose;
+    private final GroupCommit groupCommit;
+    private final boolean inTransaction;
+    private final ColumnShape.Cache shapes;
 
     /**
      *
      * @param conProducer SQL Supplier that will provide the SQL Connection
      */
     public FunctionalSql(final SQLSupplier<java.sql.Connection> conProducer) {
+        this(conProducer, new SQLMetrics(), new ColumnShape.Cache(), null, false, null, false);
+    }
+
+    private FunctionalSql(final SQLSupplier<java.sql.Connection> conProducer, final SQLMetrics metrics, final ColumnShape.Cache shapes, final SQLDeadline deadline, final boolean cancelOnEarlyClose, final GroupCommit groupCommit, final boolean inTransaction) {
         this.conProducer = conProducer;
+        this.metrics = metrics;
+        this.shapes = shapes;
+        this.deadline = deadline;
+        this.cancelOnEarlyClose = cancelOnEarlyClose;
+        this.groupCommit = groupCommit;
+        this.inTransaction = inTransaction;
+    }
+
+    /**
+     * All operations of the returned FunctionalSql have to complete by the
+     * deadline, covering connection acquire, execute and iterating Streams.
+     * Overdue Statements are cancelled by a single shared watchdog thread,
+     * instead of relying on Statement#setQueryTimeout. Long running Streams
+     * can call SQLDeadline#extend while consuming rows.
+     *
+     * @param deadline SQLDeadline for all operations
+     * @return FunctionalSql sharing the Connection supplier and metrics of
+     * this instance
+     */
+    public FunctionalSql withDeadline(final SQLDeadline deadline) {
+        return new FunctionalSql(conProducer, metrics, shapes, deadline, cancelOnEarlyClose, groupCommit, inTransaction);
+    }
+
+    /**
+     *
+     * @param window time a group accepts units after its first unit
+     * @return FunctionalSql whose transactional units are group committed
+     * @see #withGroupCommit(java.time.Duration, int)
+     */
+    public FunctionalSql withGroupCommit(final java.time.Duration window) {
+        return withGroupCommit(window, 256);
+    }
+
+    /**
+     * Units submitted to transactional of the returned FunctionalSql by any
+     * thread run one after the other on one shared Connection, each behind its
+     * own Savepoint, and are committed together once the window after the
+     * first unit passes or the group is full. A failing unit is rolled back to
+     * its Savepoint alone. Callers block until their group is committed, so a
+     * burst of small transactions costs one commit per window instead of one
+     * per transaction
+     *
+     * @param window time a group accepts units after its first unit
+     * @param maxUnits most units per group
+     * @return FunctionalSql sharing the Connection supplier and metrics of
+     * this instance
+     */
+    public FunctionalSql withGroupCommit(final java.time.Duration window, final int maxUnits) {
+        if (window.isNegative()) {
+            throw new IllegalArgumentException("window can not be negative");
+        }
+        if (maxUnits <= 0) {
+            throw new IllegalArgumentException("maxUnits has to be positive");
+        }
+        final GroupCommit group = new GroupCommit(conProducer, this::inTransaction, window.toNanos(), maxUnits);
+        return new FunctionalSql(conProducer, metrics, shapes, deadline, cancelOnEarlyClose, group, false);
+    }
+
+    /**
+     *
+     * @param con Connection of a transaction
+     * @return FunctionalSql that runs all operations on con without closing
+     * it or controlling its transaction
+     */
+    private FunctionalSql inTransaction(final java.sql.Connection con) {
+        return new FunctionalSql(() -> NonClosingConnection.unit(con), metrics, shapes, deadline, cancelOnEarlyClose, null, true);
+    }
+
+    /**
+     * Runs work in one transaction on one Connection, committed when work
+     * returns and rolled back when it throws. Inside work, transactional
+     * joins the running transaction. With group commit the unit is committed
+     * together with the units of other threads. Streams of work have to be
+     * consumed before it returns
+     *
+     * @param <T> the type for the SQLFunction
+     * @param work SQLFunction that runs its operations on the given
+     * FunctionalSql
+     * @return T
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    public <T> T transactional(final SQLFunction<FunctionalSql, T> work) throws SQLException, SQLDataAccessException {
+        if (inTransaction) {
+            return work.apply(this);
+        }
+        if (groupCommit != null) {
+            return groupCommit.submit(work);
+        }
+        try (final java.sql.Connection con = con(null)) {
+            final boolean autoCommit = beginBatch(con, true);
+            try {
+                final T result = work.apply(inTransaction(con));
+                con.commit();
+                return result;
+            } catch (java.sql.SQLException | RuntimeException ex) {
+                endBatch(con, true, false);
+                throw ex;
+            } finally {
+                NonClosingConnection.release(con);
+                restoreAutoCommit(con, autoCommit);
+            }
+        }
+    }
+
+    /**
+     *
+     * @return SQLDeadline of this instance, null if none
+     */
+    public SQLDeadline getDeadline() {
+        return deadline;
+    }
+
+    /**
+     *
+     * @return SQLMetrics of this instance
+     */
+    public SQLMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Drops the ColumnShapes cached for the queries of this instance and the
+     * instances derived from it, for example after the schema changed
+     */
+    public void clearColumnShapes() {
+        shapes.clear();
+    }
+
+    /**
+     *
+     * @return true if Streams closed before all rows were read cancel their
+     * Statement
+     */
+    public boolean isCancelOnEarlyClose() {
+        return cancelOnEarlyClose;
+    }
+
+    /**
+     * When a Stream is closed before all rows were read, some drivers (MySQL
+     * among them) read and discard every remaining row while closing the
+     * ResultSet. With this enabled the Statement is cancelled first, defaults
+     * to false
+     *
+     * @param cancelOnEarlyClose true to cancel the Statement of Streams closed
+     * before all rows were read
+     */
+    public void setCancelOnEarlyClose(final boolean cancelOnEarlyClose) {
+        this.cancelOnEarlyClose = cancelOnEarlyClose;
     }
 
     /**
@@ -47,8 +209,85 @@ public class FunctionalSql {
      * @throws SQLDataAccessException if underlying operation throws
      * SQLDataAccessException
      */
-    private java.sql.Connection con() throws SQLException, SQLDataAccessException {
-        return conProducer.get();
+    private java.sql.Connection con(final String sql) throws SQLException, SQLDataAccessException {
+        if (deadline != null) {
+            deadline.check("connection acquire");
+        }
+        final Object event = SQLEvents.begin(SQLEvents.CONNECTION_ACQUIRE);
+        final java.sql.Connection con = conProducer.get();
+        SQLEvents.commit(event, sql, -1);
+        if (deadline != null && deadline.isExpired()) {
+            SQLResources.close(con);
+            throw new java.sql.SQLTimeoutException("Deadline exceeded during connection acquire");
+        }
+        return con;
+    }
+
+    /**
+     *
+     * @param stmt Statement to cancel when the deadline passes
+     * @return Timeout to close when the Statement completes, null if there is
+     * no deadline
+     */
+    private SQLWatchdog.Timeout watch(final java.sql.Statement stmt) {
+        return deadline == null ? null : SQLWatchdog.INSTANCE.watch(stmt, deadline);
+    }
+
+    /**
+     *
+     * @param timeout Timeout of the Statement, may be null
+     * @param ex SQLException thrown by the Statement
+     * @return SQLTimeoutException if the Statement was cancelled because of
+     * the deadline, otherwise ex
+     */
+    private static SQLException timedOut(final SQLWatchdog.Timeout timeout, final SQLException ex) {
+        if (timeout != null && timeout.isFired() && !(ex instanceof java.sql.SQLTimeoutException)) {
+            return new java.sql.SQLTimeoutException("Deadline exceeded, statement cancelled", ex);
+        }
+        return ex;
+    }
+
+    /**
+     *
+     * @param sql SQL Statement to be executed
+     * @param stmt Statement to execute the query on
+     * @return ResultSet
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     */
+    private static java.sql.ResultSet executeQuery(final String sql, final java.sql.Statement stmt) throws SQLException {
+        final Object event = SQLEvents.begin(SQLEvents.EXECUTE);
+        final java.sql.ResultSet rs = stmt.executeQuery(sql);
+        SQLEvents.commit(event, sql, -1);
+        return rs;
+    }
+
+    /**
+     *
+     * @param sql SQL Statement to be executed
+     * @param stmt PreparedStatement to execute the query on
+     * @return ResultSet
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     */
+    private static java.sql.ResultSet executeQuery(final String sql, final java.sql.PreparedStatement stmt) throws SQLException {
+        final Object event = SQLEvents.begin(SQLEvents.EXECUTE);
+        final java.sql.ResultSet rs = stmt.executeQuery();
+        SQLEvents.commit(event, sql, -1);
+        return rs;
+    }
+
+    /**
+     *
+     * @param sql SQL Statement to be prepared
+     * @param con Connection to prepare the statement on
+     * @param params Map with Named Parameters, used to size IN lists
+     * @return NamedParameterStatement
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     */
+    private static NamedParameterStatement prepareNamed(final String sql, final java.sql.Connection con, final java.util.Map<String, ?> params) throws SQLException {
+        final Object event = SQLEvents.begin(SQLEvents.STATEMENT_PREPARE);
+        final NamedParameterStatement stmt = new NamedParameterStatement(con, sql, params);
+        SQLEvents.commit(event, sql, -1);
+        return stmt;
     }
 
     /**
@@ -61,7 +300,7 @@ public class FunctionalSql {
      * SQLDataAccessException
      */
     public Stream<ResultSet> streamFromNamedParameterQuery(final String sql, final java.util.Map<String, Object> params) throws SQLDataAccessException, SQLException {
-        return stream(namedParamerterQuery(sql, params), SQLFunction.identity());
+        return stream(openNamedParameterQuery(sql, params), SQLFunction.identity(), UNKNOWN_SIZE, true);
     }
 
     /**
@@ -74,7 +313,7 @@ public class FunctionalSql {
      * SQLDataAccessException
      */
     public Stream<ResultSet> streamFromParameterQuery(final String sql, final Object... params) throws SQLDataAccessException, SQLException {
-        return stream(paramerterQuery(sql, params), SQLFunction.identity());
+        return stream(openParameterQuery(sql, params), SQLFunction.identity(), UNKNOWN_SIZE, true);
     }
 
     /**
@@ -86,7 +325,7 @@ public class FunctionalSql {
      * SQLDataAccessException
      */
     public Stream<ResultSet> stream(final String sql) throws SQLException, SQLDataAccessException {
-        return stream(executeQuery(sql), SQLFunction.identity());
+        return stream(openQuery(sql), SQLFunction.identity(), UNKNOWN_SIZE, true);
     }
 
     /**
@@ -98,7 +337,7 @@ public class FunctionalSql {
      * SQLDataAccessException
      */
     public Stream<ResultSet> stream(final SQLSupplier<? extends java.sql.ResultSet> resultSetSupplier) throws SQLException, SQLDataAccessException {
-        return stream(resultSetSupplier, SQLFunction.identity());
+        return stream(SQLResources.of(resultSetSupplier.get(), null), SQLFunction.identity(), UNKNOWN_SIZE, true);
     }
 
     /**
@@ -112,15 +351,42 @@ public class FunctionalSql {
      * SQLDataAccessException
      */
     public <T> java.util.stream.Stream<T> stream(final SQLSupplier<? extends java.sql.ResultSet> resultSetSupplier, SQLFunction<java.sql.ResultSet, T> rowFunction) throws SQLException, SQLDataAccessException {
-        final SQLResultSetIterator<T> iterator = new SQLResultSetIterator<>(resultSetSupplier.get(), rowFunction);
-        return java.util.stream.StreamSupport.stream(java.util.Spliterators.spliteratorUnknownSize(iterator, 0), false)
-                .onClose(() -> {
-                    try {
-                        iterator.close();
-                    } catch (Exception ex) {
-                        LOG.log(Level.SEVERE, ex.getMessage(), ex);
-                    }
-                });
+        return stream(SQLResources.of(resultSetSupplier.get(), null), rowFunction, UNKNOWN_SIZE, false);
+    }
+
+    /**
+     *
+     * @param <T> the type for the SQLFunction
+     * @param resources SQLResources holding the ResultSet
+     * @param rowFunction SQLFunction that transform ResultSet to T
+     * @param estimatedSize estimated number of rows, UNKNOWN_SIZE will use
+     * the maxRows of the Statement if set
+     * @param nonNull true if rowFunction never returns null
+     * @return Stream of T
+     */
+    private <T> java.util.stream.Stream<T> stream(final SQLResources resources, SQLFunction<java.sql.ResultSet, T> rowFunction, final long estimatedSize, final boolean nonNull) {
+        resources.trackEarlyClose(metrics, cancelOnEarlyClose);
+        final SQLResultSetSpliterator<T> spliterator = new SQLResultSetSpliterator<>(resources, rowFunction, estimatedSize == UNKNOWN_SIZE ? maxRows(resources) : estimatedSize, nonNull);
+        return java.util.stream.StreamSupport.stream(spliterator, false)
+                .onClose(resources);
+    }
+
+    /**
+     *
+     * @param resources SQLResources holding the Statement
+     * @return maxRows of the Statement, UNKNOWN_SIZE if not set
+     */
+    private static long maxRows(final SQLResources resources) {
+        if (resources.stmt == null) {
+            return UNKNOWN_SIZE;
+        }
+        try {
+            final int maxRows = resources.stmt.getMaxRows();
+            return maxRows > 0 ? maxRows : UNKNOWN_SIZE;
+        } catch (java.sql.SQLException ex) {
+            LOG.log(Level.FINE, ex.getMessage(), ex);
+            return UNKNOWN_SIZE;
+        }
     }
 
     /**
@@ -134,7 +400,57 @@ public class FunctionalSql {
      * SQLDataAccessException
      */
     public <T> java.util.stream.Stream<T> stream(final String sql, SQLFunction<java.sql.ResultSet, T> rowFunction) throws SQLException, SQLDataAccessException {
-        return stream(executeQuery(sql), rowFunction);
+        return stream(openQuery(sql), rowFunction, UNKNOWN_SIZE, false);
+    }
+
+    /**
+     *
+     * @param <T> the type for the SQLFunction
+     * @param sql SQL Statement to be executed
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     * @param estimatedSize estimated number of rows, reported by the
+     * Spliterator of the Stream
+     * @return Stream of T
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    public <T> java.util.stream.Stream<T> stream(final String sql, SQLFunction<java.sql.ResultSet, T> rowFunction, final long estimatedSize) throws SQLException, SQLDataAccessException {
+        return stream(openQuery(sql), rowFunction, estimatedSize, false);
+    }
+
+    /**
+     * Every element is the same Row flyweight over the current row, use
+     * Row#detach to keep a row beyond the next element
+     *
+     * @param sql SQL Statement to be executed
+     * @return Stream of Row
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    public Stream<Row> rows(final String sql) throws SQLException, SQLDataAccessException {
+        return rows(openQuery(sql));
+    }
+
+    /**
+     * Every element is the same Row flyweight over the current row, use
+     * Row#detach to keep a row beyond the next element
+     *
+     * @param sql SQL Statement to be executed
+     * @param params Map with Named Parameters
+     * @return Stream of Row
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    public Stream<Row> rowsFromNamedParameterQuery(final String sql, final java.util.Map<String, Object> params) throws SQLException, SQLDataAccessException {
+        return rows(openNamedParameterQuery(sql, params));
+    }
+
+    private Stream<Row> rows(final SQLResources resources) {
+        final Row.Cursor cursor = Row.cursor();
+        return stream(resources, cursor, UNKNOWN_SIZE, true).onClose(cursor);
     }
 
     /**
@@ -143,19 +459,46 @@ public class FunctionalSql {
      * @return SQLSupplier of ResultSet
      */
     public SQLSupplier<? extends java.sql.ResultSet> executeQuery(final String sql) {
-        return () -> {
-            final java.util.List<java.lang.AutoCloseable> closables = new java.util.ArrayList<>(3);
-            final java.sql.Connection con = con();
-            closables.add(con);
-            try {
-                final java.sql.Statement stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.CLOSE_CURSORS_AT_COMMIT);
-                closables.add(stmt);
-                return stmt.executeQuery(sql);
-            } catch (java.sql.SQLException ex) {
-                closeResources(closables);
-                throw ex;
-            }
-        };
+        return () -> openQuery(sql).rs;
+    }
+
+    /**
+     *
+     * @param sql SQL Statement to be executed
+     * @return SQLResources whose ResultSet looks up its ColumnShape in the
+     * cache of this instance
+     */
+    private SQLResources resources(final String sql) {
+        final SQLResources resources = new SQLResources(sql);
+        resources.shapes = shapes;
+        return resources;
+    }
+
+    /**
+     *
+     * @param sql SQL Statement to be executed
+     * @return SQLResources holding the open ResultSet
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    private SQLResources openQuery(final String sql) throws SQLException, SQLDataAccessException {
+        final SQLResources resources = resources(sql);
+        resources.con = con(sql);
+        try {
+            final Object event = SQLEvents.begin(SQLEvents.STATEMENT_PREPARE);
+            resources.stmt = resources.con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.CLOSE_CURSORS_AT_COMMIT);
+            SQLEvents.commit(event, sql, -1);
+            resources.timeout = watch(resources.stmt);
+            resources.rs = executeQuery(sql, resources.stmt);
+            return resources;
+        } catch (java.sql.SQLException ex) {
+            resources.close();
+            throw timedOut(resources.timeout, ex);
+        } catch (RuntimeException ex) {
+            resources.close();
+            throw ex;
+        }
     }
 
     /**
@@ -188,7 +531,132 @@ public class FunctionalSql {
      * SQLDataAccessException
      */
     public <T> T executeQuery(final String sql, SQLFunction<java.sql.ResultSet, T> resultSetFunction) throws SQLException, SQLDataAccessException {
-        return executeQuery(executeQuery(sql), resultSetFunction);
+        final SQLResources resources = openQuery(sql);
+        try {
+            return resultSetFunction.apply(resources.rs);
+        } finally {
+            resources.close();
+        }
+    }
+
+    /**
+     *
+     * @param sql SQL Statement to be executed
+     * @return SnapshotTable with all rows of sql
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    public SnapshotTable snapshot(final String sql) throws SQLException, SQLDataAccessException {
+        return executeQuery(sql, rs -> SnapshotTable.load(shapes.of(sql, rs), rs));
+    }
+
+    /**
+     *
+     * @param sql SQL Statement to be executed
+     * @return RefreshableSnapshot holding a SnapshotTable of sql, already
+     * loaded
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    public RefreshableSnapshot refreshableSnapshot(final String sql) throws SQLException, SQLDataAccessException {
+        final RefreshableSnapshot snapshot = new RefreshableSnapshot(this, sql);
+        snapshot.reload();
+        return snapshot;
+    }
+
+    /**
+     * RefreshableSnapshot#refresh only fetches the rows with a version at or
+     * above the highest version seen, so versionColumn has to increase on
+     * every insert, update and soft delete. The rows at the highest version
+     * are fetched again on every refresh, so that rows committed late with
+     * that version are not missed, and are skipped if unchanged
+     *
+     * @param sql SQL Statement to be executed, is wrapped as a sub query for
+     * refreshes
+     * @param keyColumn column that identifies a row
+     * @param versionColumn version or timestamp column
+     * @param deletedColumn boolean column that marks soft deleted rows, null
+     * if rows are never deleted
+     * @return RefreshableSnapshot holding a SnapshotTable of sql, already
+     * loaded
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    public RefreshableSnapshot refreshableSnapshot(final String sql, final String keyColumn, final String versionColumn, final String deletedColumn) throws SQLException, SQLDataAccessException {
+        final RefreshableSnapshot snapshot = new RefreshableSnapshot(this, sql, keyColumn, versionColumn, deletedColumn);
+        snapshot.reload();
+        return snapshot;
+    }
+
+    /**
+     *
+     * @param sql SQL Statement to be executed
+     * @param params Map with Named Parameters
+     * @param include SQLPredicate that selects the rows to copy, null for all
+     * @return SnapshotTable with the selected rows of sql
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    SnapshotTable snapshot(final String sql, final java.util.Map<String, Object> params, final SQLPredicate<java.sql.ResultSet> include) throws SQLException, SQLDataAccessException {
+        final SQLResources resources = openNamedParameterQuery(sql, params);
+        try {
+            return SnapshotTable.load(shapes.of(sql, resources.rs), resources.rs, include);
+        } finally {
+            resources.close();
+        }
+    }
+
+    /**
+     * Writes the rows of sql as RFC 4180 CSV in UTF-8 with LF line endings,
+     * encoded straight from the ResultSet getters into a reusable buffer
+     *
+     * @param sql SQL Statement to be executed
+     * @param channel WritableByteChannel to write to, is not closed
+     * @param options ExportOptions
+     * @return ExportResult
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if writing fails or underlying operation
+     * throws SQLDataAccessException
+     */
+    public ExportResult exportCsv(final String sql, final java.nio.channels.WritableByteChannel channel, final ExportOptions options) throws SQLException, SQLDataAccessException {
+        return export(sql, false, channel, options);
+    }
+
+    /**
+     * Writes the rows of sql as one JSON object per line in UTF-8, keyed by
+     * column label, encoded straight from the ResultSet getters into a
+     * reusable buffer. Numeric and boolean columns are written as JSON
+     * numbers and booleans, non finite doubles as null, all other columns as
+     * strings
+     *
+     * @param sql SQL Statement to be executed
+     * @param channel WritableByteChannel to write to, is not closed
+     * @param options ExportOptions
+     * @return ExportResult
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if writing fails or underlying operation
+     * throws SQLDataAccessException
+     */
+    public ExportResult exportNdjson(final String sql, final java.nio.channels.WritableByteChannel channel, final ExportOptions options) throws SQLException, SQLDataAccessException {
+        return export(sql, true, channel, options);
+    }
+
+    private ExportResult export(final String sql, final boolean json, final java.nio.channels.WritableByteChannel channel, final ExportOptions options) throws SQLException, SQLDataAccessException {
+        final long start = System.nanoTime();
+        return executeQuery(sql, rs -> {
+            try (final ResultSetExporter exporter = new ResultSetExporter(json, channel, options, shapes.of(sql, rs))) {
+                while (rs.next()) {
+                    exporter.row(rs);
+                }
+                return exporter.finish(start);
+            } catch (java.io.IOException ex) {
+                throw new SQLDataAccessException(String.format("Export failed: %s", ex.getMessage()), ex);
+            }
+        });
     }
 
     /**
@@ -198,7 +666,12 @@ public class FunctionalSql {
      * @throws java.sql.SQLException if underlying operation throws SQLException
      */
     public boolean execute(final String sql) throws SQLException {
-        return executeStatement(statement(), stmt -> stmt.execute(sql));
+        return executeStatement(statement(), stmt -> {
+            final Object event = SQLEvents.begin(SQLEvents.EXECUTE);
+            final boolean result = stmt.execute(sql);
+            SQLEvents.commit(event, sql, -1);
+            return result;
+        });
     }
 
     /**
@@ -213,9 +686,13 @@ public class FunctionalSql {
      */
     public <T> T executeStatement(final SQLSupplier<? extends java.sql.Statement> sqlSupplier, SQLFunction<java.sql.Statement, T> sqlFunction) throws SQLException, SQLDataAccessException {
         final Statement stmt = sqlSupplier.get();
+        final SQLWatchdog.Timeout timeout = watch(stmt);
         try {
             return sqlFunction.apply(stmt);
+        } catch (java.sql.SQLException ex) {
+            throw timedOut(timeout, ex);
         } finally {
+            SQLResources.close(timeout);
             closeResources(stmt);
         }
     }
@@ -232,13 +709,11 @@ public class FunctionalSql {
      */
     public SQLSupplier<? extends java.sql.Statement> statement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) {
         return () -> {
-            final java.util.List<java.lang.AutoCloseable> closables = new java.util.ArrayList<>(3);
-            final java.sql.Connection con = con();
-            closables.add(con);
+            final java.sql.Connection con = con(null);
             try {
                 return con.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
-            } catch (java.sql.SQLException ex) {
-                closeResources(closables);
+            } catch (java.sql.SQLException | RuntimeException ex) {
+                SQLResources.close(con);
                 throw ex;
             }
         };
@@ -250,13 +725,11 @@ public class FunctionalSql {
      */
     public SQLSupplier<? extends java.sql.Statement> statement() {
         return () -> {
-            final java.util.List<java.lang.AutoCloseable> closables = new java.util.ArrayList<>(3);
-            final java.sql.Connection con = con();
-            closables.add(con);
+            final java.sql.Connection con = con(null);
             try {
                 return con.createStatement();
-            } catch (java.sql.SQLException ex) {
-                closeResources(closables);
+            } catch (java.sql.SQLException | RuntimeException ex) {
+                SQLResources.close(con);
                 throw ex;
             }
         };
@@ -270,16 +743,17 @@ public class FunctionalSql {
      * @throws java.sql.SQLException if underlying operation throws SQLException
      */
     public boolean namedParamerterExecute(final String sql, final java.util.Map<String, Object> params) throws SQLException {
-        final java.util.List<java.lang.AutoCloseable> closables = new java.util.ArrayList<>(3);
-        try (final java.sql.Connection con = con()) {
-            closables.add(con);
+        try (final java.sql.Connection con = con(sql); final java.sql.PreparedStatement stmt = prepareNamed(sql, con, params).setAll(params).getPreparedStatement()) {
+            final SQLWatchdog.Timeout timeout = watch(stmt);
             try {
-                final java.sql.PreparedStatement stmt = new NamedParameterStatement(con, sql).setAll(params).getPreparedStatement();
-                closables.add(stmt);
-                return stmt.execute();
+                final Object event = SQLEvents.begin(SQLEvents.EXECUTE);
+                final boolean result = stmt.execute();
+                SQLEvents.commit(event, sql, -1);
+                return result;
             } catch (java.sql.SQLException ex) {
-                closeResources(closables);
-                throw ex;
+                throw timedOut(timeout, ex);
+            } finally {
+                SQLResources.close(timeout);
             }
         }
     }
@@ -291,73 +765,837 @@ public class FunctionalSql {
      * @return SQLSupplier for ResultSet
      */
     public SQLSupplier<? extends java.sql.ResultSet> namedParamerterQuery(final String sql, final java.util.Map<String, Object> params) {
-        return () -> {
-            final java.util.List<java.lang.AutoCloseable> closables = new java.util.ArrayList<>(3);
-            final java.sql.Connection con = con();
-            closables.add(con);
-            try {
-                final java.sql.PreparedStatement stmt = new NamedParameterStatement(con, sql).setAll(params).getPreparedStatement();
-                closables.add(stmt);
-                return stmt.executeQuery();
-            } catch (java.sql.SQLException ex) {
-                closeResources(closables);
-                throw ex;
-            }
-        };
+        return () -> openNamedParameterQuery(sql, params).rs;
     }
 
     /**
      *
      * @param sql SQL Statement to be executed
      * @param params Map with Named Parameters
-     * @return SQLSupplier for ResultSet
+     * @return SQLResources holding the open ResultSet
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
      */
-    public int namedParamerterUpdate(final String sql, final java.util.Map<String, Object> params) throws SQLDataAccessException, SQLException {
-        try (final java.sql.Connection con = con(); final java.sql.PreparedStatement stmt = new NamedParameterStatement(con, sql).setAll(params).getPreparedStatement()) {
-            return stmt.executeUpdate();
+    private SQLResources openNamedParameterQuery(final String sql, final java.util.Map<String, Object> params) throws SQLException, SQLDataAccessException {
+        final SQLResources resources = resources(sql);
+        resources.con = con(sql);
+        try {
+            final java.sql.PreparedStatement stmt = prepareNamed(sql, resources.con, params).setAll(params).getPreparedStatement();
+            resources.stmt = stmt;
+            resources.timeout = watch(stmt);
+            resources.rs = executeQuery(sql, stmt);
+            return resources;
+        } catch (java.sql.SQLException ex) {
+            resources.close();
+            throw timedOut(resources.timeout, ex);
+        } catch (RuntimeException ex) {
+            resources.close();
+            throw ex;
         }
     }
 
     /**
      *
      * @param sql SQL Statement to be executed
-     * @param params Objects for SQL Parameters
+     * @param params Map with Named Parameters
      * @return SQLSupplier for ResultSet
      */
-    public SQLSupplier<? extends java.sql.ResultSet> paramerterQuery(final String sql, final Object... params) {
-        return () -> {
-            final java.util.List<java.lang.AutoCloseable> closables = new java.util.ArrayList<>(3);
-            final java.sql.Connection con = con();
-            closables.add(con);
-            try {
-                final java.sql.PreparedStatement stmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.CLOSE_CURSORS_AT_COMMIT);
-                int cnt = 0;
-                for (final Object param : params) {
-                    stmt.setObject(++cnt, param);
-                }
-                closables.add(stmt);
-                return stmt.executeQuery(sql);
-            } catch (java.sql.SQLException ex) {
-                closeResources(closables);
-                throw ex;
-            }
-        };
+    public int namedParamerterUpdate(final String sql, final java.util.Map<String, Object> params) throws SQLDataAccessException, SQLException {
+        try (final java.sql.Connection con = con(sql); final java.sql.PreparedStatement stmt = prepareNamed(sql, con, params).setAll(params).getPreparedStatement()) {
+            return executeUpdate(sql, stmt);
+        }
     }
 
     /**
+     * Binds the parameters from the properties of bean with a cached binding
+     * plan instead of a Map
      *
-     * @param closables List of AutoClosables
+     * @param sql SQL Statement to be executed
+     * @param bean bean with a property per Named Parameter
+     * @return update count
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     * @see NamedParameterStatement#setAll(Object)
      */
-    static void closeResources(final java.util.List<java.lang.AutoCloseable> closables) {
-        if (LOG.isLoggable(Level.FINER)) {
-            LOG.finer("closeResources");
+    public int namedParamerterUpdate(final String sql, final Object bean) throws SQLDataAccessException, SQLException {
+        try (final java.sql.Connection con = con(sql); final java.sql.PreparedStatement stmt = prepareNamed(sql, con, null).setAll(bean).getPreparedStatement()) {
+            return executeUpdate(sql, stmt);
+        }
+    }
+
+    /**
+     *
+     * @param sql SQL Statement, for events
+     * @param stmt PreparedStatement with its parameters set
+     * @return update count
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     */
+    private int executeUpdate(final String sql, final java.sql.PreparedStatement stmt) throws SQLException {
+        final SQLWatchdog.Timeout timeout = watch(stmt);
+        try {
+            final Object event = SQLEvents.begin(SQLEvents.EXECUTE);
+            final int count = stmt.executeUpdate();
+            SQLEvents.commit(event, sql, count);
+            return count;
+        } catch (java.sql.SQLException ex) {
+            throw timedOut(timeout, ex);
+        } finally {
+            SQLResources.close(timeout);
+        }
+    }
+
+    /**
+     *
+     * @param sqls SQL Statements to be executed
+     * @return update counts, in the order of sqls
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @see #executeAll(java.util.List, boolean)
+     */
+    public int[] executeAll(final java.util.List<String> sqls) throws SQLException {
+        return executeAll(sqls, false);
+    }
+
+    /**
+     * Sends all statements as one batch on one Connection instead of one
+     * Connection and round trip per statement
+     *
+     * @param sqls SQL Statements to be executed
+     * @param inTransaction true to run all statements in one transaction that
+     * is rolled back if any of them fails
+     * @return update counts, in the order of sqls
+     * @throws SQLBatchException if a statement fails, with its index
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     */
+    public int[] executeAll(final java.util.List<String> sqls, final boolean inTransaction) throws SQLBatchException, SQLException {
+        if (sqls.isEmpty()) {
+            return new int[0];
+        }
+        try (final java.sql.Connection con = con(sqls.get(0)); final java.sql.Statement stmt = con.createStatement()) {
+            final boolean autoCommit = beginBatch(con, inTransaction);
+            final SQLWatchdog.Timeout timeout = watch(stmt);
+            try {
+                for (final String sql : sqls) {
+                    stmt.addBatch(sql);
+                }
+                final Object event = SQLEvents.begin(SQLEvents.EXECUTE);
+                final int[] counts = stmt.executeBatch();
+                SQLEvents.commit(event, sqls.get(0), counts.length);
+                endBatch(con, inTransaction, true);
+                return counts;
+            } catch (java.sql.SQLException ex) {
+                endBatch(con, inTransaction, false);
+                final int[] counts = batchCounts(ex, sqls.size(), 0, new int[sqls.size()]);
+                final int failed = failedIndex(ex, sqls.size(), 0);
+                throw new SQLBatchException(timedOut(timeout, ex), counts, failed, failed < 0 ? null : sqls.get(failed));
+            } finally {
+                SQLResources.close(timeout);
+                restoreAutoCommit(con, autoCommit);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param batch NamedParameterBatch to be executed
+     * @return update counts, in the order of the batch
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @see #executeAll(NamedParameterBatch, boolean)
+     */
+    public int[] executeAll(final NamedParameterBatch batch) throws SQLException {
+        return executeAll(batch, false);
+    }
+
+    /**
+     * Executes all entries on one Connection, consecutive entries with the same
+     * SQL are sent as one PreparedStatement batch
+     *
+     * @param batch NamedParameterBatch to be executed
+     * @param inTransaction true to run all entries in one transaction that is
+     * rolled back if any of them fails
+     * @return update counts, in the order of the batch
+     * @throws SQLBatchException if an entry fails, with its index
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     */
+    public int[] executeAll(final NamedParameterBatch batch, final boolean inTransaction) throws SQLBatchException, SQLException {
+        final int size = batch.size();
+        final int[] counts = new int[size];
+        if (size == 0) {
+            return counts;
+        }
+        try (final java.sql.Connection con = con(batch.sqls.get(0))) {
+            final boolean autoCommit = beginBatch(con, inTransaction);
+            try {
+                int start = 0;
+                while (start < size) {
+                    final String sql = batch.sqls.get(start);
+                    final String shape = NamedParameterStatement.shape(batch.params.get(start));
+                    int end = start + 1;
+                    while (end < size && sql.equals(batch.sqls.get(end)) && shape.equals(NamedParameterStatement.shape(batch.params.get(end)))) {
+                        end++;
+                    }
+                    executeBatch(con, sql, batch.params.subList(start, end), counts, start, inTransaction);
+                    start = end;
+                }
+                endBatch(con, inTransaction, true);
+                return counts;
+            } finally {
+                restoreAutoCommit(con, autoCommit);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param con Connection to execute on
+     * @param sql SQL Statement with Named Parameters
+     * @param params Named Parameters for each execution
+     * @param counts update counts of the whole batch
+     * @param offset index of the first entry in the whole batch
+     * @param inTransaction true if the whole batch is one transaction
+     * @throws SQLBatchException if an entry fails, with its index in the whole
+     * batch
+     */
+    private void executeBatch(final java.sql.Connection con, final String sql, final java.util.List<java.util.Map<String, ?>> params, final int[] counts, final int offset, final boolean inTransaction) throws SQLBatchException {
+        SQLWatchdog.Timeout timeout = null;
+        int added = 0;
+        try (final NamedParameterStatement stmt = prepareNamed(sql, con, params.get(0))) {
+            timeout = watch(stmt.getPreparedStatement());
+            for (final java.util.Map<String, ?> param : params) {
+                stmt.setAll(param).addBatch();
+                added++;
+            }
+            final Object event = SQLEvents.begin(SQLEvents.EXECUTE);
+            final int[] result = stmt.getPreparedStatement().executeBatch();
+            SQLEvents.commit(event, sql, result.length);
+            System.arraycopy(result, 0, counts, offset, result.length);
+        } catch (java.sql.SQLException ex) {
+            endBatch(con, inTransaction, false);
+            final boolean executing = added == params.size();
+            batchCounts(executing ? ex : null, params.size(), offset, counts);
+            final int failed = executing ? failedIndex(ex, params.size(), offset) : offset + added;
+            throw new SQLBatchException(timedOut(timeout, ex), counts, failed, sql);
+        } finally {
+            SQLResources.close(timeout);
+        }
+    }
+
+    /**
+     * Inserts all rows as one batch in one transaction and returns the
+     * generated keys in the order of rows. Drivers that do not return the keys
+     * of a whole batch are detected by the number of keys, the batch is then
+     * rolled back and repeated row by row in the same transaction
+     *
+     * @param sql INSERT Statement with Named Parameters
+     * @param rows Map with Named Parameters for each row
+     * @param keyColumns names of the generated key columns, none to use
+     * Statement#RETURN_GENERATED_KEYS
+     * @return generated key of each row, in the order of rows
+     * @throws java.sql.SQLFeatureNotSupportedException if the driver does not
+     * support generated keys
+     * @throws SQLBatchException if a row fails, with its index
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     */
+    public long[] insertAll(final String sql, final java.util.List<? extends java.util.Map<String, ?>> rows, final String... keyColumns) throws SQLBatchException, SQLException {
+        final long[] keys = new long[rows.size()];
+        if (rows.isEmpty()) {
+            return keys;
+        }
+        try (final java.sql.Connection con = con(sql)) {
+            if (!con.getMetaData().supportsGetGeneratedKeys()) {
+                throw new java.sql.SQLFeatureNotSupportedException("Driver does not support generated keys");
+            }
+            final boolean autoCommit = beginBatch(con, true);
+            try {
+                final Object prepareEvent = SQLEvents.begin(SQLEvents.STATEMENT_PREPARE);
+                final NamedParameterStatement stmt = new NamedParameterStatement(con, sql, keyColumns, rows.get(0));
+                SQLEvents.commit(prepareEvent, sql, -1);
+                try {
+                    if (!insertBatch(con, sql, stmt, rows, keys)) {
+                        con.rollback();
+                        insertRows(con, sql, stmt, rows, keys);
+                    }
+                } finally {
+                    SQLResources.close(stmt);
+                }
+                endBatch(con, true, true);
+                return keys;
+            } finally {
+                restoreAutoCommit(con, autoCommit);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param con Connection of stmt
+     * @param sql INSERT Statement, for events
+     * @param stmt NamedParameterStatement prepared for generated keys
+     * @param rows Map with Named Parameters for each row
+     * @param keys generated key of each row
+     * @return false if the driver did not return a key for each row
+     * @throws SQLBatchException if a row fails, with its index
+     */
+    private boolean insertBatch(final java.sql.Connection con, final String sql, final NamedParameterStatement stmt, final java.util.List<? extends java.util.Map<String, ?>> rows, final long[] keys) throws SQLBatchException {
+        SQLWatchdog.Timeout timeout = null;
+        int added = 0;
+        try {
+            timeout = watch(stmt.getPreparedStatement());
+            for (final java.util.Map<String, ?> row : rows) {
+                stmt.setAll(row).addBatch();
+                added++;
+            }
+            final Object event = SQLEvents.begin(SQLEvents.EXECUTE);
+            stmt.getPreparedStatement().executeBatch();
+            SQLEvents.commit(event, sql, rows.size());
+            int count = 0;
+            try (final java.sql.ResultSet rs = stmt.getPreparedStatement().getGeneratedKeys()) {
+                while (rs.next()) {
+                    if (count == keys.length) {
+                        return false;
+                    }
+                    keys[count++] = rs.getLong(1);
+                }
+            }
+            return count == keys.length;
+        } catch (java.sql.SQLException ex) {
+            endBatch(con, true, false);
+            final boolean executing = added == rows.size();
+            final int[] counts = batchCounts(executing ? ex : null, rows.size(), 0, new int[rows.size()]);
+            final int failed = executing ? failedIndex(ex, rows.size(), 0) : added;
+            throw new SQLBatchException(timedOut(timeout, ex), counts, failed, sql);
+        } finally {
+            SQLResources.close(timeout);
+        }
+    }
+
+    /**
+     *
+     * @param con Connection of stmt
+     * @param sql INSERT Statement, for events
+     * @param stmt NamedParameterStatement prepared for generated keys
+     * @param rows Map with Named Parameters for each row
+     * @param keys generated key of each row
+     * @throws SQLBatchException if a row fails, with its index
+     */
+    private void insertRows(final java.sql.Connection con, final String sql, final NamedParameterStatement stmt, final java.util.List<? extends java.util.Map<String, ?>> rows, final long[] keys) throws SQLBatchException {
+        int index = 0;
+        final int[] counts = new int[rows.size()];
+        SQLWatchdog.Timeout timeout = null;
+        try {
+            timeout = watch(stmt.getPreparedStatement());
+            for (; index < keys.length; index++) {
+                final Object event = SQLEvents.begin(SQLEvents.EXECUTE);
+                counts[index] = stmt.setAll(rows.get(index)).executeUpdate();
+                SQLEvents.commit(event, sql, counts[index]);
+                try (final java.sql.ResultSet rs = stmt.getPreparedStatement().getGeneratedKeys()) {
+                    if (!rs.next()) {
+                        throw new java.sql.SQLException(String.format("No generated key returned for row %d", index));
+                    }
+                    keys[index] = rs.getLong(1);
+                }
+            }
+        } catch (java.sql.SQLException ex) {
+            java.util.Arrays.fill(counts, index, counts.length, java.sql.Statement.EXECUTE_FAILED);
+            endBatch(con, true, false);
+            throw new SQLBatchException(timedOut(timeout, ex), counts, index, sql);
+        } finally {
+            SQLResources.close(timeout);
+        }
+    }
+
+    /**
+     *
+     * @return WriteBehindQueue that writes updates in batches on a background
+     * thread
+     */
+    public WriteBehindQueue writeBehind() {
+        return new WriteBehindQueue(this);
+    }
+
+    /**
+     *
+     * @param <K> Type of the keys
+     * @param <V> Type of the loaded values
+     * @param sql SQL Statement selecting the rows with IN (:keys)
+     * @param keyFunction SQLFunction that reads the key of a row
+     * @param rowFunction SQLFunction that transforms ResultSet to V
+     * @return BatchLoader that collects point lookups into one query per batch
+     */
+    public <K, V> BatchLoader<K, V> batchLoader(final String sql, final SQLFunction<java.sql.ResultSet, K> keyFunction, final SQLFunction<java.sql.ResultSet, V> rowFunction) {
+        return new BatchLoader<>(this, sql, keyFunction, rowFunction);
+    }
+
+    /**
+     *
+     * @param <T> the type for the SQLFunction
+     * @param keys keys to stage, duplicates are staged once
+     * @param tempTableName name of the temporary table, with one column id
+     * @param scope SQLFunction that runs its joins against tempTableName
+     * @return T
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     * @see #withStagedKeys(java.util.Collection, String, SQLFunction)
+     */
+    public <T> T withStagedKeys(final long[] keys, final String tempTableName, final SQLFunction<FunctionalSql, T> scope) throws SQLException, SQLDataAccessException {
+        final long[] sorted = keys.clone();
+        java.util.Arrays.sort(sorted);
+        return withStagedKeys(tempTableName, "BIGINT", scope, stmt -> {
+            int count = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i > 0 && sorted[i] == sorted[i - 1]) {
+                    continue;
+                }
+                stmt.setLong(1, sorted[i]);
+                stmt.addBatch();
+                if (++count % STAGE_BATCH_SIZE == 0) {
+                    stmt.executeBatch();
+                }
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Bulk loads keys into a temporary table on one Connection and runs scope
+     * with a FunctionalSql bound to that Connection, so that scope can join
+     * against the table instead of sending IN lists. The table is dropped
+     * afterwards. Streams of scope have to be consumed before it returns.
+     * Integral Number keys are staged as BIGINT, all others as the VARCHAR of
+     * their String value
+     *
+     * @param <T> the type for the SQLFunction
+     * @param keys keys to stage, duplicates are staged once
+     * @param tempTableName name of the temporary table, with one column id
+     * @param scope SQLFunction that runs its joins against tempTableName
+     * @return T
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    public <T> T withStagedKeys(final java.util.Collection<?> keys, final String tempTableName, final SQLFunction<FunctionalSql, T> scope) throws SQLException, SQLDataAccessException {
+        boolean integral = true;
+        for (final Object key : keys) {
+            if (!(key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte)) {
+                integral = false;
+                break;
+            }
+        }
+        int length = 1;
+        final java.util.Set<Object> unique = new java.util.LinkedHashSet<>(keys.size() * 4 / 3 + 1);
+        for (final Object key : keys) {
+            if (integral) {
+                unique.add(((Number) key).longValue());
+            } else {
+                final String value = String.valueOf(key);
+                length = Math.max(length, value.length());
+                unique.add(value);
+            }
+        }
+        final boolean longs = integral;
+        return withStagedKeys(tempTableName, longs ? "BIGINT" : String.format("VARCHAR(%d)", length), scope, stmt -> {
+            int count = 0;
+            for (final Object key : unique) {
+                if (longs) {
+                    stmt.setLong(1, (Long) key);
+                } else {
+                    stmt.setString(1, (String) key);
+                }
+                stmt.addBatch();
+                if (++count % STAGE_BATCH_SIZE == 0) {
+                    stmt.executeBatch();
+                }
+            }
+            return count;
+        });
+    }
+
+    /**
+     *
+     * @param <T> the type for the SQLFunction
+     * @param tempTableName name of the temporary table
+     * @param columnType SQL type of the id column
+     * @param scope SQLFunction that runs its joins against tempTableName
+     * @param loader SQLFunction that adds the keys to the INSERT batch and
+     * returns the number of keys
+     * @return T
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    private <T> T withStagedKeys(final String tempTableName, final String columnType, final SQLFunction<FunctionalSql, T> scope, final SQLFunction<java.sql.PreparedStatement, Integer> loader) throws SQLException, SQLDataAccessException {
+        final String insertSql = String.format("INSERT INTO %s (id) VALUES (?)", tempTableName);
+        try (final java.sql.Connection con = con(insertSql)) {
+            try (final java.sql.Statement stmt = con.createStatement()) {
+                stmt.execute(String.format("CREATE TEMPORARY TABLE %s (id %s NOT NULL PRIMARY KEY)", tempTableName, columnType));
+            }
+            try {
+                final boolean autoCommit = beginBatch(con, true);
+                try (final java.sql.PreparedStatement stmt = con.prepareStatement(insertSql)) {
+                    final SQLWatchdog.Timeout timeout = watch(stmt);
+                    try {
+                        final Object event = SQLEvents.begin(SQLEvents.EXECUTE);
+                        final int count = loader.apply(stmt);
+                        stmt.executeBatch();
+                        SQLEvents.commit(event, insertSql, count);
+                    } catch (java.sql.SQLException ex) {
+                        endBatch(con, true, false);
+                        throw timedOut(timeout, ex);
+                    } finally {
+                        SQLResources.close(timeout);
+                    }
+                    endBatch(con, true, true);
+                } finally {
+                    restoreAutoCommit(con, autoCommit);
+                }
+                return scope.apply(new FunctionalSql(() -> NonClosingConnection.of(con), metrics, shapes, deadline, cancelOnEarlyClose, null, false));
+            } finally {
+                NonClosingConnection.release(con);
+                try (final java.sql.Statement stmt = con.createStatement()) {
+                    stmt.execute(String.format("DROP TABLE %s", tempTableName));
+                } catch (java.sql.SQLException ex) {
+                    LOG.log(Level.SEVERE, ex.getMessage(), ex);
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @param sql SQL Statement with Named Parameters to be executed per row
+     * @param rows Stream of Maps with Named Parameters
+     * @param partitionKey Function that returns the key rows are partitioned
+     * by
+     * @param writers number of writer threads, each with its own Connection
+     * @return number of rows written
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     * @see #parallelBatch(String, Stream, java.util.function.Function, int,
+     * ParallelBatchOptions)
+     */
+    public long parallelBatch(final String sql, final Stream<? extends java.util.Map<String, ?>> rows, final java.util.function.Function<java.util.Map<String, ?>, ?> partitionKey, final int writers) throws SQLException, SQLDataAccessException {
+        return parallelBatch(sql, rows, partitionKey, writers, new ParallelBatchOptions());
+    }
+
+    /**
+     * Writes rows with several writer threads, each with its own Connection,
+     * NamedParameterStatement and bounded queue. Rows are partitioned by the
+     * hash of their partition key, so rows with the same key go to the same
+     * writer and are written in Stream order. The calling thread consumes the
+     * Stream and blocks while the queue of a writer is full. Each writer
+     * commits every commit interval; if a writer fails the others stop and
+     * roll back their open transaction, already committed intervals stay
+     *
+     * @param sql SQL Statement with Named Parameters to be executed per row
+     * @param rows Stream of Maps with Named Parameters
+     * @param partitionKey Function that returns the key rows are partitioned
+     * by
+     * @param writers number of writer threads, each with its own Connection
+     * @param options ParallelBatchOptions
+     * @return number of rows written
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    public long parallelBatch(final String sql, final Stream<? extends java.util.Map<String, ?>> rows, final java.util.function.Function<java.util.Map<String, ?>, ?> partitionKey, final int writers, final ParallelBatchOptions options) throws SQLException, SQLDataAccessException {
+        if (writers <= 0) {
+            throw new IllegalArgumentException("writers has to be positive");
+        }
+        final java.util.Map<String, ?> end = java.util.Collections.emptyMap();
+        final java.util.concurrent.atomic.AtomicReference<Throwable> failure = new java.util.concurrent.atomic.AtomicReference<>();
+        final java.util.List<java.util.concurrent.BlockingQueue<java.util.Map<String, ?>>> queues = new java.util.ArrayList<>(writers);
+        final long[] written = new long[writers];
+        final Thread[] threads = new Thread[writers];
+        for (int i = 0; i < writers; i++) {
+            final int writer = i;
+            final java.util.concurrent.BlockingQueue<java.util.Map<String, ?>> queue = new java.util.concurrent.ArrayBlockingQueue<>(options.getQueueCapacity());
+            queues.add(queue);
+            threads[i] = new Thread(() -> {
+                try {
+                    written[writer] = writePartition(sql, queue, end, options, failure);
+                } catch (java.sql.SQLException | RuntimeException | Error ex) {
+                    failure.compareAndSet(null, ex);
+                }
+            }, String.format("SQLParallelBatch-%d", i));
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        try {
+            final java.util.Iterator<? extends java.util.Map<String, ?>> iterator = rows.iterator();
+            while (failure.get() == null && iterator.hasNext()) {
+                final java.util.Map<String, ?> row = iterator.next();
+                final Object key = partitionKey.apply(row);
+                final int hash = key == null ? 0 : key.hashCode();
+                put(queues.get(Math.floorMod(hash ^ (hash >>> 16), writers)), row, failure);
+            }
+        } catch (RuntimeException ex) {
+            failure.compareAndSet(null, ex);
+        } finally {
+            for (final java.util.concurrent.BlockingQueue<java.util.Map<String, ?>> queue : queues) {
+                put(queue, end, failure);
+            }
+            for (final Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    failure.compareAndSet(null, ex);
+                }
+            }
+        }
+        final Throwable ex = failure.get();
+        if (ex instanceof java.sql.SQLException) {
+            throw (java.sql.SQLException) ex;
+        } else if (ex instanceof RuntimeException) {
+            throw (RuntimeException) ex;
+        } else if (ex instanceof Error) {
+            throw (Error) ex;
+        } else if (ex != null) {
+            throw new SQLDataAccessException(ex.getMessage(), ex);
+        }
+        long total = 0;
+        for (final long count : written) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Blocks while the queue is full, unless a writer failed
+     *
+     * @param queue queue of a writer
+     * @param row row to queue
+     * @param failure first failure of any writer
+     */
+    private static void put(final java.util.concurrent.BlockingQueue<java.util.Map<String, ?>> queue, final java.util.Map<String, ?> row, final java.util.concurrent.atomic.AtomicReference<Throwable> failure) {
+        try {
+            while (!queue.offer(row, 10, java.util.concurrent.TimeUnit.MILLISECONDS)) {
+                if (failure.get() != null) {
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, ex);
         }
-        for (java.lang.AutoCloseable resource : closables) {
+    }
+
+    /**
+     *
+     * @param sql SQL Statement with Named Parameters to be executed per row
+     * @param queue rows of this writer
+     * @param end marker queued after the last row
+     * @param options ParallelBatchOptions
+     * @param failure first failure of any writer, stops this writer
+     * @return number of rows written
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     */
+    private long writePartition(final String sql, final java.util.concurrent.BlockingQueue<java.util.Map<String, ?>> queue, final java.util.Map<String, ?> end, final ParallelBatchOptions options, final java.util.concurrent.atomic.AtomicReference<Throwable> failure) throws SQLException {
+        try (final java.sql.Connection con = con(sql); final NamedParameterStatement stmt = prepareNamed(sql, con, null)) {
+            final boolean autoCommit = beginBatch(con, true);
+            final SQLWatchdog.Timeout timeout = watch(stmt.getPreparedStatement());
+            long rows = 0;
+            int batched = 0;
+            int uncommitted = 0;
             try {
-                resource.close();
-            } catch (Exception ex) {
-                LOG.log(Level.SEVERE, ex.getMessage(), ex);
+                while (true) {
+                    final java.util.Map<String, ?> row = queue.poll(10, java.util.concurrent.TimeUnit.MILLISECONDS);
+                    if (failure.get() != null) {
+                        endBatch(con, true, false);
+                        return rows;
+                    }
+                    if (row == null) {
+                        continue;
+                    }
+                    if (row == end) {
+                        break;
+                    }
+                    stmt.setAll(row).addBatch();
+                    if (++batched == options.getBatchSize()) {
+                        executeBatch(sql, stmt, batched);
+                        rows += batched;
+                        uncommitted += batched;
+                        batched = 0;
+                    }
+                    if (uncommitted >= options.getCommitInterval()) {
+                        con.commit();
+                        uncommitted = 0;
+                    }
+                }
+                if (batched > 0) {
+                    executeBatch(sql, stmt, batched);
+                    rows += batched;
+                }
+                con.commit();
+                return rows;
+            } catch (java.sql.SQLException ex) {
+                endBatch(con, true, false);
+                throw timedOut(timeout, ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                endBatch(con, true, false);
+                throw new SQLDataAccessException("Interrupted writing parallel batch", ex);
+            } finally {
+                SQLResources.close(timeout);
+                restoreAutoCommit(con, autoCommit);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param sql SQL Statement, for events
+     * @param stmt NamedParameterStatement with the batch
+     * @param rows number of rows in the batch
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     */
+    private static void executeBatch(final String sql, final NamedParameterStatement stmt, final int rows) throws SQLException {
+        final Object event = SQLEvents.begin(SQLEvents.EXECUTE);
+        stmt.getPreparedStatement().executeBatch();
+        SQLEvents.commit(event, sql, rows);
+    }
+
+    /**
+     *
+     * @param con Connection to prepare
+     * @param inTransaction true to switch off auto commit
+     * @return auto commit mode of the Connection before the batch
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     */
+    private static boolean beginBatch(final java.sql.Connection con, final boolean inTransaction) throws SQLException {
+        final boolean autoCommit = con.getAutoCommit();
+        if (inTransaction && autoCommit) {
+            con.setAutoCommit(false);
+        }
+        return autoCommit;
+    }
+
+    /**
+     * Commits the transaction of the batch, or rolls it back if it failed and
+     * runs in one transaction. Statements of a failed batch that is not one
+     * transaction are still committed
+     *
+     * @param con Connection of the batch
+     * @param inTransaction true if the batch is one transaction
+     * @param success true if all statements succeeded
+     */
+    private static void endBatch(final java.sql.Connection con, final boolean inTransaction, final boolean success) {
+        try {
+            if (con.getAutoCommit()) {
+                return;
+            }
+            if (success || !inTransaction) {
+                con.commit();
+            } else {
+                con.rollback();
+            }
+        } catch (java.sql.SQLException ex) {
+            LOG.log(Level.SEVERE, ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     *
+     * @param con Connection of the batch
+     * @param autoCommit auto commit mode before the batch
+     */
+    private static void restoreAutoCommit(final java.sql.Connection con, final boolean autoCommit) {
+        try {
+            if (con.getAutoCommit() != autoCommit) {
+                con.setAutoCommit(autoCommit);
+            }
+        } catch (java.sql.SQLException ex) {
+            LOG.log(Level.SEVERE, ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     *
+     * @param ex exception of the batch, null if it was never executed
+     * @param size number of entries in the failed batch
+     * @param offset index of the first entry in the whole batch
+     * @param counts update counts of the whole batch, entries of the failed
+     * batch without a count are set to Statement#EXECUTE_FAILED
+     * @return counts
+     */
+    private static int[] batchCounts(final java.sql.SQLException ex, final int size, final int offset, final int[] counts) {
+        final int[] done = ex instanceof java.sql.BatchUpdateException ? ((java.sql.BatchUpdateException) ex).getUpdateCounts() : null;
+        final int copied = done == null ? 0 : Math.min(done.length, size);
+        if (copied > 0) {
+            System.arraycopy(done, 0, counts, offset, copied);
+        }
+        java.util.Arrays.fill(counts, offset + copied, counts.length, java.sql.Statement.EXECUTE_FAILED);
+        return counts;
+    }
+
+    /**
+     * A driver either stops at the failed statement, returning counts up to
+     * it, or continues and marks it Statement#EXECUTE_FAILED
+     *
+     * @param ex exception of the batch
+     * @param size number of entries in the failed batch
+     * @param offset index of the first entry in the whole batch
+     * @return index of the failed entry in the whole batch, -1 if unknown
+     */
+    private static int failedIndex(final java.sql.SQLException ex, final int size, final int offset) {
+        if (!(ex instanceof java.sql.BatchUpdateException)) {
+            return -1;
+        }
+        final int[] done = ((java.sql.BatchUpdateException) ex).getUpdateCounts();
+        if (done == null) {
+            return -1;
+        }
+        for (int i = 0; i < done.length; i++) {
+            if (done[i] == java.sql.Statement.EXECUTE_FAILED) {
+                return offset + i;
+            }
+        }
+        return done.length < size ? offset + done.length : -1;
+    }
+
+    /**
+     *
+     * @param sql SQL Statement to be executed
+     * @param params Objects for SQL Parameters
+     * @return SQLSupplier for ResultSet
+     */
+    public SQLSupplier<? extends java.sql.ResultSet> paramerterQuery(final String sql, final Object... params) {
+        return () -> openParameterQuery(sql, params).rs;
+    }
+
+    /**
+     *
+     * @param sql SQL Statement to be executed
+     * @param params Objects for SQL Parameters
+     * @return SQLResources holding the open ResultSet
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    private SQLResources openParameterQuery(final String sql, final Object... params) throws SQLException, SQLDataAccessException {
+        final SQLResources resources = resources(sql);
+        resources.con = con(sql);
+        try {
+            final Object event = SQLEvents.begin(SQLEvents.STATEMENT_PREPARE);
+            final java.sql.PreparedStatement stmt = resources.con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.CLOSE_CURSORS_AT_COMMIT);
+            SQLEvents.commit(event, sql, -1);
+            resources.stmt = stmt;
+            int cnt = 0;
+            for (final Object param : params) {
+                stmt.setObject(++cnt, param);
             }
+            resources.timeout = watch(stmt);
+            resources.rs = executeQuery(sql, stmt);
+            return resources;
+        } catch (java.sql.SQLException ex) {
+            resources.close();
+            throw timedOut(resources.timeout, ex);
+        } catch (RuntimeException ex) {
+            resources.close();
+            throw ex;
         }
     }
 
@@ -369,63 +1607,314 @@ public class FunctionalSql {
         if (LOG.isLoggable(Level.FINER)) {
             LOG.finer("closeResources stmt");
         }
-        closeResources(getClosableResources(stmt));
+        if (stmt == null) {
+            return;
+        }
+        java.sql.Connection con = null;
+        try {
+            con = stmt.getConnection();
+        } catch (Exception ex) {
+            LOG.log(Level.SEVERE, ex.getMessage(), ex);
+        }
+        SQLResources.close(stmt);
+        if (!NonClosingConnection.isShared(con)) {
+            SQLResources.close(con);
+        }
     }
 
     /**
      *
-     * @param ResultSet to AutoClose
+     * @param rs ResultSet to AutoClose
      */
     static void closeResources(final java.sql.ResultSet rs) {
         if (LOG.isLoggable(Level.FINER)) {
             LOG.finer("closeResources rs");
         }
-        closeResources(getClosableResources(rs));
+        if (rs == null) {
+            return;
+        }
+        java.sql.Statement stmt = null;
+        try {
+            stmt = rs.getStatement();
+        } catch (Exception ex) {
+            LOG.log(Level.SEVERE, ex.getMessage(), ex);
+        }
+        SQLResources.close(rs);
+        closeResources(stmt);
     }
 
     /**
+     * Stream over all results of a SQL Statement that returns several result
+     * sets or update counts, like a stored procedure or a multi statement
+     * script. Each result is read lazily on the same Statement and the rows
+     * of a result have to be consumed before moving to the next one.
      *
-     * @param ResultSet to AutoClose
-     * @return List of AutoClosables
+     * @param <T> the type for the SQLFunction
+     * @param sql SQL Statement to be executed
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     * @return Stream of SQLResult
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
      */
-    static java.util.List<java.lang.AutoCloseable> getClosableResources(final java.sql.ResultSet rs) {
-        if (LOG.isLoggable(Level.FINER)) {
-            LOG.finer("getClosableResources rs");
-        }
-        final java.util.List<java.lang.AutoCloseable> closables = new java.util.ArrayList<>(3);
-        if (LOG.isLoggable(Level.FINER)) {
-            LOG.finer(String.format("getClosableResources rs %s", rs));
-        }
-        closables.add(rs);
+    public <T> java.util.stream.Stream<SQLResult<T>> streamResults(final String sql, final SQLFunction<java.sql.ResultSet, T> rowFunction) throws SQLException, SQLDataAccessException {
+        final SQLResources resources = new SQLResources(sql);
+        final boolean isResultSet;
         try {
-            closables.addAll(getClosableResources(rs.getStatement()));
-        } catch (Exception ex) {
-            LOG.log(Level.SEVERE, ex.getMessage(), ex);
+            resources.con = con(sql);
+            final Object prepareEvent = SQLEvents.begin(SQLEvents.STATEMENT_PREPARE);
+            resources.stmt = resources.con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.CLOSE_CURSORS_AT_COMMIT);
+            SQLEvents.commit(prepareEvent, sql, -1);
+            resources.timeout = watch(resources.stmt);
+            final Object event = SQLEvents.begin(SQLEvents.EXECUTE);
+            isResultSet = resources.stmt.execute(sql);
+            SQLEvents.commit(event, sql, -1);
+        } catch (java.sql.SQLException ex) {
+            resources.close();
+            throw timedOut(resources.timeout, ex);
+        } catch (RuntimeException ex) {
+            resources.close();
+            throw ex;
         }
-        return closables;
+        return streamResults(resources, isResultSet, rowFunction);
     }
 
     /**
      *
-     * @param Statement to AutoClose
-     * @return List of AutoClosables
+     * @param <T> the type for the SQLFunction
+     * @param sql SQL Statement to be executed
+     * @param params Map with Named Parameters
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     * @return Stream of SQLResult
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     * @see #streamResults(String, SQLFunction)
      */
-    static java.util.List<java.lang.AutoCloseable> getClosableResources(final java.sql.Statement stmt) {
-        if (LOG.isLoggable(Level.FINER)) {
-            LOG.finer("getClosableResources stmt");
+    public <T> java.util.stream.Stream<SQLResult<T>> streamResultsFromNamedParameterQuery(final String sql, final java.util.Map<String, Object> params, final SQLFunction<java.sql.ResultSet, T> rowFunction) throws SQLException, SQLDataAccessException {
+        final SQLResources resources = new SQLResources(sql);
+        final boolean isResultSet;
+        try {
+            resources.con = con(sql);
+            final java.sql.PreparedStatement stmt = prepareNamed(sql, resources.con, params).setAll(params).getPreparedStatement();
+            resources.stmt = stmt;
+            resources.timeout = watch(stmt);
+            final Object event = SQLEvents.begin(SQLEvents.EXECUTE);
+            isResultSet = stmt.execute();
+            SQLEvents.commit(event, sql, -1);
+        } catch (java.sql.SQLException ex) {
+            resources.close();
+            throw timedOut(resources.timeout, ex);
+        } catch (RuntimeException ex) {
+            resources.close();
+            throw ex;
         }
-        final java.util.List<java.lang.AutoCloseable> closables = new java.util.ArrayList<>(2);
+        return streamResults(resources, isResultSet, rowFunction);
+    }
+
+    /**
+     *
+     * @param <T> the type for the SQLFunction
+     * @param resources SQLResources holding the executed Statement
+     * @param isResultSet value returned by Statement#execute
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     * @return Stream of SQLResult
+     */
+    private <T> java.util.stream.Stream<SQLResult<T>> streamResults(final SQLResources resources, final boolean isResultSet, final SQLFunction<java.sql.ResultSet, T> rowFunction) {
+        resources.trackEarlyClose(metrics, cancelOnEarlyClose);
+        return java.util.stream.StreamSupport.stream(new SQLResultsSpliterator<>(resources, isResultSet, rowFunction), false)
+                .onClose(resources);
+    }
+
+    /**
+     *
+     * @param <T> the type for the SQLFunction
+     * @param baseSql SQL Statement to page through
+     * @param keyColumns unique key columns to order and page by
+     * @param pageSize number of rows per page
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     * @return Stream of T
+     * @see #keysetStream(String, java.util.Map, java.util.List, int,
+     * SQLFunction, KeysetCheckpoint)
+     */
+    public <T> java.util.stream.Stream<T> keysetStream(final String baseSql, final java.util.List<String> keyColumns, final int pageSize, final SQLFunction<java.sql.ResultSet, T> rowFunction) {
+        return keysetStream(baseSql, java.util.Collections.emptyMap(), keyColumns, pageSize, rowFunction, KeysetCheckpoint.start());
+    }
+
+    /**
+     * Lazy Stream over a query that is read in pages ordered by its key
+     * columns. Each page is a separate query, with the rows after the key of
+     * the previous page, on its own Connection, so no cursor or transaction
+     * is held open between pages. Pages end with
+     * PagingOptions#STANDARD_LIMIT_CLAUSE, use keysetStream with PagingOptions
+     * for another limit clause.
+     *
+     * @param <T> the type for the SQLFunction
+     * @param baseSql SQL Statement to page through, wrapped as a sub query so
+     * it may have its own WHERE clause and named parameters
+     * @param params Map with Named Parameters for baseSql
+     * @param keyColumns unique key columns to order and page by
+     * @param pageSize number of rows per page
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     * @param checkpoint KeysetCheckpoint to start after, updated with the key
+     * of every row consumed from the Stream
+     * @return Stream of T
+     */
+    public <T> java.util.stream.Stream<T> keysetStream(final String baseSql, final java.util.Map<String, Object> params, final java.util.List<String> keyColumns, final int pageSize, final SQLFunction<java.sql.ResultSet, T> rowFunction, final KeysetCheckpoint checkpoint) {
+        final SQLPagedSpliterator<T> spliterator = new SQLPagedSpliterator<>(new KeysetPageSource<>(this, baseSql, params, keyColumns, pageSize, PagingOptions.STANDARD_LIMIT_CLAUSE, rowFunction, checkpoint), checkpoint);
+        return java.util.stream.StreamSupport.stream(spliterator, false)
+                .onClose(spliterator::close);
+    }
+
+    /**
+     * Keyset paged Stream that reads the following pages while the current
+     * one is consumed, see PagingOptions
+     *
+     * @param <T> the type for the SQLFunction
+     * @param baseSql SQL Statement to page through, wrapped as a sub query so
+     * it may have its own WHERE clause and named parameters
+     * @param params Map with Named Parameters for baseSql
+     * @param keyColumns unique key columns to order and page by
+     * @param options PagingOptions
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     * @param checkpoint KeysetCheckpoint to start after, updated with the key
+     * of every row consumed from the Stream
+     * @return Stream of T
+     * @see #keysetStream(String, java.util.Map, java.util.List, int,
+     * SQLFunction, KeysetCheckpoint)
+     */
+    public <T> java.util.stream.Stream<T> keysetStream(final String baseSql, final java.util.Map<String, Object> params, final java.util.List<String> keyColumns, final PagingOptions options, final SQLFunction<java.sql.ResultSet, T> rowFunction, final KeysetCheckpoint checkpoint) {
+        return pagedStream(new KeysetPageSource<>(this, baseSql, params, keyColumns, options.getPageSize(), options.getLimitClause(), rowFunction, checkpoint), checkpoint, options);
+    }
+
+    /**
+     * Endless Stream of the rows of a table whose key only grows, such as an
+     * outbox table, starting at its first row. The Stream has to be closed to
+     * stop it, see tail with PagingOptions
+     *
+     * @param sql SQL Statement to tail
+     * @param keyColumn increasing unique key column
+     * @param pollInterval time to wait for new rows when there are none
+     * @return Stream of DetachedRow
+     */
+    public java.util.stream.Stream<DetachedRow> tail(final String sql, final String keyColumn, final java.time.Duration pollInterval) {
+        return tail(sql, java.util.Collections.emptyMap(), keyColumn, pollInterval, new PagingOptions(), DetachedRow::of, null);
+    }
+
+    /**
+     * Endless Stream of the rows of a table whose key only grows. Pages are
+     * read with "WHERE keyColumn &gt; :last", after an empty page the
+     * poll interval doubles up to 16 times while the table stays idle, and
+     * after a full page the page size doubles up to the maximum page size of
+     * the PagingOptions. Transient failures are logged and retried after the
+     * last returned key, so the Stream survives lost Connections, any other
+     * failure is thrown as SQLDataAccessException. Closing the Stream, from
+     * any thread, or interrupting the consuming thread ends it
+     *
+     * @param <T> the type for the SQLFunction
+     * @param sql SQL Statement to tail, may use named parameters
+     * @param params Map with Named Parameters
+     * @param keyColumn increasing unique key column
+     * @param pollInterval time to wait for new rows when there are none
+     * @param options PagingOptions with the initial and maximum page size
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     * @param checkpoint KeysetCheckpoint to resume after and to update, null
+     * to start at the first row
+     * @return Stream of T
+     */
+    public <T> java.util.stream.Stream<T> tail(final String sql, final java.util.Map<String, Object> params, final String keyColumn, final java.time.Duration pollInterval, final PagingOptions options, final SQLFunction<java.sql.ResultSet, T> rowFunction, final KeysetCheckpoint checkpoint) {
+        final TailPageSource<T> source = new TailPageSource<>(this, sql, params, keyColumn, pollInterval, options, rowFunction, checkpoint);
+        final SQLPagedSpliterator<T> spliterator = new SQLPagedSpliterator<>(source, checkpoint);
+        return java.util.stream.StreamSupport.stream(spliterator, false)
+                .onClose(source::close);
+    }
+
+    /**
+     * Offset paged Stream, the SQL Statement has to page with the :limit and
+     * :offset named parameters, for example "SELECT ... ORDER BY id LIMIT
+     * :limit OFFSET :offset". The following pages are read while the current
+     * one is consumed, see PagingOptions
+     *
+     * @param <T> the type for the SQLFunction
+     * @param sql SQL Statement with :limit and :offset named parameters
+     * @param params Map with the other Named Parameters
+     * @param options PagingOptions
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     * @return Stream of T
+     */
+    public <T> java.util.stream.Stream<T> pagedStream(final String sql, final java.util.Map<String, Object> params, final PagingOptions options, final SQLFunction<java.sql.ResultSet, T> rowFunction) {
+        return pagedStream(new OffsetPageSource<>(this, sql, params, options.getPageSize(), rowFunction), null, options);
+    }
+
+    /**
+     *
+     * @param <T> the type for the SQLFunction
+     * @param source SQLPageSource to read pages from
+     * @param checkpoint KeysetCheckpoint to update, may be null
+     * @param options PagingOptions
+     * @return Stream of T
+     */
+    private <T> java.util.stream.Stream<T> pagedStream(final SQLPageSource<T> source, final KeysetCheckpoint checkpoint, final PagingOptions options) {
+        final SQLPagedSpliterator<T> spliterator = options.getPrefetchDepth() > 0 || options.isAdaptive()
+                ? new SQLPrefetchingSpliterator<>(source, checkpoint, options)
+                : new SQLPagedSpliterator<>(source, checkpoint);
+        return java.util.stream.StreamSupport.stream(spliterator, false)
+                .onClose(spliterator::close);
+    }
+
+    /**
+     * Reads one page on its own Connection, committing if the Connection is
+     * not in auto commit mode
+     *
+     * @param <T> the type for the SQLFunction
+     * @param sql SQL Statement for the page
+     * @param params Map with Named Parameters
+     * @param pageSize maximum number of rows to read
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     * @param keyColumns key columns to keep per row, null if not keyed
+     * @return SQLPage
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    <T> SQLPage<T> readPage(final String sql, final java.util.Map<String, Object> params, final int pageSize, final SQLFunction<java.sql.ResultSet, T> rowFunction, final java.util.List<String> keyColumns) throws SQLException, SQLDataAccessException {
+        final long start = System.nanoTime();
+        final SQLResources resources = resources(sql);
         try {
-            if (stmt != null) {
-                if (LOG.isLoggable(Level.FINER)) {
-                    LOG.finer(String.format("getClosableResources stmt %s - %s", stmt, stmt.getConnection()));
+            resources.con = con(sql);
+            final java.sql.PreparedStatement stmt = prepareNamed(sql, resources.con, params).setAll(params).getPreparedStatement();
+            resources.stmt = stmt;
+            stmt.setMaxRows(pageSize);
+            stmt.setFetchSize(pageSize);
+            resources.timeout = watch(stmt);
+            final java.sql.ResultSet rs = executeQuery(sql, stmt);
+            resources.rs = rs;
+            resources.iterating();
+            final java.sql.ResultSet wrapper = new ForwardOnlyReadResultSet(rs, shapes, sql);
+            final java.util.List<T> rows = new java.util.ArrayList<>(pageSize);
+            final Object[][] keys = keyColumns == null ? null : new Object[pageSize][];
+            while (rows.size() < pageSize && rs.next()) {
+                if (keys != null) {
+                    final Object[] key = new Object[keyColumns.size()];
+                    for (int i = 0; i < key.length; i++) {
+                        key[i] = rs.getObject(keyColumns.get(i));
+                    }
+                    keys[rows.size()] = key;
                 }
-                closables.add(stmt);
-                closables.add(stmt.getConnection());
+                rows.add(rowFunction.apply(wrapper));
             }
-        } catch (Exception ex) {
-            LOG.log(Level.SEVERE, ex.getMessage(), ex);
+            resources.rows = rows.size();
+            resources.exhausted = true;
+            if (!resources.con.getAutoCommit()) {
+                resources.con.commit();
+            }
+            final SQLPage<T> page = new SQLPage<>(rows, keys, pageSize);
+            page.fetchNanos = System.nanoTime() - start;
+            return page;
+        } catch (java.sql.SQLException ex) {
+            throw timedOut(resources.timeout, ex);
+        } finally {
+            resources.close();
         }
-        return closables;
     }
 }
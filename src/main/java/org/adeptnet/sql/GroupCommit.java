@@ -0,0 +1,252 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ *
+ * Runs independent units of work submitted by many threads on one shared
+ * Connection and commits them together, so that a window of units costs one
+ * commit. Each unit runs behind its own Savepoint and a failing unit is
+ * rolled back to it without affecting the others. The callers block until
+ * the commit of their group
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+final class GroupCommit implements Runnable {
+
+    private static final Logger LOG = Logger.getLogger(GroupCommit.class.getName());
+    private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final SQLSupplier<java.sql.Connection> conProducer;
+    private final java.util.function.Function<java.sql.Connection, FunctionalSql> scope;
+    private final long windowNanos;
+    private final int maxUnits;
+    private final java.util.concurrent.LinkedBlockingQueue<Unit<?>> queue = new java.util.concurrent.LinkedBlockingQueue<>();
+    private final java.util.concurrent.atomic.AtomicBoolean started = new java.util.concurrent.atomic.AtomicBoolean();
+    private volatile Thread worker;
+    private java.sql.Connection con;
+    private FunctionalSql unitSql;
+
+    /**
+     *
+     * @param conProducer SQL Supplier that will provide the shared Connection
+     * @param scope Function that returns the FunctionalSql units run with
+     * @param windowNanos time a group accepts units after its first unit
+     * @param maxUnits most units per group
+     */
+    GroupCommit(final SQLSupplier<java.sql.Connection> conProducer, final java.util.function.Function<java.sql.Connection, FunctionalSql> scope, final long windowNanos, final int maxUnits) {
+        this.conProducer = conProducer;
+        this.scope = scope;
+        this.windowNanos = windowNanos;
+        this.maxUnits = maxUnits;
+    }
+
+    /**
+     *
+     * @param <T> the type for the SQLFunction
+     * @param work unit of work
+     * @return result of work, once its group is committed
+     * @throws java.sql.SQLException if work or the commit throws SQLException
+     * @throws SQLDataAccessException if work throws SQLDataAccessException
+     */
+    <T> T submit(final SQLFunction<FunctionalSql, T> work) throws java.sql.SQLException, SQLDataAccessException {
+        if (Thread.currentThread() == worker) {
+            throw new IllegalStateException("transactional can not be nested in a group commit unit");
+        }
+        final Unit<T> unit = new Unit<>(work);
+        queue.add(unit);
+        start();
+        try {
+            return unit.future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLDataAccessException("Interrupted waiting for group commit", ex);
+        } catch (java.util.concurrent.ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof java.sql.SQLException) {
+                throw (java.sql.SQLException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SQLDataAccessException(cause.getMessage(), cause);
+        }
+    }
+
+    private void start() {
+        if (started.compareAndSet(false, true)) {
+            final Thread thread = new Thread(this, "SQLGroupCommit");
+            thread.setDaemon(true);
+            worker = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Runs groups until the thread dies. If it does, the shared Connection is
+     * released and the queued units fail, and the next submit starts a new
+     * thread
+     */
+    @Override
+    public void run() {
+        Throwable failure = null;
+        try {
+            while (true) {
+                try {
+                    Unit<?> first = queue.poll(IDLE_NANOS, TimeUnit.NANOSECONDS);
+                    if (first == null) {
+                        release();
+                        first = queue.take();
+                    }
+                    group(first);
+                } catch (InterruptedException ex) {
+                    LOG.log(Level.SEVERE, ex.getMessage(), ex);
+                }
+            }
+        } catch (Throwable ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            release();
+            final SQLDataAccessException stopped = new SQLDataAccessException("Group commit thread stopped", failure);
+            Unit<?> unit;
+            while ((unit = queue.poll()) != null) {
+                unit.future.completeExceptionally(stopped);
+            }
+            worker = null;
+            started.set(false);
+            if (!queue.isEmpty()) {
+                start();
+            }
+        }
+    }
+
+    /**
+     * Runs units until the window passes or the group is full, then commits
+     * them
+     *
+     * @param first first unit of the group
+     * @throws InterruptedException if interrupted waiting for units
+     */
+    private void group(final Unit<?> first) throws InterruptedException {
+        final java.util.List<Unit<?>> done = new java.util.ArrayList<>();
+        final long end = System.nanoTime() + windowNanos;
+        Unit<?> unit = first;
+        try {
+            if (con == null) {
+                con = conProducer.get();
+                if (con.getAutoCommit()) {
+                    con.setAutoCommit(false);
+                }
+                unitSql = scope.apply(con);
+            }
+            while (unit != null) {
+                if (unit.run(con, unitSql)) {
+                    done.add(unit);
+                }
+                if (done.size() >= maxUnits) {
+                    break;
+                }
+                final long remaining = end - System.nanoTime();
+                unit = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+            }
+            unit = null;
+            con.commit();
+            for (final Unit<?> committed : done) {
+                committed.complete();
+            }
+        } catch (java.sql.SQLException | RuntimeException | Error ex) {
+            LOG.log(Level.SEVERE, ex.getMessage(), ex);
+            if (unit != null && !unit.future.isDone()) {
+                done.add(unit);
+            }
+            for (final Unit<?> failed : done) {
+                failed.future.completeExceptionally(ex);
+            }
+            release();
+        }
+    }
+
+    /**
+     * Closes the shared Connection, rolling back anything uncommitted
+     */
+    private void release() {
+        if (con == null) {
+            return;
+        }
+        try {
+            con.rollback();
+        } catch (java.sql.SQLException | RuntimeException ex) {
+            LOG.log(Level.FINE, ex.getMessage(), ex);
+        }
+        NonClosingConnection.release(con);
+        SQLResources.close(con);
+        con = null;
+        unitSql = null;
+    }
+
+    /**
+     *
+     * One unit of work and the future of its caller
+     *
+     * @param <T> the type for the SQLFunction
+     */
+    private static final class Unit<T> {
+
+        private final SQLFunction<FunctionalSql, T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+
+        private Unit(final SQLFunction<FunctionalSql, T> work) {
+            this.work = work;
+        }
+
+        /**
+         *
+         * @param con shared Connection
+         * @param unitSql FunctionalSql bound to con
+         * @return true if the unit succeeded and waits for the commit
+         * @throws java.sql.SQLException if the Savepoint can not be set or
+         * rolled back, which fails the whole group
+         */
+        private boolean run(final java.sql.Connection con, final FunctionalSql unitSql) throws java.sql.SQLException {
+            final java.sql.Savepoint savepoint = con.setSavepoint();
+            try {
+                result = work.apply(unitSql);
+            } catch (Throwable ex) {
+                con.rollback(savepoint);
+                future.completeExceptionally(ex);
+                return false;
+            }
+            try {
+                con.releaseSavepoint(savepoint);
+            } catch (java.sql.SQLException ex) {
+                LOG.log(Level.FINE, ex.getMessage(), ex);
+            }
+            return true;
+        }
+
+        private void complete() {
+            future.complete(result);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ *
+ * Key of the last row handed to the consumer of a keyset Stream. The token
+ * can be stored and used to resume the Stream after that row. Tokens encode
+ * each key value with a type tag, keys may be null, String, Boolean, the
+ * Number types of java.lang and java.math, java.sql.Date, Time and Timestamp,
+ * the java.time types of JDBC 4.2, UUID or byte[]
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public final class KeysetCheckpoint {
+
+    private static final int VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte BOOLEAN = 2;
+    private static final byte BYTE = 3;
+    private static final byte SHORT = 4;
+    private static final byte INTEGER = 5;
+    private static final byte LONG = 6;
+    private static final byte FLOAT = 7;
+    private static final byte DOUBLE = 8;
+    private static final byte BIG_INTEGER = 9;
+    private static final byte BIG_DECIMAL = 10;
+    private static final byte DATE = 11;
+    private static final byte TIME = 12;
+    private static final byte TIMESTAMP = 13;
+    private static final byte LOCAL_DATE = 14;
+    private static final byte LOCAL_TIME = 15;
+    private static final byte LOCAL_DATE_TIME = 16;
+    private static final byte OFFSET_DATE_TIME = 17;
+    private static final byte INSTANT = 18;
+    private static final byte UUID = 19;
+    private static final byte BYTES = 20;
+
+    private volatile Object[] lastKey;
+
+    private KeysetCheckpoint(final Object[] lastKey) {
+        this.lastKey = lastKey;
+    }
+
+    /**
+     *
+     * @return KeysetCheckpoint before the first row
+     */
+    public static KeysetCheckpoint start() {
+        return new KeysetCheckpoint(null);
+    }
+
+    /**
+     *
+     * @param lastKey values of the key columns of the last processed row
+     * @return KeysetCheckpoint after lastKey
+     */
+    public static KeysetCheckpoint after(final Object... lastKey) {
+        return new KeysetCheckpoint(lastKey.clone());
+    }
+
+    /**
+     *
+     * @param token token from toToken, null or empty for the start
+     * @return KeysetCheckpoint
+     * @throws SQLDataAccessException if the token is invalid
+     */
+    public static KeysetCheckpoint fromToken(final String token) throws SQLDataAccessException {
+        if (token == null || token.isEmpty()) {
+            return start();
+        }
+        try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            final int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException(String.format("unknown version %d", version));
+            }
+            final Object[] key = new Object[in.readUnsignedShort()];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = read(in);
+            }
+            if (in.read() != -1) {
+                throw new IOException("trailing data");
+            }
+            return new KeysetCheckpoint(key);
+        } catch (IOException | IllegalArgumentException | java.time.DateTimeException ex) {
+            throw new SQLDataAccessException(String.format("Invalid keyset checkpoint token: %s", ex.getMessage()), ex);
+        }
+    }
+
+    /**
+     *
+     * @return token to resume from, empty before the first row
+     * @throws SQLDataAccessException if a key value has an unsupported type
+     */
+    public String toToken() throws SQLDataAccessException {
+        final Object[] key = lastKey;
+        if (key == null) {
+            return "";
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeShort(key.length);
+            for (final Object value : key) {
+                write(out, value);
+            }
+        } catch (IOException ex) {
+            throw new SQLDataAccessException(String.format("Keyset checkpoint not encodable: %s", ex.getMessage()), ex);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    private static void write(final DataOutputStream out, final Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeBytes(out, ((String) value).getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof java.math.BigInteger) {
+            out.writeByte(BIG_INTEGER);
+            writeBytes(out, ((java.math.BigInteger) value).toByteArray());
+        } else if (value instanceof java.math.BigDecimal) {
+            out.writeByte(BIG_DECIMAL);
+            out.writeInt(((java.math.BigDecimal) value).scale());
+            writeBytes(out, ((java.math.BigDecimal) value).unscaledValue().toByteArray());
+        } else if (value instanceof java.sql.Timestamp) {
+            out.writeByte(TIMESTAMP);
+            out.writeLong(((java.sql.Timestamp) value).getTime());
+            out.writeInt(((java.sql.Timestamp) value).getNanos());
+        } else if (value instanceof java.sql.Date) {
+            out.writeByte(DATE);
+            out.writeLong(((java.sql.Date) value).getTime());
+        } else if (value instanceof java.sql.Time) {
+            out.writeByte(TIME);
+            out.writeLong(((java.sql.Time) value).getTime());
+        } else if (value instanceof java.time.LocalDate) {
+            out.writeByte(LOCAL_DATE);
+            out.writeLong(((java.time.LocalDate) value).toEpochDay());
+        } else if (value instanceof java.time.LocalTime) {
+            out.writeByte(LOCAL_TIME);
+            out.writeLong(((java.time.LocalTime) value).toNanoOfDay());
+        } else if (value instanceof java.time.LocalDateTime) {
+            out.writeByte(LOCAL_DATE_TIME);
+            out.writeLong(((java.time.LocalDateTime) value).toLocalDate().toEpochDay());
+            out.writeLong(((java.time.LocalDateTime) value).toLocalTime().toNanoOfDay());
+        } else if (value instanceof java.time.OffsetDateTime) {
+            final java.time.OffsetDateTime dateTime = (java.time.OffsetDateTime) value;
+            out.writeByte(OFFSET_DATE_TIME);
+            out.writeLong(dateTime.toEpochSecond());
+            out.writeInt(dateTime.getNano());
+            out.writeInt(dateTime.getOffset().getTotalSeconds());
+        } else if (value instanceof java.time.Instant) {
+            out.writeByte(INSTANT);
+            out.writeLong(((java.time.Instant) value).getEpochSecond());
+            out.writeInt(((java.time.Instant) value).getNano());
+        } else if (value instanceof java.util.UUID) {
+            out.writeByte(UUID);
+            out.writeLong(((java.util.UUID) value).getMostSignificantBits());
+            out.writeLong(((java.util.UUID) value).getLeastSignificantBits());
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            writeBytes(out, (byte[]) value);
+        } else {
+            throw new IOException(String.format("unsupported key type %s", value.getClass().getName()));
+        }
+    }
+
+    private static Object read(final DataInputStream in) throws IOException {
+        final int tag = in.readUnsignedByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return new String(readBytes(in), java.nio.charset.StandardCharsets.UTF_8);
+            case BOOLEAN:
+                return in.readBoolean();
+            case BYTE:
+                return in.readByte();
+            case SHORT:
+                return in.readShort();
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case BIG_INTEGER:
+                return new java.math.BigInteger(readBytes(in));
+            case BIG_DECIMAL: {
+                final int scale = in.readInt();
+                return new java.math.BigDecimal(new java.math.BigInteger(readBytes(in)), scale);
+            }
+            case DATE:
+                return new java.sql.Date(in.readLong());
+            case TIME:
+                return new java.sql.Time(in.readLong());
+            case TIMESTAMP: {
+                final java.sql.Timestamp timestamp = new java.sql.Timestamp(in.readLong());
+                timestamp.setNanos(in.readInt());
+                return timestamp;
+            }
+            case LOCAL_DATE:
+                return java.time.LocalDate.ofEpochDay(in.readLong());
+            case LOCAL_TIME:
+                return java.time.LocalTime.ofNanoOfDay(in.readLong());
+            case LOCAL_DATE_TIME: {
+                final java.time.LocalDate date = java.time.LocalDate.ofEpochDay(in.readLong());
+                return java.time.LocalDateTime.of(date, java.time.LocalTime.ofNanoOfDay(in.readLong()));
+            }
+            case OFFSET_DATE_TIME: {
+                final java.time.Instant instant = java.time.Instant.ofEpochSecond(in.readLong(), in.readInt());
+                return java.time.OffsetDateTime.ofInstant(instant, java.time.ZoneOffset.ofTotalSeconds(in.readInt()));
+            }
+            case INSTANT:
+                return java.time.Instant.ofEpochSecond(in.readLong(), in.readInt());
+            case UUID:
+                return new java.util.UUID(in.readLong(), in.readLong());
+            case BYTES:
+                return readBytes(in);
+            default:
+                throw new IOException(String.format("unknown type tag %d", tag));
+        }
+    }
+
+    private static void writeBytes(final DataOutputStream out, final byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException(String.format("invalid length %d", length));
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     *
+     * @return values of the key columns of the last row, null before the
+     * first row
+     */
+    public Object[] getLastKey() {
+        final Object[] key = lastKey;
+        return key == null ? null : key.clone();
+    }
+
+    /**
+     *
+     * @return key without copying, for internal use
+     */
+    Object[] lastKey() {
+        return lastKey;
+    }
+
+    void update(final Object[] key) {
+        lastKey = key;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("KeysetCheckpoint%s", java.util.Arrays.toString(lastKey));
+    }
+}
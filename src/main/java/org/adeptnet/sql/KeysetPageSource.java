@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * Reads pages of a query ordered by its key columns, each page continues
+ * after the key of the last row of the previous page
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ * @param <T> Result Type of applying row function on ResultSet
+ */
+class KeysetPageSource<T> implements SQLPageSource<T> {
+
+    static final String KEY_PARAMETER = "keyset_";
+    static final String LIMIT_PARAMETER = KEY_PARAMETER + "limit";
+
+    private final FunctionalSql fsql;
+    private final java.util.Map<String, Object> params;
+    private final java.util.List<String> keyColumns;
+    private final SQLFunction<java.sql.ResultSet, T> rowFunction;
+    private final KeysetCheckpoint checkpoint;
+    private final String firstSql;
+    private final String nextSql;
+    private final boolean limited;
+    private volatile int pageSize;
+
+    /**
+     *
+     * @param fsql FunctionalSql to read the pages with
+     * @param baseSql SQL Statement to page through, may use named parameters
+     * @param params Map with Named Parameters for baseSql
+     * @param keyColumns unique key columns to order and page by
+     * @param pageSize number of rows per page
+     * @param limitClause row limit with the :limit named parameter, null for
+     * none
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     * @param checkpoint KeysetCheckpoint to start after
+     */
+    KeysetPageSource(final FunctionalSql fsql, final String baseSql, final java.util.Map<String, Object> params, final java.util.List<String> keyColumns, final int pageSize, final String limitClause, final SQLFunction<java.sql.ResultSet, T> rowFunction, final KeysetCheckpoint checkpoint) {
+        if (keyColumns.isEmpty()) {
+            throw new IllegalArgumentException("keyColumns can not be empty");
+        }
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize has to be positive");
+        }
+        this.fsql = fsql;
+        this.params = params;
+        this.keyColumns = keyColumns;
+        this.pageSize = pageSize;
+        this.rowFunction = rowFunction;
+        this.checkpoint = checkpoint;
+        this.firstSql = pageSql(baseSql, keyColumns, false, limitClause);
+        this.nextSql = pageSql(baseSql, keyColumns, true, limitClause);
+        this.limited = limitClause != null;
+    }
+
+    /**
+     *
+     * @param baseSql SQL Statement to page through
+     * @param keyColumns key columns to order and page by
+     * @param after true to add the condition for rows after the last key
+     * @param limitClause row limit with the :limit named parameter, null for
+     * none
+     * @return SQL Statement for one page
+     */
+    static String pageSql(final String baseSql, final java.util.List<String> keyColumns, final boolean after, final String limitClause) {
+        final StringBuilder sb = new StringBuilder(baseSql.length() + 64 * keyColumns.size());
+        sb.append("SELECT * FROM (").append(baseSql).append(") keyset_page");
+        if (after) {
+            sb.append(" WHERE ");
+            for (int i = 0; i < keyColumns.size(); i++) {
+                if (i > 0) {
+                    sb.append(" OR ");
+                }
+                sb.append('(');
+                for (int j = 0; j < i; j++) {
+                    sb.append(keyColumns.get(j)).append(" = :").append(KEY_PARAMETER).append(j).append(" AND ");
+                }
+                sb.append(keyColumns.get(i)).append(" > :").append(KEY_PARAMETER).append(i).append(')');
+            }
+        }
+        sb.append(" ORDER BY ");
+        for (int i = 0; i < keyColumns.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(keyColumns.get(i));
+        }
+        if (limitClause != null) {
+            sb.append(' ').append(limitClause.replace(":limit", ":" + LIMIT_PARAMETER));
+        }
+        return sb.toString();
+    }
+
+    /**
+     *
+     * @param lastKey key to continue after, null for the first page
+     * @return SQLPage
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    SQLPage<T> read(final Object[] lastKey) throws java.sql.SQLException, SQLDataAccessException {
+        final int size = pageSize;
+        if (lastKey == null && !limited) {
+            return fsql.readPage(firstSql, params, size, rowFunction, keyColumns);
+        }
+        final java.util.Map<String, Object> pageParams = new java.util.HashMap<>(params);
+        if (limited) {
+            pageParams.put(LIMIT_PARAMETER, size);
+        }
+        if (lastKey == null) {
+            return fsql.readPage(firstSql, pageParams, size, rowFunction, keyColumns);
+        }
+        for (int i = 0; i < lastKey.length; i++) {
+            pageParams.put(KEY_PARAMETER + i, lastKey[i]);
+        }
+        return fsql.readPage(nextSql, pageParams, size, rowFunction, keyColumns);
+    }
+
+    @Override
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public void setPageSize(final int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public SQLPage<T> first() throws java.sql.SQLException, SQLDataAccessException {
+        return read(checkpoint == null ? null : checkpoint.lastKey());
+    }
+
+    @Override
+    public SQLPage<T> next(final SQLPage<T> previous) throws java.sql.SQLException, SQLDataAccessException {
+        if (previous.isLast()) {
+            return null;
+        }
+        return read(previous.lastKey());
+    }
+}
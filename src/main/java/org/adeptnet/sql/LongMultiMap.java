@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * Open addressing hash multimap from long keys to values. The values of a key
+ * are chained through an int array, so a lookup returns an entry index and
+ * walking the matches allocates nothing
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ * @param <V> the type of the values
+ */
+final class LongMultiMap<V> {
+
+    private long[] keys;
+    private int[] heads;
+    private int mask;
+    private int distinct;
+    private Object[] values;
+    private int[] next;
+    private int size;
+
+    /**
+     *
+     * @param expectedSize number of values expected, the map grows beyond it
+     */
+    LongMultiMap(final int expectedSize) {
+        final int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        keys = new long[capacity];
+        heads = new int[capacity];
+        java.util.Arrays.fill(heads, -1);
+        mask = capacity - 1;
+        values = new Object[Math.max(expectedSize, 8)];
+        next = new int[values.length];
+    }
+
+    private int slot(final long key) {
+        int slot = LongIntHashMap.hash(key) & mask;
+        while (heads[slot] >= 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     *
+     * @param key key
+     * @param value value added to the values of key
+     */
+    void put(final long key, final V value) {
+        if (size == values.length) {
+            values = java.util.Arrays.copyOf(values, size * 2);
+            next = java.util.Arrays.copyOf(next, size * 2);
+        }
+        final int slot = slot(key);
+        if (heads[slot] < 0) {
+            keys[slot] = key;
+            distinct++;
+        }
+        next[size] = heads[slot];
+        heads[slot] = size;
+        values[size] = value;
+        size++;
+        if (distinct * 2 > heads.length) {
+            rehash();
+        }
+    }
+
+    /**
+     *
+     * @param key key
+     * @return index of the first entry of key, -1 if absent
+     */
+    int first(final long key) {
+        return heads[slot(key)];
+    }
+
+    /**
+     *
+     * @param entry index of an entry
+     * @return index of the next entry with the same key, -1 if none
+     */
+    int next(final int entry) {
+        return next[entry];
+    }
+
+    /**
+     *
+     * @param entry index of an entry
+     * @return value of the entry
+     */
+    @SuppressWarnings("unchecked")
+    V value(final int entry) {
+        return (V) values[entry];
+    }
+
+    /**
+     *
+     * @return number of values, entries are indexed from 0 to size - 1
+     */
+    int size() {
+        return size;
+    }
+
+    private void rehash() {
+        final long[] oldKeys = keys;
+        final int[] oldHeads = heads;
+        keys = new long[oldKeys.length * 2];
+        heads = new int[oldHeads.length * 2];
+        java.util.Arrays.fill(heads, -1);
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldHeads[i] >= 0) {
+                final int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                heads[slot] = oldHeads[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * Ordered list of Named Parameter Statements to execute in one go. Consecutive
+ * entries with the same SQL are sent as one PreparedStatement batch
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public final class NamedParameterBatch {
+
+    final java.util.List<String> sqls = new java.util.ArrayList<>();
+    final java.util.List<java.util.Map<String, ?>> params = new java.util.ArrayList<>();
+
+    /**
+     *
+     * @param sql SQL Statement to be executed
+     * @param params Map with Named Parameters
+     * @return this
+     */
+    public NamedParameterBatch add(final String sql, final java.util.Map<String, ?> params) {
+        this.sqls.add(sql);
+        this.params.add(params);
+        return this;
+    }
+
+    /**
+     *
+     * @return number of entries
+     */
+    public int size() {
+        return sqls.size();
+    }
+}
@@ -47,14 +47,66 @@ import java.util.regex.Pattern;
 public class NamedParameterStatement implements java.lang.AutoCloseable {
 
     private static final Logger LOGGER = Logger.getLogger(NamedParameterStatement.class.getName());
+    private static final Pattern FIND_PARAMETERS_PATTERN = Pattern.compile("(?<!')(:[\\w]+)(?!')");
+
+    private static final Pattern ANY_PATTERN = Pattern.compile("(?i)\\bANY\\s*\\(\\s*$");
 
     private final java.sql.PreparedStatement prepStmt;
+    private final String jdbcSql;
     private final java.util.Map<String, java.util.List<Integer>> fields = new java.util.HashMap<>();
+    private final java.util.Map<String, Integer> buckets = new java.util.HashMap<>();
+    private final java.util.Set<String> arrays = new java.util.HashSet<>();
 
     public NamedParameterStatement(final java.sql.Connection conn, final String statementWithNames) throws java.sql.SQLException {
-
-        final Pattern findParametersPattern = Pattern.compile("(?<!')(:[\\w]+)(?!')");
-        final Matcher matcher = findParametersPattern.matcher(statementWithNames);
+        this(conn, statementWithNames, null, null);
+    }
+
+    /**
+     *
+     * @param conn Connection to prepare the statement on
+     * @param statementWithNames SQL Statement with Named Parameters
+     * @param keyColumns null for no generated keys, empty for
+     * Statement#RETURN_GENERATED_KEYS, otherwise the names of the key columns
+     * to return
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     */
+    public NamedParameterStatement(final java.sql.Connection conn, final String statementWithNames, final String[] keyColumns) throws java.sql.SQLException {
+        this(conn, statementWithNames, keyColumns, null);
+    }
+
+    /**
+     * Collection and array parameters are expanded to an IN list of ?, padded
+     * to the next power of two by repeating the last value, so that lists of
+     * different sizes share a few statements and plans. An empty Collection or
+     * array is rejected, as neither IN () nor NOT IN (NULL) means what the
+     * caller wants. A parameter written as ANY(:name) is bound as one
+     * java.sql.Array instead, for databases that support it, and may be empty
+     *
+     * @param conn Connection to prepare the statement on
+     * @param statementWithNames SQL Statement with Named Parameters
+     * @param params Map with Named Parameters, used to size the IN lists
+     * @throws java.sql.SQLException if underlying operation throws
+     * SQLException, or an IN list parameter is empty
+     */
+    public NamedParameterStatement(final java.sql.Connection conn, final String statementWithNames, final java.util.Map<String, ?> params) throws java.sql.SQLException {
+        this(conn, statementWithNames, null, params);
+    }
+
+    /**
+     *
+     * @param conn Connection to prepare the statement on
+     * @param statementWithNames SQL Statement with Named Parameters
+     * @param keyColumns null for no generated keys, empty for
+     * Statement#RETURN_GENERATED_KEYS, otherwise the names of the key columns
+     * to return
+     * @param params Map with Named Parameters, used to size the IN lists, may
+     * be null
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @see #NamedParameterStatement(java.sql.Connection, String, java.util.Map)
+     */
+    public NamedParameterStatement(final java.sql.Connection conn, final String statementWithNames, final String[] keyColumns, final java.util.Map<String, ?> params) throws java.sql.SQLException {
+
+        final Matcher matcher = FIND_PARAMETERS_PATTERN.matcher(statementWithNames);
         int pos = 1;
         final StringBuffer sb = new StringBuffer(statementWithNames.length());
         while (matcher.find()) {
@@ -62,18 +114,114 @@ public class NamedParameterStatement implements java.lang.AutoCloseable {
             if (LOGGER.isLoggable(Level.FINE)) {
                 LOGGER.log(Level.FINE, "Adding {0} to name {1}", new Object[]{pos, name});
             }
-            if (!fields.containsKey(name)) {
-                fields.put(name, new java.util.LinkedList<>());
+            java.util.List<Integer> indices = fields.get(name);
+            if (indices == null) {
+                indices = new java.util.ArrayList<>(2);
+                fields.put(name, indices);
+            }
+            final int size = params == null ? -1 : size(params.get(name));
+            if (size < 0) {
+                indices.add(pos);
+                matcher.appendReplacement(sb, "?");
+                pos++;
+            } else if (ANY_PATTERN.matcher(statementWithNames.substring(0, matcher.start())).find()) {
+                arrays.add(name);
+                indices.add(pos);
+                matcher.appendReplacement(sb, "?");
+                pos++;
+            } else {
+                if (size == 0) {
+                    throw emptyList(name);
+                }
+                final int bucket = bucket(size);
+                buckets.put(name, bucket);
+                final StringBuilder list = new StringBuilder(bucket * 3);
+                for (int i = 0; i < bucket; i++) {
+                    list.append(i == 0 ? "?" : ", ?");
+                    indices.add(pos);
+                    pos++;
+                }
+                matcher.appendReplacement(sb, list.toString());
             }
-            fields.get(name).add(pos);
-            matcher.appendReplacement(sb, "?");
-            pos++;
         }
         matcher.appendTail(sb);
         if (LOGGER.isLoggable(Level.FINE)) {
             LOGGER.log(Level.FINE, "Final Parameter mappings {0}", new Object[]{fields.toString()});
         }
-        prepStmt = conn.prepareStatement(sb.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.CLOSE_CURSORS_AT_COMMIT);
+        jdbcSql = sb.toString();
+        if (keyColumns == null) {
+            prepStmt = conn.prepareStatement(sb.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.CLOSE_CURSORS_AT_COMMIT);
+        } else if (keyColumns.length == 0) {
+            prepStmt = conn.prepareStatement(sb.toString(), java.sql.Statement.RETURN_GENERATED_KEYS);
+        } else {
+            prepStmt = conn.prepareStatement(sb.toString(), keyColumns);
+        }
+    }
+
+    /**
+     *
+     * @param value parameter value
+     * @return number of elements of a Collection or array, -1 for any other
+     * value, byte[] is a single value
+     */
+    private static int size(final Object value) {
+        if (value instanceof java.util.Collection) {
+            return ((java.util.Collection<?>) value).size();
+        }
+        if (value != null && value.getClass().isArray() && !(value instanceof byte[])) {
+            return java.lang.reflect.Array.getLength(value);
+        }
+        return -1;
+    }
+
+    /**
+     *
+     * @param size number of elements
+     * @return smallest power of two that holds size elements, at least 1
+     */
+    private static int bucket(final int size) {
+        return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    /**
+     *
+     * @param value Collection or array
+     * @return elements of value
+     */
+    private static Object[] elements(final Object value) {
+        if (value instanceof java.util.Collection) {
+            return ((java.util.Collection<?>) value).toArray();
+        }
+        if (value instanceof Object[]) {
+            return (Object[]) value;
+        }
+        final Object[] elements = new Object[java.lang.reflect.Array.getLength(value)];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = java.lang.reflect.Array.get(value, i);
+        }
+        return elements;
+    }
+
+    /**
+     * Statements prepared for params with different shapes have different
+     * SQL, so they can not share a batch
+     *
+     * @param params Map with Named Parameters
+     * @return key of the IN list bucket sizes of params, empty if there are no
+     * Collection or array parameters
+     */
+    static String shape(final java.util.Map<String, ?> params) {
+        java.util.Map<String, Integer> shape = null;
+        for (java.util.Map.Entry<String, ?> entry : params.entrySet()) {
+            final int size = size(entry.getValue());
+            if (size >= 0) {
+                if (shape == null) {
+                    shape = new java.util.TreeMap<>();
+                }
+                shape.put(entry.getKey(), bucket(size));
+            }
+        }
+        return shape == null ? "" : shape.toString();
     }
 
     public NamedParameterStatement setAll(java.util.Map<String, ?> params) throws SQLException {
@@ -82,11 +230,117 @@ public class NamedParameterStatement implements java.lang.AutoCloseable {
             if (!fields.containsKey(entry.getKey())) {
                 continue;
             }
-            setObject(entry.getKey(), entry.getValue());
+            if (buckets.containsKey(entry.getKey())) {
+                setList(entry.getKey(), entry.getValue());
+            } else if (arrays.contains(entry.getKey())) {
+                setArray(entry.getKey(), entry.getValue());
+            } else {
+                setObject(entry.getKey(), entry.getValue());
+            }
         }
         return this;
     }
 
+    /**
+     *
+     * @param name parameter expanded to an IN list
+     * @param value Collection or array, at least one and at most as many
+     * elements as the IN list
+     * @throws SQLException if value does not fit the IN list
+     */
+    private void setList(final String name, final Object value) throws SQLException {
+        if (size(value) < 0) {
+            throw new SQLException(String.format("Parameter %s was prepared for a Collection or array", name));
+        }
+        final Object[] elements = elements(value);
+        final int bucket = buckets.get(name);
+        if (elements.length == 0) {
+            throw emptyList(name);
+        }
+        if (elements.length > bucket) {
+            throw new SQLException(String.format("Parameter %s was prepared for %d elements, got %d", name, bucket, elements.length));
+        }
+        final java.util.List<Integer> indices = fields.get(name);
+        for (int i = 0; i < indices.size(); i++) {
+            prepStmt.setObject(indices.get(i), elements[Math.min(i % bucket, elements.length - 1)]);
+        }
+    }
+
+    private static SQLException emptyList(final String name) {
+        return new SQLException(String.format("Parameter %s is an empty Collection or array, IN lists need at least one element", name));
+    }
+
+    /**
+     *
+     * @param name parameter written as ANY(:name)
+     * @param value Collection or array
+     * @throws SQLException if underlying operation throws SQLException
+     */
+    private void setArray(final String name, final Object value) throws SQLException {
+        if (value == null) {
+            setObject(name, null);
+            return;
+        }
+        final Object[] elements = elements(value);
+        final java.sql.Array array = prepStmt.getConnection().createArrayOf(arrayType(elements), elements);
+        for (int parameterIndex : getIndices(name)) {
+            prepStmt.setArray(parameterIndex, array);
+        }
+    }
+
+    /**
+     *
+     * @param elements elements of the array
+     * @return SQL type name of the first non null element, VARCHAR if unknown
+     */
+    private static String arrayType(final Object[] elements) {
+        for (final Object element : elements) {
+            if (element instanceof Integer || element instanceof Short || element instanceof Byte) {
+                return "INTEGER";
+            } else if (element instanceof Long) {
+                return "BIGINT";
+            } else if (element instanceof BigDecimal) {
+                return "NUMERIC";
+            } else if (element instanceof Double || element instanceof Float) {
+                return "FLOAT8";
+            } else if (element instanceof Boolean) {
+                return "BOOLEAN";
+            } else if (element instanceof java.util.UUID) {
+                return "UUID";
+            } else if (element instanceof Timestamp) {
+                return "TIMESTAMP";
+            } else if (element instanceof Date) {
+                return "DATE";
+            } else if (element != null) {
+                return "VARCHAR";
+            }
+        }
+        return "VARCHAR";
+    }
+
+    /**
+     * Binds the parameters from the properties of bean, read through its
+     * getters, record accessors or public fields. The binding plan is cached
+     * per bean class and SQL, so binding needs no Map, no reflection and no
+     * boxing of primitive properties. Collection properties are bound as a
+     * single value
+     *
+     * @param bean bean with a property per parameter, a Map is bound as with
+     * setAll(Map)
+     * @return this
+     * @throws SQLException if a parameter has no property or underlying
+     * operation throws SQLException
+     */
+    @SuppressWarnings("unchecked")
+    public NamedParameterStatement setAll(final Object bean) throws SQLException {
+        if (bean instanceof java.util.Map) {
+            return setAll((java.util.Map<String, ?>) bean);
+        }
+        clearParameters();
+        BindingPlan.of(bean.getClass(), jdbcSql, fields, prepStmt).bind(prepStmt, bean);
+        return this;
+    }
+
     public java.sql.PreparedStatement getPreparedStatement() {
         return prepStmt;
     }
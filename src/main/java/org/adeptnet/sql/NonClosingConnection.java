@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ *
+ * Connection proxy that ignores close, so that a FunctionalSql can run all its
+ * operations on one Connection owned by the caller. For units of a
+ * transaction commit is left to the transaction and the proxy refuses any
+ * other transaction control
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+final class NonClosingConnection implements InvocationHandler {
+
+    private static final java.util.Set<String> TRANSACTION_CONTROL = new java.util.HashSet<>(java.util.Arrays.asList(
+            "rollback", "setAutoCommit", "setSavepoint", "releaseSavepoint", "setTransactionIsolation"));
+
+    private static final java.util.Set<java.sql.Connection> SHARED = java.util.Collections.newSetFromMap(new java.util.concurrent.ConcurrentHashMap<>());
+
+    private final java.sql.Connection con;
+    private final boolean transactionControl;
+
+    private NonClosingConnection(final java.sql.Connection con, final boolean transactionControl) {
+        this.con = con;
+        this.transactionControl = transactionControl;
+    }
+
+    /**
+     *
+     * @param con Connection to share
+     * @return Connection whose close does nothing
+     */
+    static java.sql.Connection of(final java.sql.Connection con) {
+        SHARED.add(con);
+        return proxy(new NonClosingConnection(con, true));
+    }
+
+    /**
+     *
+     * @param con Connection of a transaction
+     * @return Connection whose close and commit do nothing and that refuses
+     * rollback and the other transaction control methods
+     */
+    static java.sql.Connection unit(final java.sql.Connection con) {
+        SHARED.add(con);
+        return proxy(new NonClosingConnection(con, false));
+    }
+
+    /**
+     * Statement#getConnection returns the shared Connection itself, not the
+     * proxy, so code that closes a Connection it found through a Statement
+     * has to check this first
+     *
+     * @param con Connection to check
+     * @return true if con is shared through a proxy and must not be closed
+     */
+    static boolean isShared(final java.sql.Connection con) {
+        return con != null && SHARED.contains(con);
+    }
+
+    /**
+     *
+     * @param con Connection that is no longer shared
+     */
+    static void release(final java.sql.Connection con) {
+        SHARED.remove(con);
+    }
+
+    private static java.sql.Connection proxy(final NonClosingConnection handler) {
+        return (java.sql.Connection) java.lang.reflect.Proxy.newProxyInstance(NonClosingConnection.class.getClassLoader(), new Class<?>[]{java.sql.Connection.class}, handler);
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "close":
+                return null;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                if (transactionControl) {
+                    return delegate(method, args);
+                }
+                if ("commit".equals(method.getName()) || ("setAutoCommit".equals(method.getName()) && Boolean.FALSE.equals(args[0]))) {
+                    return null;
+                }
+                if (TRANSACTION_CONTROL.contains(method.getName())) {
+                    throw new java.sql.SQLException(String.format("%s is not allowed inside a transactional unit", method.getName()));
+                }
+                return delegate(method, args);
+        }
+    }
+
+    private Object delegate(final Method method, final Object[] args) throws Throwable {
+        try {
+            return method.invoke(con, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * Reads pages of a query with :limit and :offset named parameters
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ * @param <T> Result Type of applying row function on ResultSet
+ */
+class OffsetPageSource<T> implements SQLPageSource<T> {
+
+    static final String LIMIT_PARAMETER = "limit";
+    static final String OFFSET_PARAMETER = "offset";
+
+    private final FunctionalSql fsql;
+    private final String sql;
+    private final java.util.Map<String, Object> params;
+    private final SQLFunction<java.sql.ResultSet, T> rowFunction;
+    private volatile int pageSize;
+
+    /**
+     *
+     * @param fsql FunctionalSql to read the pages with
+     * @param sql SQL Statement with :limit and :offset named parameters
+     * @param params Map with the other Named Parameters
+     * @param pageSize number of rows per page
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     */
+    OffsetPageSource(final FunctionalSql fsql, final String sql, final java.util.Map<String, Object> params, final int pageSize, final SQLFunction<java.sql.ResultSet, T> rowFunction) {
+        this.fsql = fsql;
+        this.sql = sql;
+        this.params = params;
+        this.pageSize = pageSize;
+        this.rowFunction = rowFunction;
+    }
+
+    /**
+     *
+     * @param offset number of rows to skip
+     * @return SQLPage
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    SQLPage<T> read(final long offset) throws java.sql.SQLException, SQLDataAccessException {
+        final int size = pageSize;
+        final java.util.Map<String, Object> pageParams = new java.util.HashMap<>(params);
+        pageParams.put(LIMIT_PARAMETER, size);
+        pageParams.put(OFFSET_PARAMETER, offset);
+        final SQLPage<T> page = fsql.readPage(sql, pageParams, size, rowFunction, null);
+        page.offset = offset;
+        return page;
+    }
+
+    @Override
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public void setPageSize(final int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public SQLPage<T> first() throws java.sql.SQLException, SQLDataAccessException {
+        return read(0);
+    }
+
+    @Override
+    public SQLPage<T> next(final SQLPage<T> previous) throws java.sql.SQLException, SQLDataAccessException {
+        if (previous.isLast()) {
+            return null;
+        }
+        return read(previous.offset + previous.rows.size());
+    }
+}
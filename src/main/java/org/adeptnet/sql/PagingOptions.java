@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * Options for paged Streams
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class PagingOptions {
+
+    /**
+     * SQL:2008 row limit, for databases such as MySQL use "LIMIT :limit"
+     */
+    public static final String STANDARD_LIMIT_CLAUSE = "FETCH FIRST :limit ROWS ONLY";
+
+    private static final java.util.concurrent.ExecutorService DEFAULT_EXECUTOR = java.util.concurrent.Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "SQLPagePrefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private int pageSize = 1000;
+    private int minPageSize = 100;
+    private int maxPageSize = 50000;
+    private int prefetchDepth = 1;
+    private boolean adaptive;
+    private java.util.concurrent.Executor executor = DEFAULT_EXECUTOR;
+    private String limitClause = STANDARD_LIMIT_CLAUSE;
+
+    /**
+     *
+     * @param pageSize initial number of rows per page
+     * @return this
+     */
+    public PagingOptions withPageSize(final int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize has to be positive");
+        }
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    /**
+     *
+     * @param minPageSize smallest page size adaptive sizing may use
+     * @param maxPageSize largest page size adaptive sizing may use
+     * @return this
+     */
+    public PagingOptions withPageSizeRange(final int minPageSize, final int maxPageSize) {
+        if (minPageSize <= 0 || maxPageSize < minPageSize) {
+            throw new IllegalArgumentException(String.format("Invalid page size range %d-%d", minPageSize, maxPageSize));
+        }
+        this.minPageSize = minPageSize;
+        this.maxPageSize = maxPageSize;
+        return this;
+    }
+
+    /**
+     *
+     * @param prefetchDepth number of pages read ahead of the page being
+     * consumed, each on its own Connection, 0 to read on demand
+     * @return this
+     */
+    public PagingOptions withPrefetchDepth(final int prefetchDepth) {
+        if (prefetchDepth < 0) {
+            throw new IllegalArgumentException("prefetchDepth can not be negative");
+        }
+        this.prefetchDepth = prefetchDepth;
+        return this;
+    }
+
+    /**
+     * With adaptive sizing the page size doubles while reading a page takes
+     * longer than consuming one, and halves while it takes less than a
+     * quarter of the time, within the page size range
+     *
+     * @param adaptive true to adapt the page size
+     * @return this
+     */
+    public PagingOptions withAdaptive(final boolean adaptive) {
+        this.adaptive = adaptive;
+        return this;
+    }
+
+    /**
+     *
+     * @param executor Executor that reads prefetched pages, defaults to a
+     * shared pool of daemon threads
+     * @return this
+     */
+    public PagingOptions withExecutor(final java.util.concurrent.Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Keyset pages end with this clause after their ORDER BY, so the database
+     * can plan for the first rows only. The page size is also applied with
+     * Statement#setMaxRows
+     *
+     * @param limitClause SQL with the :limit named parameter for the page
+     * size, null to only use Statement#setMaxRows
+     * @return this
+     */
+    public PagingOptions withLimitClause(final String limitClause) {
+        if (limitClause != null && !limitClause.contains(":limit")) {
+            throw new IllegalArgumentException("limitClause has to use the :limit named parameter");
+        }
+        this.limitClause = limitClause;
+        return this;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getMinPageSize() {
+        return minPageSize;
+    }
+
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public java.util.concurrent.Executor getExecutor() {
+        return executor;
+    }
+
+    public String getLimitClause() {
+        return limitClause;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * Options for parallel batches
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class ParallelBatchOptions {
+
+    private int batchSize = 1000;
+    private int commitInterval = 10000;
+    private int queueCapacity = 4000;
+
+    /**
+     *
+     * @param batchSize rows per JDBC batch of a writer
+     * @return this
+     */
+    public ParallelBatchOptions withBatchSize(final int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize has to be positive");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     *
+     * @param commitInterval rows per transaction of a writer
+     * @return this
+     */
+    public ParallelBatchOptions withCommitInterval(final int commitInterval) {
+        if (commitInterval <= 0) {
+            throw new IllegalArgumentException("commitInterval has to be positive");
+        }
+        this.commitInterval = commitInterval;
+        return this;
+    }
+
+    /**
+     *
+     * @param queueCapacity rows queued per writer before the producer blocks
+     * @return this
+     */
+    public ParallelBatchOptions withQueueCapacity(final int queueCapacity) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity has to be positive");
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getCommitInterval() {
+        return commitInterval;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * Holder of the current SnapshotTable of a query. A reload builds a new
+ * SnapshotTable next to the current one and swaps it in, readers keep using
+ * the table they got from get until they ask again.
+ *
+ * With a version column a refresh only fetches the rows whose version is at
+ * or above the highest version seen so far, so rows committed late with that
+ * same version are not missed. Rows identical to the ones held are skipped.
+ * Changed rows are appended to the overlay over the arrays of the last full
+ * load as a new segment, and mark the rows they replace in the base or in
+ * older segments. Rows with the deleted flag set only mark their key. A
+ * segment is merged with the one before it once that one is no more than
+ * twice its size, so there are few segments and each row is copied a
+ * logarithmic number of times. The cost of a refresh follows the number of
+ * changes. Once the overlay and the replaced rows reach a quarter of the base
+ * the table is compacted into a new base.
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public final class RefreshableSnapshot {
+
+    static final String SINCE_PARAMETER = "since";
+    private static final int COMPACT_DIVISOR = 4;
+    private static final int SEGMENT_RATIO = 2;
+
+    private final FunctionalSql fsql;
+    private final String sql;
+    private final String keyColumn;
+    private final String versionColumn;
+    private final String deletedColumn;
+    private final String changesSql;
+    private final java.util.concurrent.atomic.AtomicReference<SnapshotTable> current = new java.util.concurrent.atomic.AtomicReference<>();
+    private KeyIndex baseIndex;
+    private final java.util.List<Segment> segments = new java.util.ArrayList<>();
+    private Object highWater;
+
+    RefreshableSnapshot(final FunctionalSql fsql, final String sql) {
+        this(fsql, sql, null, null, null);
+    }
+
+    /**
+     *
+     * @param fsql FunctionalSql to load with
+     * @param sql SQL Statement of the full table
+     * @param keyColumn column that identifies a row, null for full reloads only
+     * @param versionColumn column with a version or timestamp that increases
+     * on every change, null for full reloads only
+     * @param deletedColumn boolean column that marks deleted rows, may be null
+     */
+    RefreshableSnapshot(final FunctionalSql fsql, final String sql, final String keyColumn, final String versionColumn, final String deletedColumn) {
+        this.fsql = fsql;
+        this.sql = sql;
+        this.keyColumn = keyColumn;
+        this.versionColumn = versionColumn;
+        this.deletedColumn = deletedColumn;
+        this.changesSql = versionColumn == null ? null
+                : String.format("SELECT * FROM (%s) snapshot_changes WHERE %s >= :%s ORDER BY %s", sql, versionColumn, SINCE_PARAMETER, versionColumn);
+    }
+
+    /**
+     *
+     * @return current SnapshotTable
+     */
+    public SnapshotTable get() {
+        return current.get();
+    }
+
+    /**
+     *
+     * @return highest version seen, null before the first load or without a
+     * version column
+     */
+    public synchronized Object getHighWaterMark() {
+        return highWater;
+    }
+
+    /**
+     * Loads the query again and swaps the result in, the current
+     * SnapshotTable stays in place if loading fails
+     *
+     * @return new SnapshotTable
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    public synchronized SnapshotTable reload() throws java.sql.SQLException, SQLDataAccessException {
+        if (versionColumn == null) {
+            final SnapshotTable table = fsql.snapshot(sql);
+            current.set(table);
+            return table;
+        }
+        final Object[] max = new Object[1];
+        final SnapshotTable table = fsql.snapshot(sql, java.util.Collections.emptyMap(), rs -> {
+            max[0] = max(max[0], rs.getObject(versionColumn));
+            return deletedColumn == null || !rs.getBoolean(deletedColumn);
+        });
+        baseIndex = KeyIndex.of(table, table.columnIndex(keyColumn));
+        segments.clear();
+        highWater = max[0];
+        current.set(table);
+        return table;
+    }
+
+    /**
+     * Fetches the rows changed since the last load or refresh and swaps in a
+     * SnapshotTable with them merged, falls back to reload without a version
+     * column or before the first version was seen
+     *
+     * @return new SnapshotTable, the current one if nothing changed
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    public synchronized SnapshotTable refresh() throws java.sql.SQLException, SQLDataAccessException {
+        if (versionColumn == null || highWater == null) {
+            return reload();
+        }
+        final java.util.Map<String, Object> params = new java.util.HashMap<>();
+        params.put(SINCE_PARAMETER, highWater);
+        final SnapshotTable changes = fsql.snapshot(changesSql, params, null);
+        final int rows = changes.getRowCount();
+        final int key = changes.columnIndex(keyColumn);
+        final int version = changes.columnIndex(versionColumn);
+        final int tombstone = deletedColumn == null ? -1 : changes.columnIndex(deletedColumn);
+        final KeyIndex changed = KeyIndex.of(changes, key);
+        final SnapshotTable table = current.get();
+        final Marks base = new Marks(table);
+        final Marks[] replaced = new Marks[segments.size()];
+        for (int i = 0; i < replaced.length; i++) {
+            replaced[i] = new Marks(segments.get(i).table);
+        }
+        final SnapshotTable.Builder builder = new SnapshotTable.Builder(changes.getColumnShape());
+        Object max = highWater;
+        for (int row = 0; row < rows; row++) {
+            max = max(max, changes.getObject(row, version));
+            if (changed.find(changes, row, key) != row) {
+                continue;
+            }
+            final boolean deleted = isTombstone(changes, row, tombstone);
+            if (!deleted && isUnchanged(changes, row, key, replaced, base)) {
+                continue;
+            }
+            for (int i = 0; i < replaced.length; i++) {
+                replaced[i].mark(segments.get(i).index.find(changes, row, key));
+            }
+            base.mark(baseIndex.find(changes, row, key));
+            if (!deleted) {
+                builder.add(changes, row);
+            }
+        }
+        highWater = max;
+        final SnapshotTable fresh = builder.build();
+        if (fresh.getRowCount() == 0 && !base.changed && !anyMarked(replaced)) {
+            return table;
+        }
+        for (int i = 0; i < replaced.length; i++) {
+            segments.get(i).table = replaced[i].apply(segments.get(i).table, null);
+        }
+        if (fresh.getRowCount() > 0) {
+            append(fresh, changes.getColumnShape(), key);
+        }
+        SnapshotTable overlay = null;
+        int overlayRows = 0;
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            final SnapshotTable segment = segments.get(i).table;
+            overlay = segment.withChanges(segment.deleted(), segment.deletedCount(), overlay);
+            overlayRows += segment.baseRowCount() - segment.deletedCount();
+        }
+        SnapshotTable merged = base.apply(table, overlay);
+        if ((overlayRows + base.count) * COMPACT_DIVISOR > table.baseRowCount()) {
+            merged = compact(merged);
+            baseIndex = KeyIndex.of(merged, merged.columnIndex(keyColumn));
+            segments.clear();
+        }
+        current.set(merged);
+        return merged;
+    }
+
+    /**
+     * Adds a segment of changed rows, merging it with the last segments while
+     * they are not much larger
+     *
+     * @param fresh SnapshotTable with the changed rows
+     * @param shape ColumnShape of the rows
+     * @param key 1 based index of the key column
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     */
+    private void append(final SnapshotTable fresh, final ColumnShape shape, final int key) throws java.sql.SQLException {
+        SnapshotTable segment = fresh;
+        while (!segments.isEmpty()) {
+            final SnapshotTable last = segments.get(segments.size() - 1).table;
+            if (last.baseRowCount() - last.deletedCount() > segment.baseRowCount() * SEGMENT_RATIO) {
+                break;
+            }
+            final SnapshotTable.Builder builder = new SnapshotTable.Builder(shape);
+            addLive(builder, last);
+            addLive(builder, segment);
+            segment = builder.build();
+            segments.remove(segments.size() - 1);
+        }
+        segments.add(new Segment(segment, KeyIndex.of(segment, key)));
+    }
+
+    /**
+     *
+     * @param changes SnapshotTable with the changed rows
+     * @param row 0 based index of a row in changes
+     * @param key 1 based index of the key column
+     * @param replaced Marks of the segments
+     * @param base Marks of the base
+     * @return true if the current row of the key has the same values
+     */
+    private boolean isUnchanged(final SnapshotTable changes, final int row, final int key, final Marks[] replaced, final Marks base) {
+        for (int i = replaced.length - 1; i >= 0; i--) {
+            final int found = segments.get(i).index.find(changes, row, key);
+            if (found >= 0 && !replaced[i].isMarked(found)) {
+                return sameValues(changes, row, segments.get(i).table, found);
+            }
+        }
+        final int found = baseIndex.find(changes, row, key);
+        return found >= 0 && !base.isMarked(found) && sameValues(changes, row, current.get(), found);
+    }
+
+    private static boolean sameValues(final SnapshotTable a, final int rowA, final SnapshotTable b, final int rowB) {
+        final int columns = a.getColumnShape().getColumnCount();
+        for (int column = 1; column <= columns; column++) {
+            if (!java.util.Objects.equals(a.getObject(rowA, column), b.getObject(rowB, column))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean anyMarked(final Marks[] marks) {
+        for (final Marks mark : marks) {
+            if (mark.changed) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     *
+     * @param table SnapshotTable with an overlay
+     * @return SnapshotTable with the live rows of the base and the overlay in
+     * its own arrays
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     */
+    private static SnapshotTable compact(final SnapshotTable table) throws java.sql.SQLException {
+        final SnapshotTable.Builder builder = new SnapshotTable.Builder(table.getColumnShape());
+        addLive(builder, table);
+        return builder.build();
+    }
+
+    /**
+     *
+     * @param builder Builder to add to
+     * @param table SnapshotTable whose live rows, including those of its
+     * overlay, are added
+     */
+    private static void addLive(final SnapshotTable.Builder builder, final SnapshotTable table) {
+        for (SnapshotTable part = table; part != null; part = part.overlay()) {
+            for (int row = 0; row < part.baseRowCount(); row++) {
+                if (!part.isDeleted(row)) {
+                    builder.add(part, row);
+                }
+            }
+        }
+    }
+
+    private static boolean isTombstone(final SnapshotTable changes, final int row, final int column) {
+        if (column < 0) {
+            return false;
+        }
+        final Object value = changes.getObject(row, column);
+        return value instanceof Boolean ? (Boolean) value : value instanceof Number && ((Number) value).intValue() != 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object max(final Object a, final Object b) {
+        if (a == null) {
+            return b;
+        }
+        return b != null && ((Comparable<Object>) b).compareTo(a) > 0 ? b : a;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RefreshableSnapshot[%s]", current.get());
+    }
+
+    /**
+     *
+     * Rows of one refresh, with the index of their keys
+     */
+    private static final class Segment {
+
+        private SnapshotTable table;
+        private final KeyIndex index;
+
+        private Segment(final SnapshotTable table, final KeyIndex index) {
+            this.table = table;
+            this.index = index;
+        }
+    }
+
+    /**
+     *
+     * Replaced and deleted rows of the own arrays of a SnapshotTable, the
+     * bitmap of the table is only copied once a new row is marked
+     */
+    private static final class Marks {
+
+        private long[] bits;
+        private int count;
+        private boolean owned;
+        private boolean changed;
+
+        private Marks(final SnapshotTable table) {
+            final long[] deleted = table.deleted();
+            this.owned = deleted == null;
+            this.bits = owned ? new long[(table.baseRowCount() + 63) >> 6] : deleted;
+            this.count = table.deletedCount();
+        }
+
+        /**
+         *
+         * @param row 0 based index of a row in the own arrays, -1 for none
+         */
+        private void mark(final int row) {
+            if (row < 0 || isMarked(row)) {
+                return;
+            }
+            if (!owned) {
+                bits = bits.clone();
+                owned = true;
+            }
+            changed = true;
+            bits[row >> 6] |= 1L << row;
+            count++;
+        }
+
+        private boolean isMarked(final int row) {
+            return (bits[row >> 6] & 1L << row) != 0;
+        }
+
+        /**
+         *
+         * @param table SnapshotTable the marks were taken from
+         * @param overlay overlay of the result
+         * @return table with the marks and overlay
+         */
+        private SnapshotTable apply(final SnapshotTable table, final SnapshotTable overlay) {
+            return table.withChanges(count == 0 ? null : bits, count, overlay);
+        }
+    }
+
+    /**
+     *
+     * Last row of every key in the own arrays of a SnapshotTable, without
+     * boxing for integral keys
+     */
+    private static final class KeyIndex {
+
+        private final LongIntHashMap longs;
+        private final java.util.Map<Object, Integer> objects;
+
+        private KeyIndex(final LongIntHashMap longs, final java.util.Map<Object, Integer> objects) {
+            this.longs = longs;
+            this.objects = objects;
+        }
+
+        static KeyIndex of(final SnapshotTable table, final int column) {
+            final int rows = table.baseRowCount();
+            if (table.column(column) instanceof SnapshotTable.LongColumn) {
+                final LongIntHashMap longs = new LongIntHashMap(rows);
+                for (int row = 0; row < rows; row++) {
+                    longs.put(table.getLong(row, column), row);
+                }
+                return new KeyIndex(longs, null);
+            }
+            final java.util.Map<Object, Integer> objects = new java.util.HashMap<>(rows * 4 / 3 + 1);
+            for (int row = 0; row < rows; row++) {
+                objects.put(table.getObject(row, column), row);
+            }
+            return new KeyIndex(null, objects);
+        }
+
+        /**
+         *
+         * @param table SnapshotTable to take the key from
+         * @param row 0 based index of a row in the own arrays of table
+         * @param column 1 based index of the key column in table
+         * @return row of the key in the indexed table, -1 if absent
+         */
+        int find(final SnapshotTable table, final int row, final int column) {
+            if (longs != null) {
+                return longs.get(table.getLong(row, column));
+            }
+            final Integer found = objects.get(table.getObject(row, column));
+            return found == null ? -1 : found;
+        }
+    }
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ *
+ * Encodes the rows of a ResultSet as CSV or newline delimited JSON straight
+ * into one reusable ByteBuffer, direct unless the output is gzipped. Integral
+ * and decimal values are written digit by digit, strings are encoded to UTF-8
+ * and escaped char by char, so the only per cell allocations are those of the
+ * driver getters and of formatting non integral doubles. The exporter has to
+ * be closed to release the gzip Deflater, the channel stays open
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+final class ResultSetExporter implements java.lang.AutoCloseable {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final int LONG = 1;
+    private static final int DOUBLE = 2;
+    private static final int DECIMAL = 3;
+    private static final int BOOLEAN = 4;
+    private static final int STRING = 5;
+
+    private final boolean json;
+    private final ExportOptions options;
+    private final CountingChannel channel;
+    private final java.util.zip.GZIPOutputStream gzip;
+    private final ByteBuffer buffer;
+    private final byte[] digits = new byte[24];
+    private final int[] kinds;
+    private final byte[][] names;
+    private final byte[] nullValue;
+    private long encoded;
+    private long rows;
+
+    /**
+     *
+     * @param json true for newline delimited JSON, false for CSV
+     * @param channel WritableByteChannel to write to, is not closed
+     * @param options ExportOptions
+     * @param shape ColumnShape of the ResultSet
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws IOException if writing fails
+     */
+    ResultSetExporter(final boolean json, final java.nio.channels.WritableByteChannel channel, final ExportOptions options, final ColumnShape shape) throws java.sql.SQLException, IOException {
+        this.json = json;
+        this.options = options;
+        this.channel = new CountingChannel(channel);
+        this.gzip = options.isGzip() ? new java.util.zip.GZIPOutputStream(java.nio.channels.Channels.newOutputStream(this.channel), options.getBufferSize()) : null;
+        this.buffer = gzip == null ? ByteBuffer.allocateDirect(options.getBufferSize()) : ByteBuffer.allocate(options.getBufferSize());
+        this.nullValue = options.getNullValue() == null ? new byte[0] : options.getNullValue().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        final int columns = shape.getColumnCount();
+        this.kinds = new int[columns];
+        this.names = new byte[columns][];
+        for (int i = 0; i < columns; i++) {
+            kinds[i] = kind(shape.getColumnType(i + 1));
+            names[i] = encodeName(shape.getColumnLabel(i + 1), i == 0);
+        }
+        if (!json && options.isHeader()) {
+            try {
+                for (int i = 0; i < columns; i++) {
+                    if (i > 0) {
+                        put((byte) options.getDelimiter());
+                    }
+                    csvString(shape.getColumnLabel(i + 1));
+                }
+                put((byte) '\n');
+            } catch (IOException | RuntimeException ex) {
+                close();
+                throw ex;
+            }
+        }
+    }
+
+    private static int kind(final int sqlType) {
+        switch (sqlType) {
+            case java.sql.Types.TINYINT:
+            case java.sql.Types.SMALLINT:
+            case java.sql.Types.INTEGER:
+            case java.sql.Types.BIGINT:
+                return LONG;
+            case java.sql.Types.REAL:
+            case java.sql.Types.FLOAT:
+            case java.sql.Types.DOUBLE:
+                return DOUBLE;
+            case java.sql.Types.NUMERIC:
+            case java.sql.Types.DECIMAL:
+                return DECIMAL;
+            case java.sql.Types.BIT:
+            case java.sql.Types.BOOLEAN:
+                return BOOLEAN;
+            default:
+                return STRING;
+        }
+    }
+
+    /**
+     *
+     * @param label column label
+     * @param first true for the first column
+     * @return JSON member name with its separators, encoded once
+     */
+    private static byte[] encodeName(final String label, final boolean first) {
+        final StringBuilder sb = new StringBuilder(label.length() + 4);
+        sb.append(first ? '{' : ',').append('"');
+        for (int i = 0; i < label.length(); i++) {
+            final char c = label.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+            if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append("\":").toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    /**
+     *
+     * @param rs ResultSet positioned on the row to export
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws IOException if writing fails
+     */
+    void row(final java.sql.ResultSet rs) throws java.sql.SQLException, IOException {
+        for (int i = 0; i < kinds.length; i++) {
+            final int column = i + 1;
+            if (json) {
+                put(names[i]);
+            } else if (i > 0) {
+                put((byte) options.getDelimiter());
+            }
+            switch (kinds[i]) {
+                case LONG: {
+                    final long value = rs.getLong(column);
+                    if (rs.wasNull()) {
+                        writeNull();
+                    } else {
+                        putLong(value);
+                    }
+                    break;
+                }
+                case DOUBLE: {
+                    final double value = rs.getDouble(column);
+                    if (rs.wasNull() || json && (Double.isNaN(value) || Double.isInfinite(value))) {
+                        writeNull();
+                    } else {
+                        putDouble(value);
+                    }
+                    break;
+                }
+                case DECIMAL: {
+                    final java.math.BigDecimal value = rs.getBigDecimal(column);
+                    if (value == null) {
+                        writeNull();
+                    } else {
+                        putDecimal(value);
+                    }
+                    break;
+                }
+                case BOOLEAN: {
+                    final boolean value = rs.getBoolean(column);
+                    if (rs.wasNull()) {
+                        writeNull();
+                    } else {
+                        put(value ? TRUE : FALSE);
+                    }
+                    break;
+                }
+                default: {
+                    final String value = rs.getString(column);
+                    if (value == null) {
+                        writeNull();
+                    } else if (json) {
+                        jsonString(value);
+                    } else {
+                        csvString(value);
+                    }
+                }
+            }
+        }
+        if (json) {
+            put((byte) '}');
+        }
+        put((byte) '\n');
+        rows++;
+    }
+
+    /**
+     * Flushes the buffer and finishes the gzip stream, the channel stays open
+     *
+     * @param start System.nanoTime() of the start of the export
+     * @return ExportResult
+     * @throws IOException if writing fails
+     */
+    ExportResult finish(final long start) throws IOException {
+        flush();
+        if (gzip != null) {
+            gzip.finish();
+            gzip.flush();
+        }
+        return new ExportResult(rows, encoded, channel.written, System.nanoTime() - start);
+    }
+
+    /**
+     * Closes the gzip stream, which ends its Deflater, the channel stays open
+     */
+    @Override
+    public void close() {
+        SQLResources.close(gzip);
+    }
+
+    private void writeNull() throws IOException {
+        put(json ? NULL : nullValue);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        encoded += buffer.remaining();
+        if (gzip != null) {
+            gzip.write(buffer.array(), buffer.arrayOffset(), buffer.remaining());
+        } else {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        buffer.clear();
+    }
+
+    private void ensure(final int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void put(final byte b) throws IOException {
+        ensure(1);
+        buffer.put(b);
+    }
+
+    private void put(final byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            ensure(1);
+            final int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    private void putLong(final long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            put(MIN_LONG);
+            return;
+        }
+        ensure(20);
+        long remaining = value;
+        if (remaining < 0) {
+            buffer.put((byte) '-');
+            remaining = -remaining;
+        }
+        int position = digits.length;
+        do {
+            digits[--position] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        buffer.put(digits, position, digits.length - position);
+    }
+
+    /**
+     * Integral doubles are written as digits with a ".0" suffix like
+     * Double.toString, others fall back to Double.toString
+     */
+    private void putDouble(final double value) throws IOException {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15 && !(value == 0 && 1 / value < 0)) {
+            putLong((long) value);
+            put((byte) '.');
+            put((byte) '0');
+        } else {
+            putAscii(Double.toString(value));
+        }
+    }
+
+    /**
+     * Decimals with a non negative scale whose unscaled value fits a long are
+     * written as digits with the point inserted, others use toPlainString
+     */
+    private void putDecimal(final java.math.BigDecimal value) throws IOException {
+        final int scale = value.scale();
+        final java.math.BigInteger unscaled = value.unscaledValue();
+        if (scale < 0 || scale > 18 || unscaled.bitLength() > 62) {
+            putAscii(value.toPlainString());
+            return;
+        }
+        long remaining = unscaled.longValue();
+        ensure(digits.length + 1);
+        if (remaining < 0) {
+            buffer.put((byte) '-');
+            remaining = -remaining;
+        }
+        int position = digits.length;
+        for (int i = 0; i < scale; i++) {
+            digits[--position] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        if (scale > 0) {
+            digits[--position] = '.';
+        }
+        do {
+            digits[--position] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        buffer.put(digits, position, digits.length - position);
+    }
+
+    /**
+     * Writes value in chunks of at most the remaining buffer, toPlainString
+     * of a decimal with a large exponent can exceed the whole buffer
+     */
+    private void putAscii(final String value) throws IOException {
+        int index = 0;
+        while (index < value.length()) {
+            ensure(1);
+            final int end = Math.min(value.length(), index + buffer.remaining());
+            for (; index < end; index++) {
+                buffer.put((byte) value.charAt(index));
+            }
+        }
+    }
+
+    private void csvString(final String value) throws IOException {
+        final char delimiter = options.getDelimiter();
+        boolean quote = value.isEmpty() && nullValue.length == 0;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            final char c = value.charAt(i);
+            quote = c == delimiter || c == '"' || c == '\n' || c == '\r';
+        }
+        if (quote) {
+            put((byte) '"');
+        }
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"') {
+                put((byte) '"');
+            }
+            i = putChar(value, i);
+        }
+        if (quote) {
+            put((byte) '"');
+        }
+    }
+
+    private void jsonString(final String value) throws IOException {
+        put((byte) '"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                ensure(2);
+                buffer.put((byte) '\\').put((byte) c);
+            } else if (c == '\n') {
+                ensure(2);
+                buffer.put((byte) '\\').put((byte) 'n');
+            } else if (c == '\r') {
+                ensure(2);
+                buffer.put((byte) '\\').put((byte) 'r');
+            } else if (c == '\t') {
+                ensure(2);
+                buffer.put((byte) '\\').put((byte) 't');
+            } else if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                ensure(6);
+                buffer.put((byte) '\\').put((byte) 'u').put(HEX[c >> 12]).put(HEX[c >> 8 & 0xf]).put(HEX[c >> 4 & 0xf]).put(HEX[c & 0xf]);
+            } else {
+                i = putChar(value, i);
+            }
+        }
+        put((byte) '"');
+    }
+
+    /**
+     * Encodes the char at index to UTF-8, with the following char if they form
+     * a surrogate pair. Unpaired surrogates are written as '?'
+     *
+     * @return index of the last char consumed
+     */
+    private int putChar(final String value, final int index) throws IOException {
+        final char c = value.charAt(index);
+        ensure(4);
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xc0 | c >> 6)).put((byte) (0x80 | c & 0x3f));
+        } else if (Character.isHighSurrogate(c) && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1))) {
+            final int code = Character.toCodePoint(c, value.charAt(index + 1));
+            buffer.put((byte) (0xf0 | code >> 18)).put((byte) (0x80 | code >> 12 & 0x3f)).put((byte) (0x80 | code >> 6 & 0x3f)).put((byte) (0x80 | code & 0x3f));
+            return index + 1;
+        } else if (Character.isSurrogate(c)) {
+            buffer.put((byte) '?');
+        } else {
+            buffer.put((byte) (0xe0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3f)).put((byte) (0x80 | c & 0x3f));
+        }
+        return index;
+    }
+
+    /**
+     *
+     * Counts the bytes written to the target channel
+     */
+    private static final class CountingChannel implements java.nio.channels.WritableByteChannel {
+
+        private final java.nio.channels.WritableByteChannel target;
+        private long written;
+
+        private CountingChannel(final java.nio.channels.WritableByteChannel target) {
+            this.target = target;
+        }
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException {
+            final int count = target.write(src);
+            written += count;
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return target.isOpen();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * Flyweight view of the current row of a ResultSet. The same Row is handed
+ * out for every row of a Stream, so filtering and projecting do not copy
+ * values, and detach has to be used to keep a row after the Stream advanced.
+ * With the system property org.adeptnet.sql.Row.debug set to true every row
+ * gets its own view, and using a view after the Stream advanced or closed
+ * throws IllegalStateException
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public final class Row {
+
+    static final boolean DEBUG = Boolean.getBoolean("org.adeptnet.sql.Row.debug");
+
+    private final ForwardOnlyReadResultSet rs;
+    private final Cursor cursor;
+    private final long generation;
+
+    private Row(final ForwardOnlyReadResultSet rs, final Cursor cursor, final long generation) {
+        this.rs = rs;
+        this.cursor = cursor;
+        this.generation = generation;
+    }
+
+    /**
+     *
+     * @return SQLFunction for a single Stream, that maps every row to a Row
+     */
+    static Cursor cursor() {
+        return new Cursor();
+    }
+
+    private java.sql.ResultSet rs() {
+        if (DEBUG && generation != cursor.generation) {
+            throw new IllegalStateException("Row used after its Stream advanced or closed, use detach() to keep it");
+        }
+        return rs;
+    }
+
+    private static SQLDataAccessException wrap(final java.sql.SQLException ex) {
+        return new SQLDataAccessException(ex.getMessage(), ex);
+    }
+
+    /**
+     *
+     * @return ColumnShape of the row
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public ColumnShape getColumnShape() throws SQLDataAccessException {
+        rs();
+        try {
+            return rs.getColumnShape();
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    /**
+     *
+     * @return number of columns
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public int getColumnCount() throws SQLDataAccessException {
+        return getColumnShape().getColumnCount();
+    }
+
+    /**
+     *
+     * @param column 1 based column index
+     * @return value, 0 if SQL NULL
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public long getLong(final int column) throws SQLDataAccessException {
+        try {
+            return rs().getLong(column);
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    /**
+     *
+     * @param columnLabel column label
+     * @return value, 0 if SQL NULL
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public long getLong(final String columnLabel) throws SQLDataAccessException {
+        try {
+            return rs().getLong(columnLabel);
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    /**
+     *
+     * @param column 1 based column index
+     * @return value, 0 if SQL NULL
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public int getInt(final int column) throws SQLDataAccessException {
+        try {
+            return rs().getInt(column);
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    /**
+     *
+     * @param columnLabel column label
+     * @return value, 0 if SQL NULL
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public int getInt(final String columnLabel) throws SQLDataAccessException {
+        try {
+            return rs().getInt(columnLabel);
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    /**
+     *
+     * @param column 1 based column index
+     * @return value, 0 if SQL NULL
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public double getDouble(final int column) throws SQLDataAccessException {
+        try {
+            return rs().getDouble(column);
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    /**
+     *
+     * @param columnLabel column label
+     * @return value, 0 if SQL NULL
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public double getDouble(final String columnLabel) throws SQLDataAccessException {
+        try {
+            return rs().getDouble(columnLabel);
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    /**
+     *
+     * @param column 1 based column index
+     * @return value, false if SQL NULL
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public boolean getBoolean(final int column) throws SQLDataAccessException {
+        try {
+            return rs().getBoolean(column);
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    /**
+     *
+     * @param columnLabel column label
+     * @return value, false if SQL NULL
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public boolean getBoolean(final String columnLabel) throws SQLDataAccessException {
+        try {
+            return rs().getBoolean(columnLabel);
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    /**
+     *
+     * @param column 1 based column index
+     * @return value, null if SQL NULL
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public String getString(final int column) throws SQLDataAccessException {
+        try {
+            return rs().getString(column);
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    /**
+     *
+     * @param columnLabel column label
+     * @return value, null if SQL NULL
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public String getString(final String columnLabel) throws SQLDataAccessException {
+        try {
+            return rs().getString(columnLabel);
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    /**
+     *
+     * @param column 1 based column index
+     * @return value, null if SQL NULL
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public java.math.BigDecimal getBigDecimal(final int column) throws SQLDataAccessException {
+        try {
+            return rs().getBigDecimal(column);
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    /**
+     *
+     * @param columnLabel column label
+     * @return value, null if SQL NULL
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public java.math.BigDecimal getBigDecimal(final String columnLabel) throws SQLDataAccessException {
+        try {
+            return rs().getBigDecimal(columnLabel);
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    /**
+     *
+     * @param column 1 based column index
+     * @return value, null if SQL NULL
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public java.sql.Timestamp getTimestamp(final int column) throws SQLDataAccessException {
+        try {
+            return rs().getTimestamp(column);
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    /**
+     *
+     * @param columnLabel column label
+     * @return value, null if SQL NULL
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public java.sql.Timestamp getTimestamp(final String columnLabel) throws SQLDataAccessException {
+        try {
+            return rs().getTimestamp(columnLabel);
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    /**
+     *
+     * @param column 1 based column index
+     * @return value, null if SQL NULL
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public Object getObject(final int column) throws SQLDataAccessException {
+        try {
+            return rs().getObject(column);
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    /**
+     *
+     * @param columnLabel column label
+     * @return value, null if SQL NULL
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public Object getObject(final String columnLabel) throws SQLDataAccessException {
+        try {
+            return rs().getObject(columnLabel);
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    /**
+     *
+     * @return true if the last value read was SQL NULL
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public boolean wasNull() throws SQLDataAccessException {
+        try {
+            return rs().wasNull();
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    /**
+     * Copies the values of the current row, the result stays valid after the
+     * Stream advanced
+     *
+     * @return DetachedRow with the values of the current row
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     */
+    public DetachedRow detach() throws SQLDataAccessException {
+        final java.sql.ResultSet current = rs();
+        try {
+            final ColumnShape shape = rs.getColumnShape();
+            final Object[] values = new Object[shape.getColumnCount()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = current.getObject(i + 1);
+            }
+            return new DetachedRow(shape, values);
+        } catch (java.sql.SQLException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return DEBUG && generation != cursor.generation ? "Row[stale]" : String.format("Row[%d]", cursor.generation);
+    }
+
+    /**
+     *
+     * Row function of one Stream, advances the generation for every row
+     */
+    static final class Cursor implements SQLFunction<java.sql.ResultSet, Row>, Runnable {
+
+        private long generation;
+        private Row row;
+
+        @Override
+        public Row apply(final java.sql.ResultSet rs) {
+            generation++;
+            if (DEBUG) {
+                return new Row(view(rs), this, generation);
+            }
+            if (row == null) {
+                row = new Row(view(rs), this, 0);
+            }
+            return row;
+        }
+
+        private static ForwardOnlyReadResultSet view(final java.sql.ResultSet rs) {
+            return rs instanceof ForwardOnlyReadResultSet ? (ForwardOnlyReadResultSet) rs : new ForwardOnlyReadResultSet(rs);
+        }
+
+        /**
+         * Invalidates the last Row when the Stream closes
+         */
+        @Override
+        public void run() {
+            generation++;
+        }
+    }
+}
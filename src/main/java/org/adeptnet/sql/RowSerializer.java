@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * Writes and reads rows that are spilled to disk by SQLStreams
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ * @param <T> the type of the rows
+ */
+public interface RowSerializer<T> {
+
+    /**
+     *
+     * @param row row to write
+     * @param out DataOutput to write to
+     * @throws java.io.IOException if writing fails
+     */
+    void write(T row, java.io.DataOutput out) throws java.io.IOException;
+
+    /**
+     *
+     * @param in DataInput positioned on a row written by write
+     * @return row
+     * @throws java.io.IOException if reading fails
+     */
+    T read(java.io.DataInput in) throws java.io.IOException;
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * BatchUpdateException that knows which entry of a batch failed
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class SQLBatchException extends java.sql.BatchUpdateException {
+
+    private static final long serialVersionUID = 201501010002L;
+
+    private final int failedIndex;
+    private final String failedSql;
+
+    /**
+     *
+     * @param ex cause, reason and SQLState are copied from it
+     * @param updateCounts update counts of the whole batch,
+     * Statement#EXECUTE_FAILED for failed and not executed entries
+     * @param failedIndex index of the failed entry, -1 if unknown
+     * @param failedSql SQL Statement of the failed entry, null if unknown
+     */
+    public SQLBatchException(final java.sql.SQLException ex, final int[] updateCounts, final int failedIndex, final String failedSql) {
+        super(String.format("Batch entry %d failed: %s", failedIndex, ex.getMessage()), ex.getSQLState(), ex.getErrorCode(), updateCounts, ex);
+        this.failedIndex = failedIndex;
+        this.failedSql = failedSql;
+    }
+
+    /**
+     *
+     * @return index of the failed entry, -1 if unknown
+     */
+    public int getFailedIndex() {
+        return failedIndex;
+    }
+
+    /**
+     *
+     * @return SQL Statement of the failed entry, null if unknown
+     */
+    public String getFailedSql() {
+        return failedSql;
+    }
+}
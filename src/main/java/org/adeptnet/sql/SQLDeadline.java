@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ *
+ * Point in time by which an operation has to complete. The deadline can be
+ * extended while the operation is running, for example per batch of rows of a
+ * long running Stream
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public final class SQLDeadline {
+
+    private volatile long deadlineNanos;
+
+    private SQLDeadline(final long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     *
+     * @param timeout time from now
+     * @return SQLDeadline timeout from now
+     */
+    public static SQLDeadline after(final Duration timeout) {
+        return new SQLDeadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    /**
+     *
+     * @param instant absolute point in time
+     * @return SQLDeadline at instant
+     */
+    public static SQLDeadline at(final Instant instant) {
+        return after(Duration.between(Instant.now(), instant));
+    }
+
+    /**
+     * Moves the deadline to timeout from now
+     *
+     * @param timeout time from now
+     * @return this
+     */
+    public SQLDeadline extend(final Duration timeout) {
+        deadlineNanos = System.nanoTime() + timeout.toNanos();
+        return this;
+    }
+
+    /**
+     *
+     * @return deadline in System#nanoTime terms
+     */
+    long deadlineNanos() {
+        return deadlineNanos;
+    }
+
+    /**
+     *
+     * @return nanoseconds remaining, 0 or less when expired
+     */
+    public long remainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+
+    /**
+     *
+     * @return true if the deadline has passed
+     */
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    /**
+     *
+     * @param operation description of the operation, for the exception
+     * @throws SQLTimeoutException if the deadline has passed
+     */
+    public void check(final String operation) throws SQLTimeoutException {
+        if (isExpired()) {
+            throw new SQLTimeoutException(String.format("Deadline exceeded before %s", operation));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SQLDeadline[remaining=%dms]", remainingNanos() / 1_000_000);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * Query lifecycle events. This is the Java 8 version, which does nothing, the
+ * Java 11 version in META-INF/versions/11 emits jdk.jfr events
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+final class SQLEvents {
+
+    static final int CONNECTION_ACQUIRE = 0;
+    static final int STATEMENT_PREPARE = 1;
+    static final int EXECUTE = 2;
+    static final int ITERATE = 3;
+    static final int CLOSE = 4;
+
+    private SQLEvents() {
+    }
+
+    /**
+     *
+     * @param type one of the event type constants
+     * @return event handle to pass to commit, null when not recording
+     */
+    static Object begin(final int type) {
+        return null;
+    }
+
+    /**
+     *
+     * @param event handle returned by begin
+     * @param sql SQL Statement the event is for, may be null
+     * @param rows number of rows, -1 if not applicable
+     */
+    static void commit(final Object event, final String sql, final long rows) {
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * Counters kept by a FunctionalSql instance
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class SQLMetrics {
+
+    private final java.util.concurrent.atomic.AtomicLong cancellableCloses = new java.util.concurrent.atomic.AtomicLong();
+    private volatile int drainSampleInterval;
+    private final LongAdder cancelledCloses = new LongAdder();
+    private final LongAdder cancelledCloseNanos = new LongAdder();
+    private final LongAdder drainedCloses = new LongAdder();
+    private final LongAdder drainedCloseNanos = new LongAdder();
+
+    /**
+     * Called for each Stream closed early while cancel on early close is on
+     *
+     * @return true if this close should drain instead of cancel, so that
+     * there are drained closes to compare the cancelled closes against
+     */
+    boolean sampleDrain() {
+        final int interval = drainSampleInterval;
+        return interval > 0 && cancellableCloses.incrementAndGet() % interval == 0;
+    }
+
+    /**
+     *
+     * @return every how many early closes one drains instead of cancelling,
+     * 0 (the default) if none does
+     */
+    public int getDrainSampleInterval() {
+        return drainSampleInterval;
+    }
+
+    /**
+     * With cancel on early close on, every drainSampleInterval-th early close
+     * drains the remaining rows instead, to keep
+     * getEstimatedCancelNanosSaved current. A sampled close costs as much as
+     * an early close without cancel, so sampling is off by default
+     *
+     * @param drainSampleInterval every how many early closes one drains, 0 to
+     * never drain
+     */
+    public void setDrainSampleInterval(final int drainSampleInterval) {
+        if (drainSampleInterval < 0) {
+            throw new IllegalArgumentException("drainSampleInterval can not be negative");
+        }
+        this.drainSampleInterval = drainSampleInterval;
+    }
+
+    void cancelledClose(final long nanos) {
+        cancelledCloses.increment();
+        cancelledCloseNanos.add(nanos);
+    }
+
+    void drainedClose(final long nanos) {
+        drainedCloses.increment();
+        drainedCloseNanos.add(nanos);
+    }
+
+    /**
+     *
+     * @return number of Streams closed early where the Statement was cancelled
+     */
+    public long getCancelledCloses() {
+        return cancelledCloses.sum();
+    }
+
+    /**
+     *
+     * @return total nanoseconds spent closing Streams that were cancelled
+     */
+    public long getCancelledCloseNanos() {
+        return cancelledCloseNanos.sum();
+    }
+
+    /**
+     *
+     * @return number of Streams closed early without cancelling the
+     * Statement, leaving the driver to drain the remaining rows
+     */
+    public long getDrainedCloses() {
+        return drainedCloses.sum();
+    }
+
+    /**
+     *
+     * @return total nanoseconds spent closing Streams that were not cancelled
+     */
+    public long getDrainedCloseNanos() {
+        return drainedCloseNanos.sum();
+    }
+
+    /**
+     * Estimates the time saved by cancelling, as the difference between the
+     * average drained close and the average cancelled close, times the number
+     * of cancelled closes. While cancel on early close is on the drained
+     * closes come from the samples taken every getDrainSampleInterval early
+     * closes, which are only taken after setDrainSampleInterval
+     *
+     * @return estimated nanoseconds saved, 0 if there are no samples of both
+     */
+    public long getEstimatedCancelNanosSaved() {
+        final long cancelled = getCancelledCloses();
+        final long drained = getDrainedCloses();
+        if (cancelled == 0 || drained == 0) {
+            return 0;
+        }
+        final double saved = (double) getDrainedCloseNanos() / drained - (double) getCancelledCloseNanos() / cancelled;
+        return saved > 0 ? (long) (saved * cancelled) : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SQLMetrics[cancelledCloses=%d, cancelledCloseNanos=%d, drainedCloses=%d, drainedCloseNanos=%d]",
+                getCancelledCloses(), getCancelledCloseNanos(), getDrainedCloses(), getDrainedCloseNanos());
+    }
+}
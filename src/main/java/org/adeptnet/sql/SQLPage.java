@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * One page of rows read by a paged Stream
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ * @param <T> Result Type of applying row function on ResultSet
+ */
+final class SQLPage<T> {
+
+    final java.util.List<T> rows;
+    final Object[][] keys;
+    final int pageSize;
+    long offset;
+    long fetchNanos;
+
+    /**
+     *
+     * @param rows rows of the page
+     * @param keys values of the key columns per row, null if not keyed
+     * @param pageSize number of rows that was requested
+     */
+    SQLPage(final java.util.List<T> rows, final Object[][] keys, final int pageSize) {
+        this.rows = rows;
+        this.keys = keys;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     *
+     * @return true if fewer rows than requested were read
+     */
+    boolean isLast() {
+        return rows.size() < pageSize;
+    }
+
+    /**
+     *
+     * @return key of the last row, null if empty or not keyed
+     */
+    Object[] lastKey() {
+        return keys == null || rows.isEmpty() ? null : keys[rows.size() - 1];
+    }
+}
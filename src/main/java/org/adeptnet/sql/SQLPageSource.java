@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * Reads the pages of a paged Stream
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ * @param <T> Result Type of applying row function on ResultSet
+ */
+interface SQLPageSource<T> {
+
+    /**
+     *
+     * @return first SQLPage
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    SQLPage<T> first() throws java.sql.SQLException, SQLDataAccessException;
+
+    /**
+     *
+     * @param previous the previous SQLPage
+     * @return SQLPage after previous, null if there are no more
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    SQLPage<T> next(SQLPage<T> previous) throws java.sql.SQLException, SQLDataAccessException;
+
+    /**
+     *
+     * @return number of rows per page for the following pages
+     */
+    int getPageSize();
+
+    /**
+     *
+     * @param pageSize number of rows per page for the following pages
+     */
+    void setPageSize(int pageSize);
+}
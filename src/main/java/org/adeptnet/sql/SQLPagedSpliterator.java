@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.util.function.Consumer;
+
+/**
+ *
+ * Spliterator over the rows of consecutive pages, the next page is only read
+ * once all rows of the current page were consumed
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ * @param <T> Result Type of applying row function on ResultSet
+ */
+class SQLPagedSpliterator<T> implements java.util.Spliterator<T> {
+
+    final SQLPageSource<T> source;
+    private final KeysetCheckpoint checkpoint;
+    private SQLPage<T> page;
+    private int index;
+    private boolean done;
+
+    /**
+     *
+     * @param source SQLPageSource to read pages from
+     * @param checkpoint KeysetCheckpoint to update after each consumed row,
+     * may be null
+     */
+    SQLPagedSpliterator(final SQLPageSource<T> source, final KeysetCheckpoint checkpoint) {
+        this.source = source;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     *
+     * @param previous the previous SQLPage, null for the first
+     * @return the next SQLPage, null if there are no more
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     * @throws SQLDataAccessException if underlying operation throws
+     * SQLDataAccessException
+     */
+    SQLPage<T> nextPage(final SQLPage<T> previous) throws java.sql.SQLException, SQLDataAccessException {
+        return previous == null ? source.first() : source.next(previous);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     * during the operation
+     */
+    @Override
+    public boolean tryAdvance(final Consumer<? super T> action) throws SQLDataAccessException {
+        while (page == null || index >= page.rows.size()) {
+            if (done) {
+                return false;
+            }
+            try {
+                page = nextPage(page);
+            } catch (java.sql.SQLException ex) {
+                done = true;
+                throw new SQLDataAccessException(ex.getMessage(), ex);
+            }
+            index = 0;
+            if (page == null) {
+                done = true;
+                return false;
+            }
+        }
+        final int current = index++;
+        action.accept(page.rows.get(current));
+        if (checkpoint != null && page.keys != null) {
+            checkpoint.update(page.keys[current]);
+        }
+        return true;
+    }
+
+    /**
+     * Pages can not be split
+     *
+     * @return null
+     */
+    @Override
+    public java.util.Spliterator<T> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED;
+    }
+
+    /**
+     * Stops reading further pages
+     */
+    void close() {
+        done = true;
+        page = null;
+    }
+}
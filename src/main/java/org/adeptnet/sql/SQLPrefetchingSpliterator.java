@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ *
+ * Paged Spliterator that reads the following pages on the Executor while the
+ * current page is being consumed. Optionally adapts the page size to the
+ * ratio between the time to read a page and the time to consume one
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ * @param <T> Result Type of applying row function on ResultSet
+ */
+class SQLPrefetchingSpliterator<T> extends SQLPagedSpliterator<T> {
+
+    private final PagingOptions options;
+    private final java.util.ArrayDeque<CompletableFuture<SQLPage<T>>> ahead = new java.util.ArrayDeque<>();
+    private long handedOutNanos;
+
+    /**
+     *
+     * @param source SQLPageSource to read pages from
+     * @param checkpoint KeysetCheckpoint to update after each consumed row,
+     * may be null
+     * @param options PagingOptions with the prefetch depth and page sizing
+     */
+    SQLPrefetchingSpliterator(final SQLPageSource<T> source, final KeysetCheckpoint checkpoint, final PagingOptions options) {
+        super(source, checkpoint);
+        this.options = options;
+    }
+
+    @Override
+    SQLPage<T> nextPage(final SQLPage<T> previous) throws java.sql.SQLException, SQLDataAccessException {
+        final long consumerNanos = previous == null ? 0 : System.nanoTime() - handedOutNanos;
+        final CompletableFuture<SQLPage<T>> future = ahead.isEmpty()
+                ? (previous == null ? CompletableFuture.supplyAsync(this::readFirst, options.getExecutor()) : readAfter(CompletableFuture.completedFuture(previous)))
+                : ahead.poll();
+        final SQLPage<T> page = join(future);
+        if (page != null && previous != null && options.isAdaptive()) {
+            adapt(page.fetchNanos, consumerNanos);
+        }
+        CompletableFuture<SQLPage<T>> last = future;
+        for (final CompletableFuture<SQLPage<T>> pending : ahead) {
+            last = pending;
+        }
+        while (page != null && ahead.size() < options.getPrefetchDepth()) {
+            last = readAfter(last);
+            ahead.add(last);
+        }
+        handedOutNanos = System.nanoTime();
+        return page;
+    }
+
+    /**
+     *
+     * @param previous future of the previous SQLPage
+     * @return future of the SQLPage after it
+     */
+    private CompletableFuture<SQLPage<T>> readAfter(final CompletableFuture<SQLPage<T>> previous) {
+        return previous.thenApplyAsync(this::read, options.getExecutor());
+    }
+
+    /**
+     *
+     * @return the first SQLPage
+     */
+    private SQLPage<T> readFirst() {
+        try {
+            return source.first();
+        } catch (java.sql.SQLException ex) {
+            throw new SQLDataAccessException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     *
+     * @param previous the previous SQLPage, null if there are no more
+     * @return the next SQLPage, null if there are no more
+     */
+    private SQLPage<T> read(final SQLPage<T> previous) {
+        if (previous == null) {
+            return null;
+        }
+        try {
+            return source.next(previous);
+        } catch (java.sql.SQLException ex) {
+            throw new SQLDataAccessException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     *
+     * @param fetchNanos time it took to read the page
+     * @param consumerNanos time it took to consume the previous page
+     */
+    private void adapt(final long fetchNanos, final long consumerNanos) {
+        final int pageSize = source.getPageSize();
+        if (fetchNanos > consumerNanos) {
+            source.setPageSize(Math.min(options.getMaxPageSize(), pageSize * 2));
+        } else if (fetchNanos * 4 < consumerNanos) {
+            source.setPageSize(Math.max(options.getMinPageSize(), pageSize / 2));
+        }
+    }
+
+    private static <T> SQLPage<T> join(final CompletableFuture<SQLPage<T>> future) throws java.sql.SQLException {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof SQLDataAccessException && cause.getCause() instanceof java.sql.SQLException) {
+                throw (java.sql.SQLException) cause.getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw ex;
+        }
+    }
+
+    @Override
+    void close() {
+        super.close();
+        for (final CompletableFuture<SQLPage<T>> future : ahead) {
+            future.cancel(false);
+        }
+        ahead.clear();
+    }
+}
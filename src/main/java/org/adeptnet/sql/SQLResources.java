@@ -0,0 +1,196 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ *
+ * Holder for the Connection, Statement and ResultSet of one query, used from
+ * open to close so that no lists of closables are needed. As a Runnable it
+ * can be passed directly to Stream#onClose
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+final class SQLResources implements Runnable {
+
+    private static final Logger LOG = Logger.getLogger(SQLResources.class.getName());
+
+    final String sql;
+    ColumnShape.Cache shapes;
+    java.sql.Connection con;
+    java.sql.Statement stmt;
+    java.sql.ResultSet rs;
+    SQLWatchdog.Timeout timeout;
+    long rows;
+    boolean exhausted;
+    private SQLMetrics metrics;
+    private boolean cancelOnEarlyClose;
+    private Object iterateEvent;
+    private boolean resultSetOnly;
+    private boolean closed;
+
+    /**
+     *
+     * @param sql SQL Statement, used for events, may be null
+     */
+    SQLResources(final String sql) {
+        this.sql = sql;
+    }
+
+    /**
+     *
+     * @param rs ResultSet from an external supplier, Statement and Connection
+     * are resolved from it when closing
+     * @param sql SQL Statement, used for events, may be null
+     * @return SQLResources
+     */
+    static SQLResources of(final java.sql.ResultSet rs, final String sql) {
+        final SQLResources resources = new SQLResources(sql);
+        resources.rs = rs;
+        return resources;
+    }
+
+    /**
+     *
+     * @param rs ResultSet of a Statement that stays open after the ResultSet
+     * is closed
+     * @param sql SQL Statement, used for events, may be null
+     * @return SQLResources that only closes the ResultSet
+     */
+    static SQLResources resultSetOnly(final java.sql.ResultSet rs, final String sql) {
+        final SQLResources resources = of(rs, sql);
+        resources.resultSetOnly = true;
+        return resources;
+    }
+
+    /**
+     * Marks the start of iterating the ResultSet
+     */
+    void iterating() {
+        iterateEvent = SQLEvents.begin(SQLEvents.ITERATE);
+    }
+
+    /**
+     * Tracks closing before the ResultSet is exhausted
+     *
+     * @param metrics SQLMetrics to record early closes in
+     * @param cancelOnEarlyClose true to cancel the Statement on an early close
+     */
+    void trackEarlyClose(final SQLMetrics metrics, final boolean cancelOnEarlyClose) {
+        this.metrics = metrics;
+        this.cancelOnEarlyClose = cancelOnEarlyClose;
+    }
+
+    /**
+     * Same as close, for Stream#onClose
+     */
+    @Override
+    public void run() {
+        close();
+    }
+
+    /**
+     * Closes ResultSet, Statement and Connection, only the first call has any
+     * effect
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (LOG.isLoggable(Level.FINER)) {
+            LOG.finer("closeResources");
+        }
+        SQLEvents.commit(iterateEvent, sql, rows);
+        final Object event = SQLEvents.begin(SQLEvents.CLOSE);
+        if (resultSetOnly) {
+            close(rs);
+            rs = null;
+            SQLEvents.commit(event, sql, rows);
+            return;
+        }
+        final boolean early = metrics != null && !exhausted;
+        final long start = early ? System.nanoTime() : 0;
+        if (stmt == null && rs != null) {
+            try {
+                stmt = rs.getStatement();
+            } catch (Exception ex) {
+                LOG.log(Level.SEVERE, ex.getMessage(), ex);
+            }
+        }
+        if (con == null && stmt != null) {
+            try {
+                con = stmt.getConnection();
+            } catch (Exception ex) {
+                LOG.log(Level.SEVERE, ex.getMessage(), ex);
+            }
+        }
+        close(timeout);
+        final boolean cancelled = early && cancelOnEarlyClose && !metrics.sampleDrain() && cancel(stmt);
+        close(rs);
+        close(stmt);
+        if (!NonClosingConnection.isShared(con)) {
+            close(con);
+        }
+        if (early) {
+            if (cancelled) {
+                metrics.cancelledClose(System.nanoTime() - start);
+            } else {
+                metrics.drainedClose(System.nanoTime() - start);
+            }
+        }
+        timeout = null;
+        rs = null;
+        stmt = null;
+        con = null;
+        SQLEvents.commit(event, sql, rows);
+    }
+
+    /**
+     *
+     * @param stmt Statement to cancel, may be null
+     * @return true if the Statement was cancelled
+     */
+    private static boolean cancel(final java.sql.Statement stmt) {
+        if (stmt == null) {
+            return false;
+        }
+        try {
+            stmt.cancel();
+            return true;
+        } catch (Exception ex) {
+            LOG.log(Level.FINE, ex.getMessage(), ex);
+            return false;
+        }
+    }
+
+    /**
+     *
+     * @param resource AutoCloseable to close, may be null
+     */
+    static void close(final java.lang.AutoCloseable resource) {
+        if (resource == null) {
+            return;
+        }
+        try {
+            resource.close();
+        } catch (Exception ex) {
+            LOG.log(Level.SEVERE, ex.getMessage(), ex);
+        }
+    }
+}
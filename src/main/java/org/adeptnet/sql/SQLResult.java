@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * One result of a Statement that returns several results, either a ResultSet
+ * or an update count. The rows of a ResultSet have to be read before moving
+ * on to the next result, which closes it
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ * @param <T> Result Type of applying row function on ResultSet
+ */
+public class SQLResult<T> {
+
+    private final int index;
+    private final SQLResources resources;
+    private final SQLFunction<java.sql.ResultSet, T> rowFunction;
+    private final long updateCount;
+
+    /**
+     *
+     * @param index position of the result, starting at 0
+     * @param resources SQLResources owning only the ResultSet, null for an
+     * update count
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     * @param updateCount update count, -1 for a ResultSet
+     */
+    SQLResult(final int index, final SQLResources resources, final SQLFunction<java.sql.ResultSet, T> rowFunction, final long updateCount) {
+        this.index = index;
+        this.resources = resources;
+        this.rowFunction = rowFunction;
+        this.updateCount = updateCount;
+    }
+
+    /**
+     *
+     * @return position of the result, starting at 0
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     *
+     * @return true if the result is a ResultSet
+     */
+    public boolean isResultSet() {
+        return resources != null;
+    }
+
+    /**
+     *
+     * @return update count, -1 if the result is a ResultSet
+     */
+    public long getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * Closing the Stream only closes this ResultSet, not the Statement
+     *
+     * @return Stream of T over the rows of the ResultSet
+     * @throws IllegalStateException if the result is an update count
+     */
+    public java.util.stream.Stream<T> stream() {
+        if (resources == null) {
+            throw new IllegalStateException(String.format("Result %d is an update count", index));
+        }
+        return java.util.stream.StreamSupport.stream(new SQLResultSetSpliterator<>(resources, rowFunction, Long.MAX_VALUE, false), false)
+                .onClose(resources);
+    }
+
+    @Override
+    public String toString() {
+        return isResultSet() ? String.format("SQLResult[%d, ResultSet]", index) : String.format("SQLResult[%d, updateCount=%d]", index, updateCount);
+    }
+}
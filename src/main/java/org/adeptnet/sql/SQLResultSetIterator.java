@@ -27,15 +27,41 @@ public class SQLResultSetIterator<T> implements java.util.Iterator<T> {
 
     private static final Logger LOG = Logger.getLogger(SQLResultSetIterator.class.getName());
 
+    private static final byte UNKNOWN = 0;
+    private static final byte HAS_NEXT = 1;
+    private static final byte DONE = 2;
+
     private final SQLFunction<java.sql.ResultSet, T> rowFunction;
+    private final SQLResources resources;
     private final java.sql.ResultSet rs;
     private final java.sql.ResultSet wrapper;
-    private Boolean hasNext;
+    private byte state = UNKNOWN;
 
     public SQLResultSetIterator(final java.sql.ResultSet rs, final SQLFunction<java.sql.ResultSet, T> rowFunction) {
+        this(rs, rowFunction, null);
+    }
+
+    /**
+     *
+     * @param rs ResultSet to iterate
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     * @param sql SQL Statement of the ResultSet, used for events, may be null
+     */
+    public SQLResultSetIterator(final java.sql.ResultSet rs, final SQLFunction<java.sql.ResultSet, T> rowFunction, final String sql) {
+        this(SQLResources.of(rs, sql), rowFunction);
+    }
+
+    /**
+     *
+     * @param resources SQLResources holding the ResultSet to iterate
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     */
+    SQLResultSetIterator(final SQLResources resources, final SQLFunction<java.sql.ResultSet, T> rowFunction) {
         this.rowFunction = rowFunction;
-        this.rs = rs;
-        this.wrapper = new ForwardOnlyReadResultSet(rs);
+        this.resources = resources;
+        this.rs = resources.rs;
+        this.wrapper = new ForwardOnlyReadResultSet(rs, resources.shapes, resources.sql);
+        resources.iterating();
     }
 
     /**
@@ -47,10 +73,10 @@ public class SQLResultSetIterator<T> implements java.util.Iterator<T> {
     @Override
     public boolean hasNext() throws SQLDataAccessException {
         try {
-            if (hasNext == null) {
-                hasNext = rs.next();
+            if (state == UNKNOWN) {
+                state = rs.next() ? HAS_NEXT : DONE;
             }
-            return hasNext;
+            return state == HAS_NEXT;
         } catch (java.sql.SQLException e) {
             close();
             throw new SQLDataAccessException(e.getMessage(), e);
@@ -70,13 +96,14 @@ public class SQLResultSetIterator<T> implements java.util.Iterator<T> {
                 throw new java.util.NoSuchElementException();
             }
             try {
+                resources.rows++;
                 return rowFunction.apply(wrapper);
             } catch (java.sql.SQLException | SQLDataAccessException ex) {
                 close();
                 throw new SQLDataAccessException(ex.getMessage(), ex);
             }
         } finally {
-            hasNext = null;
+            state = UNKNOWN;
         }
     }
 
@@ -85,7 +112,7 @@ public class SQLResultSetIterator<T> implements java.util.Iterator<T> {
             if (LOG.isLoggable(Level.FINER)) {
                 LOG.finer("Closing rs");
             }
-            FunctionalSql.closeResources(rs);
+            resources.close();
         }
     }
 }
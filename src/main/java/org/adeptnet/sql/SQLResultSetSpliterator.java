@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.util.function.Consumer;
+
+/**
+ *
+ * Spliterator over a forward only ResultSet, elements are produced in cursor
+ * order and the ResultSet can not be modified through it
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ * @param <T> Result Type of applying row function on ResultSet
+ */
+public class SQLResultSetSpliterator<T> implements java.util.Spliterator<T> {
+
+    private final SQLFunction<java.sql.ResultSet, T> rowFunction;
+    private final SQLResources resources;
+    private final java.sql.ResultSet rs;
+    private final java.sql.ResultSet wrapper;
+    private final int characteristics;
+    private long estimatedSize;
+
+    /**
+     *
+     * @param rs ResultSet to iterate
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     * @param estimatedSize estimated number of rows, Long.MAX_VALUE if unknown
+     * @param nonNull true if rowFunction never returns null
+     */
+    public SQLResultSetSpliterator(final java.sql.ResultSet rs, final SQLFunction<java.sql.ResultSet, T> rowFunction, final long estimatedSize, final boolean nonNull) {
+        this(SQLResources.of(rs, null), rowFunction, estimatedSize, nonNull);
+    }
+
+    /**
+     *
+     * @param resources SQLResources holding the ResultSet to iterate
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     * @param estimatedSize estimated number of rows, Long.MAX_VALUE if unknown
+     * @param nonNull true if rowFunction never returns null
+     */
+    SQLResultSetSpliterator(final SQLResources resources, final SQLFunction<java.sql.ResultSet, T> rowFunction, final long estimatedSize, final boolean nonNull) {
+        this.rowFunction = rowFunction;
+        this.resources = resources;
+        this.rs = resources.rs;
+        this.wrapper = new ForwardOnlyReadResultSet(rs, resources.shapes, resources.sql);
+        this.estimatedSize = estimatedSize;
+        this.characteristics = ORDERED | IMMUTABLE | (nonNull ? NONNULL : 0);
+        resources.iterating();
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     * during the operation
+     */
+    @Override
+    public boolean tryAdvance(final Consumer<? super T> action) throws SQLDataAccessException {
+        try {
+            if (!rs.next()) {
+                resources.exhausted = true;
+                estimatedSize = 0;
+                return false;
+            }
+            resources.rows++;
+            action.accept(rowFunction.apply(wrapper));
+            return true;
+        } catch (java.sql.SQLException ex) {
+            close();
+            throw new SQLDataAccessException(ex.getMessage(), ex);
+        } catch (SQLDataAccessException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     * during the operation
+     */
+    @Override
+    public void forEachRemaining(final Consumer<? super T> action) throws SQLDataAccessException {
+        long rows = 0;
+        try {
+            while (rs.next()) {
+                rows++;
+                action.accept(rowFunction.apply(wrapper));
+            }
+            resources.exhausted = true;
+            estimatedSize = 0;
+        } catch (java.sql.SQLException ex) {
+            close();
+            throw new SQLDataAccessException(ex.getMessage(), ex);
+        } catch (SQLDataAccessException ex) {
+            close();
+            throw ex;
+        } finally {
+            resources.rows += rows;
+        }
+    }
+
+    /**
+     * A ResultSet cursor can not be split
+     *
+     * @return null
+     */
+    @Override
+    public java.util.Spliterator<T> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimatedSize;
+    }
+
+    @Override
+    public int characteristics() {
+        return characteristics;
+    }
+
+    public void close() {
+        resources.close();
+    }
+}
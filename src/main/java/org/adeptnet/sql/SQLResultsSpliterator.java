@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.util.function.Consumer;
+
+/**
+ *
+ * Spliterator over the results of a Statement, moving to the next result
+ * with Statement#getMoreResults only when the next element is requested
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ * @param <T> Result Type of applying row function on ResultSet
+ */
+class SQLResultsSpliterator<T> implements java.util.Spliterator<SQLResult<T>> {
+
+    private final SQLResources resources;
+    private final SQLFunction<java.sql.ResultSet, T> rowFunction;
+    private boolean isResultSet;
+    private boolean started;
+    private boolean done;
+    private int index;
+
+    /**
+     *
+     * @param resources SQLResources holding the executed Statement
+     * @param isResultSet value returned by Statement#execute
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     */
+    SQLResultsSpliterator(final SQLResources resources, final boolean isResultSet, final SQLFunction<java.sql.ResultSet, T> rowFunction) {
+        this.resources = resources;
+        this.isResultSet = isResultSet;
+        this.rowFunction = rowFunction;
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @throws SQLDataAccessException if any java.sql.SQLException occurred
+     * during the operation
+     */
+    @Override
+    public boolean tryAdvance(final Consumer<? super SQLResult<T>> action) throws SQLDataAccessException {
+        if (done) {
+            return false;
+        }
+        try {
+            final java.sql.Statement stmt = resources.stmt;
+            if (started) {
+                isResultSet = stmt.getMoreResults();
+            }
+            started = true;
+            if (isResultSet) {
+                action.accept(new SQLResult<>(index++, SQLResources.resultSetOnly(stmt.getResultSet(), resources.sql), rowFunction, -1));
+                return true;
+            }
+            final long updateCount = stmt.getUpdateCount();
+            if (updateCount == -1) {
+                done = true;
+                resources.exhausted = true;
+                return false;
+            }
+            action.accept(new SQLResult<>(index++, null, rowFunction, updateCount));
+            return true;
+        } catch (java.sql.SQLException ex) {
+            done = true;
+            resources.close();
+            throw new SQLDataAccessException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Results can not be split
+     *
+     * @return null
+     */
+    @Override
+    public java.util.Spliterator<SQLResult<T>> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+}
@@ -0,0 +1,561 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ *
+ * Operators over Streams, for example from different FunctionalSql
+ * instances, that hold at most the memory budget of the SpillOptions on heap.
+ * The hash operators work on primitive long keys and past the budget hash
+ * partition their inputs into SpillFiles, processing one partition at a
+ * time, so the inputs can be larger than the heap as long as one partition
+ * fits. The sort writes sorted runs and merges them
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public final class SQLStreams {
+
+    private SQLStreams() {
+    }
+
+    /**
+     *
+     * @param key key
+     * @param partitions number of partitions
+     * @return partition of key, independent of the slot in a LongIntHashMap
+     */
+    static int partition(final long key, final int partitions) {
+        return (int) (((key * 0xC2B2AE3D27D4EB4FL) >>> 33) % partitions);
+    }
+
+    /**
+     * Inner join that holds the build side in memory, the probe side is
+     * joined lazily in its own order
+     *
+     * @param <B> the type of the build rows
+     * @param <P> the type of the probe rows
+     * @param <R> the type of the joined rows
+     * @param build Stream of the smaller input, consumed and closed
+     * @param probe Stream of the larger input, closed with the result
+     * @param buildKey key of a build row
+     * @param probeKey key of a probe row
+     * @param combiner BiFunction that joins a build row with a probe row
+     * @return Stream of joined rows
+     */
+    public static <B, P, R> Stream<R> hashJoin(final Stream<B> build, final Stream<P> probe, final ToLongFunction<? super B> buildKey, final ToLongFunction<? super P> probeKey, final java.util.function.BiFunction<? super B, ? super P, ? extends R> combiner) {
+        return hashJoin(build, probe, buildKey, probeKey, combiner, null, null, new SpillOptions().withMemoryBudget(Integer.MAX_VALUE));
+    }
+
+    /**
+     * Inner join as a grace hash join. While the build side fits the memory
+     * budget the probe side is joined lazily in its own order, otherwise both
+     * sides are partitioned to disk and the result is produced partition by
+     * partition
+     *
+     * @param <B> the type of the build rows
+     * @param <P> the type of the probe rows
+     * @param <R> the type of the joined rows
+     * @param build Stream of the smaller input, consumed and closed
+     * @param probe Stream of the larger input, closed with the result
+     * @param buildKey key of a build row
+     * @param probeKey key of a probe row
+     * @param combiner BiFunction that joins a build row with a probe row
+     * @param buildSerializer RowSerializer for spilled build rows
+     * @param probeSerializer RowSerializer for spilled probe rows
+     * @param options SpillOptions
+     * @return Stream of joined rows
+     * @throws SQLDataAccessException if spilling fails
+     */
+    public static <B, P, R> Stream<R> hashJoin(final Stream<B> build, final Stream<P> probe, final ToLongFunction<? super B> buildKey, final ToLongFunction<? super P> probeKey, final java.util.function.BiFunction<? super B, ? super P, ? extends R> combiner, final RowSerializer<B> buildSerializer, final RowSerializer<P> probeSerializer, final SpillOptions options) throws SQLDataAccessException {
+        final int budget = options.getMemoryBudget();
+        LongMultiMap<B> table = new LongMultiMap<>(Math.min(budget, 1024));
+        SpillFile[] buildFiles = null;
+        try (final Stream<B> source = build) {
+            final java.util.Iterator<B> rows = source.iterator();
+            while (rows.hasNext()) {
+                final B row = rows.next();
+                if (buildFiles != null) {
+                    buildFiles[partition(buildKey.applyAsLong(row), buildFiles.length)].write(row, buildSerializer);
+                    continue;
+                }
+                table.put(buildKey.applyAsLong(row), row);
+                if (table.size() > budget && buildSerializer != null && probeSerializer != null) {
+                    buildFiles = SpillFile.create(options.getPartitions(), options);
+                    for (int entry = 0; entry < table.size(); entry++) {
+                        final B spilled = table.value(entry);
+                        buildFiles[partition(buildKey.applyAsLong(spilled), buildFiles.length)].write(spilled, buildSerializer);
+                    }
+                    table = null;
+                }
+            }
+            if (buildFiles != null) {
+                SpillFile.finishAll(buildFiles);
+            }
+        } catch (RuntimeException ex) {
+            SpillFile.closeAll(buildFiles);
+            probe.close();
+            throw ex;
+        }
+        if (buildFiles == null) {
+            return StreamSupport.stream(new JoinSpliterator<B, P, R>(probe.spliterator(), table, probeKey, combiner), false)
+                    .onClose(probe::close);
+        }
+        final SpillFile[] builds = buildFiles;
+        final SpillFile[] probes = new SpillFile[builds.length];
+        try (final Stream<P> source = probe) {
+            System.arraycopy(SpillFile.create(builds.length, options), 0, probes, 0, probes.length);
+            source.forEach(row -> probes[partition(probeKey.applyAsLong(row), probes.length)].write(row, probeSerializer));
+            SpillFile.finishAll(probes);
+        } catch (RuntimeException ex) {
+            SpillFile.closeAll(builds);
+            SpillFile.closeAll(probes);
+            throw ex;
+        }
+        return StreamSupport.stream(new PartitionedSpliterator<R>(builds.length, partition -> {
+            final LongMultiMap<B> partitionTable = new LongMultiMap<>((int) Math.min(builds[partition].count(), Integer.MAX_VALUE - 8));
+            builds[partition].spliterator(buildSerializer).forEachRemaining(row -> partitionTable.put(buildKey.applyAsLong(row), row));
+            builds[partition].close();
+            return new JoinSpliterator<B, P, R>(probes[partition].spliterator(probeSerializer), partitionTable, probeKey, combiner);
+        }), false).onClose(() -> {
+            SpillFile.closeAll(builds);
+            SpillFile.closeAll(probes);
+        });
+    }
+
+    /**
+     * Groups rows by a long key in memory
+     *
+     * @param <T> the type of the rows
+     * @param rows Stream of rows, consumed and closed
+     * @param key key of a row
+     * @param aggregates Aggregates to compute per group, in the order of the
+     * AggregateGroup values
+     * @return Stream of AggregateGroup in no particular order
+     */
+    public static <T> Stream<AggregateGroup> groupAggregate(final Stream<T> rows, final ToLongFunction<? super T> key, final java.util.List<Aggregate<? super T>> aggregates) {
+        return groupAggregate(rows, key, new SpillOptions().withMemoryBudget(Integer.MAX_VALUE), aggregates);
+    }
+
+    /**
+     * Groups rows by a long key. Once there are more groups than the memory
+     * budget the partial states are spilled by key partition and the
+     * partitions are merged one at a time when the result is read
+     *
+     * @param <T> the type of the rows
+     * @param rows Stream of rows, consumed and closed
+     * @param key key of a row
+     * @param options SpillOptions
+     * @param aggregates Aggregates to compute per group, in the order of the
+     * AggregateGroup values
+     * @return Stream of AggregateGroup in no particular order
+     * @throws SQLDataAccessException if spilling fails
+     */
+    public static <T> Stream<AggregateGroup> groupAggregate(final Stream<T> rows, final ToLongFunction<? super T> key, final SpillOptions options, final java.util.List<Aggregate<? super T>> aggregates) throws SQLDataAccessException {
+        final java.util.List<Aggregate<?>> copy = new java.util.ArrayList<>(aggregates);
+        final GroupTable table = new GroupTable(copy, Math.min(options.getMemoryBudget(), 1024));
+        final SpillFile[][] files = new SpillFile[1][];
+        try (final Stream<T> source = rows) {
+            source.forEach(row -> {
+                table.accumulate(key.applyAsLong(row), row);
+                if (table.groups > options.getMemoryBudget()) {
+                    if (files[0] == null) {
+                        files[0] = SpillFile.create(options.getPartitions(), options);
+                    }
+                    table.spill(files[0]);
+                }
+            });
+            if (files[0] == null) {
+                return table.stream();
+            }
+            table.spill(files[0]);
+            SpillFile.finishAll(files[0]);
+        } catch (RuntimeException ex) {
+            SpillFile.closeAll(files[0]);
+            throw ex;
+        }
+        final SpillFile[] partitions = files[0];
+        return StreamSupport.stream(new PartitionedSpliterator<AggregateGroup>(partitions.length, partition -> {
+            final GroupTable merged = new GroupTable(copy, 1024);
+            merged.merge(partitions[partition]);
+            partitions[partition].close();
+            return merged.stream().spliterator();
+        }), false).onClose(() -> SpillFile.closeAll(partitions));
+    }
+
+    /**
+     * External merge sort that keeps at most memoryBudget rows on heap
+     *
+     * @param <T> the type of the rows
+     * @param rows Stream of rows, consumed and closed
+     * @param comparator Comparator to sort by
+     * @param serializer RowSerializer for the sorted runs
+     * @param memoryBudget rows per sorted run
+     * @return sorted Stream
+     * @throws SQLDataAccessException if spilling fails
+     */
+    public static <T> Stream<T> sortedExternally(final Stream<T> rows, final java.util.Comparator<? super T> comparator, final RowSerializer<T> serializer, final int memoryBudget) throws SQLDataAccessException {
+        return sortedExternally(rows, comparator, serializer, new SpillOptions().withMemoryBudget(memoryBudget));
+    }
+
+    /**
+     * External merge sort. Rows are buffered up to the memory budget, each
+     * full buffer is sorted and written as a run to a SpillFile, and the runs
+     * are merged lazily with a PriorityQueue over the head of every run. The
+     * last buffer stays in memory as a run. With more runs than the merge fan
+     * in, consecutive runs are merged into larger runs first. The sort is
+     * stable
+     *
+     * @param <T> the type of the rows
+     * @param rows Stream of rows, consumed and closed
+     * @param comparator Comparator to sort by
+     * @param serializer RowSerializer for the sorted runs
+     * @param options SpillOptions
+     * @return sorted Stream, closing it deletes the runs
+     * @throws SQLDataAccessException if spilling fails
+     */
+    public static <T> Stream<T> sortedExternally(final Stream<T> rows, final java.util.Comparator<? super T> comparator, final RowSerializer<T> serializer, final SpillOptions options) throws SQLDataAccessException {
+        final int budget = options.getMemoryBudget();
+        final java.util.List<SpillFile> files = new java.util.ArrayList<>();
+        final java.util.List<T> buffer = new java.util.ArrayList<>(Math.min(budget, 1024));
+        try (final Stream<T> source = rows) {
+            final java.util.Iterator<T> iterator = source.iterator();
+            while (iterator.hasNext()) {
+                buffer.add(iterator.next());
+                if (buffer.size() >= budget) {
+                    buffer.sort(comparator);
+                    final SpillFile run = SpillFile.create(options);
+                    files.add(run);
+                    for (final T row : buffer) {
+                        run.write(row, serializer);
+                    }
+                    run.finishWrite();
+                    buffer.clear();
+                }
+            }
+            buffer.sort(comparator);
+            if (files.isEmpty()) {
+                return buffer.stream();
+            }
+            java.util.List<Spliterator<T>> runs = new java.util.ArrayList<>(files.size() + 1);
+            for (final SpillFile file : files) {
+                runs.add(file.spliterator(serializer));
+            }
+            if (!buffer.isEmpty()) {
+                runs.add(buffer.spliterator());
+            }
+            while (runs.size() > options.getMergeFanIn()) {
+                final java.util.List<Spliterator<T>> merged = new java.util.ArrayList<>(runs.size() / options.getMergeFanIn() + 1);
+                for (int from = 0; from < runs.size(); from += options.getMergeFanIn()) {
+                    final SpillFile run = SpillFile.create(options);
+                    files.add(run);
+                    new MergeSpliterator<>(runs.subList(from, Math.min(from + options.getMergeFanIn(), runs.size())), comparator)
+                            .forEachRemaining(row -> run.write(row, serializer));
+                    run.finishWrite();
+                    merged.add(run.spliterator(serializer));
+                }
+                runs = merged;
+            }
+            return StreamSupport.stream(new MergeSpliterator<>(runs, comparator), false)
+                    .onClose(() -> files.forEach(SpillFile::close));
+        } catch (RuntimeException ex) {
+            files.forEach(SpillFile::close);
+            throw ex;
+        }
+    }
+
+    /**
+     *
+     * Joins each probe row with the build rows of its key
+     */
+    private static final class JoinSpliterator<B, P, R> implements Spliterator<R> {
+
+        private final Spliterator<P> probe;
+        private final LongMultiMap<B> table;
+        private final ToLongFunction<? super P> probeKey;
+        private final java.util.function.BiFunction<? super B, ? super P, ? extends R> combiner;
+        private final Consumer<P> next = row -> current = row;
+        private P current;
+        private int entry = -1;
+
+        private JoinSpliterator(final Spliterator<P> probe, final LongMultiMap<B> table, final ToLongFunction<? super P> probeKey, final java.util.function.BiFunction<? super B, ? super P, ? extends R> combiner) {
+            this.probe = probe;
+            this.table = table;
+            this.probeKey = probeKey;
+            this.combiner = combiner;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super R> action) {
+            while (entry < 0) {
+                if (!probe.tryAdvance(next)) {
+                    return false;
+                }
+                entry = table.first(probeKey.applyAsLong(current));
+            }
+            final B build = table.value(entry);
+            entry = table.next(entry);
+            action.accept(combiner.apply(build, current));
+            return true;
+        }
+
+        @Override
+        public Spliterator<R> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return probe.characteristics() & ORDERED;
+        }
+    }
+
+    /**
+     *
+     * Elements of the partitions in partition order, a partition is only
+     * opened once the previous one is exhausted
+     */
+    static final class PartitionedSpliterator<T> implements Spliterator<T> {
+
+        private final int partitions;
+        private final java.util.function.IntFunction<Spliterator<T>> open;
+        private Spliterator<T> current;
+        private int partition;
+
+        PartitionedSpliterator(final int partitions, final java.util.function.IntFunction<Spliterator<T>> open) {
+            this.partitions = partitions;
+            this.open = open;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super T> action) {
+            while (true) {
+                if (current == null) {
+                    if (partition == partitions) {
+                        return false;
+                    }
+                    current = open.apply(partition++);
+                }
+                if (current.tryAdvance(action)) {
+                    return true;
+                }
+                current = null;
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return 0;
+        }
+    }
+
+    /**
+     *
+     * K-way merge of sorted runs, ties are taken from the earlier run
+     */
+    private static final class MergeSpliterator<T> implements Spliterator<T> {
+
+        private final java.util.PriorityQueue<Run<T>> heads;
+
+        private MergeSpliterator(final java.util.List<Spliterator<T>> runs, final java.util.Comparator<? super T> comparator) {
+            final java.util.Comparator<Run<T>> byHead = (a, b) -> {
+                final int compared = comparator.compare(a.head, b.head);
+                return compared != 0 ? compared : Integer.compare(a.index, b.index);
+            };
+            heads = new java.util.PriorityQueue<>(Math.max(runs.size(), 1), byHead);
+            for (int i = 0; i < runs.size(); i++) {
+                final Run<T> run = new Run<>(runs.get(i), i);
+                if (run.advance()) {
+                    heads.add(run);
+                }
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super T> action) {
+            final Run<T> run = heads.poll();
+            if (run == null) {
+                return false;
+            }
+            final T row = run.head;
+            if (run.advance()) {
+                heads.add(run);
+            }
+            action.accept(row);
+            return true;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED;
+        }
+    }
+
+    /**
+     *
+     * Sorted run with its current head row
+     */
+    private static final class Run<T> implements Consumer<T> {
+
+        private final Spliterator<T> rows;
+        private final int index;
+        private T head;
+
+        private Run(final Spliterator<T> rows, final int index) {
+            this.rows = rows;
+            this.index = index;
+        }
+
+        private boolean advance() {
+            return rows.tryAdvance(this);
+        }
+
+        @Override
+        public void accept(final T row) {
+            head = row;
+        }
+    }
+
+    /**
+     *
+     * States of the groups in one long array, width longs per group
+     */
+    private static final class GroupTable {
+
+        private final java.util.List<Aggregate<Object>> aggregates;
+        private final boolean[] floating;
+        private final int width;
+        private LongIntHashMap index;
+        private long[] keys;
+        private long[] states;
+        private int groups;
+
+        @SuppressWarnings("unchecked")
+        private GroupTable(final java.util.List<Aggregate<?>> aggregates, final int expectedGroups) {
+            this.aggregates = (java.util.List<Aggregate<Object>>) (java.util.List<?>) aggregates;
+            this.width = aggregates.size();
+            this.floating = new boolean[width];
+            for (int i = 0; i < width; i++) {
+                floating[i] = aggregates.get(i).floating;
+            }
+            reset(expectedGroups);
+        }
+
+        private void reset(final int expectedGroups) {
+            index = new LongIntHashMap(expectedGroups);
+            keys = new long[Math.max(expectedGroups, 8)];
+            states = new long[keys.length * width];
+            groups = 0;
+        }
+
+        private int group(final long key) {
+            int group = index.get(key);
+            if (group < 0) {
+                group = groups++;
+                if (group == keys.length) {
+                    keys = java.util.Arrays.copyOf(keys, group * 2);
+                    states = java.util.Arrays.copyOf(states, group * 2 * width);
+                }
+                keys[group] = key;
+                for (int i = 0; i < width; i++) {
+                    states[group * width + i] = aggregates.get(i).initial;
+                }
+                index.put(key, group);
+            }
+            return group;
+        }
+
+        private void accumulate(final long key, final Object row) {
+            final int offset = group(key) * width;
+            for (int i = 0; i < width; i++) {
+                states[offset + i] = aggregates.get(i).accumulator.accumulate(states[offset + i], row);
+            }
+        }
+
+        /**
+         * Writes key and states of every group to the SpillFile of its key
+         * partition and starts over empty
+         */
+        private void spill(final SpillFile[] files) {
+            try {
+                for (int group = 0; group < groups; group++) {
+                    final SpillFile file = files[partition(keys[group], files.length)];
+                    final java.io.DataOutput out = file.output();
+                    out.writeLong(keys[group]);
+                    for (int i = 0; i < width; i++) {
+                        out.writeLong(states[group * width + i]);
+                    }
+                    file.written();
+                }
+            } catch (java.io.IOException ex) {
+                throw SpillFile.failed(ex);
+            }
+            reset(1024);
+        }
+
+        /**
+         * Merges the partial states in the SpillFile
+         */
+        private void merge(final SpillFile file) {
+            final java.io.DataInput in = file.input();
+            try {
+                for (long record = file.count(); record > 0; record--) {
+                    final int offset = group(in.readLong()) * width;
+                    for (int i = 0; i < width; i++) {
+                        states[offset + i] = aggregates.get(i).merge.applyAsLong(states[offset + i], in.readLong());
+                    }
+                }
+            } catch (java.io.IOException ex) {
+                throw SpillFile.failed(ex);
+            }
+        }
+
+        private Stream<AggregateGroup> stream() {
+            return java.util.stream.IntStream.range(0, groups)
+                    .mapToObj(group -> new AggregateGroup(keys[group], java.util.Arrays.copyOfRange(states, group * width, group * width + width), floating));
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ *
+ * Single shared thread that cancels Statements whose SQLDeadline has passed.
+ * Timeouts are kept in a hashed timer wheel, so watching a Statement is a
+ * queue insert and the thread only ever looks at the bucket of the current
+ * tick. A timeout whose deadline was extended is rescheduled instead of
+ * fired. Closed timeouts are unlinked from their bucket by the thread on its
+ * next tick, so they do not hold on to memory until their deadline.
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+final class SQLWatchdog implements Runnable {
+
+    private static final Logger LOG = Logger.getLogger(SQLWatchdog.class.getName());
+
+    static final SQLWatchdog INSTANCE = new SQLWatchdog(TimeUnit.MILLISECONDS.toNanos(10), 512);
+
+    private final long tickNanos;
+    private final int mask;
+    private final Timeout[] wheel;
+    private final ConcurrentLinkedQueue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timeout> closed = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile Thread worker;
+    private long startNanos;
+    private long tick;
+    private int scheduled;
+
+    /**
+     *
+     * @param tickNanos duration of one tick
+     * @param wheelSize number of buckets, must be a power of two
+     */
+    private SQLWatchdog(final long tickNanos, final int wheelSize) {
+        this.tickNanos = tickNanos;
+        this.mask = wheelSize - 1;
+        this.wheel = new Timeout[wheelSize];
+    }
+
+    /**
+     *
+     * @param stmt Statement to cancel when the deadline passes
+     * @param deadline SQLDeadline of the Statement
+     * @return Timeout that has to be closed when the Statement completes
+     */
+    Timeout watch(final java.sql.Statement stmt, final SQLDeadline deadline) {
+        final Timeout timeout = new Timeout(this, stmt, deadline);
+        pending.add(timeout);
+        if (started.compareAndSet(false, true)) {
+            final Thread thread = new Thread(this, "SQLWatchdog");
+            thread.setDaemon(true);
+            worker = thread;
+            thread.start();
+        } else {
+            LockSupport.unpark(worker);
+        }
+        return timeout;
+    }
+
+    @Override
+    public void run() {
+        startNanos = System.nanoTime();
+        while (true) {
+            if (scheduled == 0 && pending.isEmpty()) {
+                closed.clear();
+                LockSupport.park(this);
+                startNanos = System.nanoTime();
+                tick = 0;
+            }
+            final long sleepNanos = startNanos + (tick + 1) * tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                LockSupport.parkNanos(this, sleepNanos);
+                continue;
+            }
+            unlinkClosed();
+            transferPending();
+            expire((int) (tick & mask));
+            tick++;
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (!timeout.closed) {
+                schedule(timeout, tick);
+            }
+        }
+    }
+
+    private void unlinkClosed() {
+        Timeout timeout;
+        while ((timeout = closed.poll()) != null) {
+            if (timeout.bucket >= 0) {
+                unlink(timeout);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param timeout Timeout to put in the wheel
+     * @param minTick earliest tick to schedule on, the bucket of minTick is the
+     * next one to be expired
+     */
+    private void schedule(final Timeout timeout, final long minTick) {
+        final long deadlineTick = Math.max((timeout.deadline.deadlineNanos() - startNanos + tickNanos - 1) / tickNanos, minTick);
+        timeout.rounds = (deadlineTick - minTick) / wheel.length;
+        link(timeout, (int) (deadlineTick & mask));
+    }
+
+    private void link(final Timeout timeout, final int bucket) {
+        final Timeout head = wheel[bucket];
+        timeout.bucket = bucket;
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        wheel[bucket] = timeout;
+        scheduled++;
+    }
+
+    private void unlink(final Timeout timeout) {
+        if (timeout.prev == null) {
+            wheel[timeout.bucket] = timeout.next;
+        } else {
+            timeout.prev.next = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.bucket = -1;
+        timeout.prev = null;
+        timeout.next = null;
+        scheduled--;
+    }
+
+    private void expire(final int bucket) {
+        Timeout timeout = wheel[bucket];
+        wheel[bucket] = null;
+        while (timeout != null) {
+            final Timeout next = timeout.next;
+            timeout.bucket = -1;
+            timeout.prev = null;
+            timeout.next = null;
+            scheduled--;
+            if (!timeout.closed) {
+                if (timeout.rounds > 0) {
+                    timeout.rounds--;
+                    link(timeout, bucket);
+                } else if (timeout.deadline.remainingNanos() > 0) {
+                    schedule(timeout, tick + 1);
+                } else {
+                    timeout.fire();
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     *
+     * Registration of one Statement with the SQLWatchdog
+     */
+    static final class Timeout implements java.lang.AutoCloseable {
+
+        private final SQLWatchdog watchdog;
+        private final SQLDeadline deadline;
+        private volatile java.sql.Statement stmt;
+        private volatile boolean closed;
+        private volatile boolean fired;
+        private long rounds;
+        private int bucket = -1;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(final SQLWatchdog watchdog, final java.sql.Statement stmt, final SQLDeadline deadline) {
+            this.watchdog = watchdog;
+            this.stmt = stmt;
+            this.deadline = deadline;
+        }
+
+        private void fire() {
+            final java.sql.Statement statement = stmt;
+            if (statement == null) {
+                return;
+            }
+            fired = true;
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, "Cancelling overdue statement {0}", statement);
+            }
+            try {
+                statement.cancel();
+            } catch (Exception ex) {
+                LOG.log(Level.SEVERE, ex.getMessage(), ex);
+            }
+        }
+
+        /**
+         *
+         * @return true if the Statement was cancelled by the SQLWatchdog
+         */
+        boolean isFired() {
+            return fired;
+        }
+
+        /**
+         * Stops watching the Statement
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            stmt = null;
+            watchdog.closed.add(this);
+        }
+    }
+}
@@ -0,0 +1,800 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ *
+ * Immutable columnar copy of a query result. Integral and boolean columns,
+ * and DECIMAL and NUMERIC columns with scale 0 and at most 18 digits, are
+ * held in long arrays, floating point columns in double arrays and character
+ * columns as int codes into a dictionary of distinct values, each with a null
+ * bitmap that is only allocated when the column has nulls. Character columns
+ * where more than half the values are distinct are held as plain Strings
+ * instead. Columns are 1 based like in JDBC, rows are 0 based.
+ *
+ * After an incremental refresh a SnapshotTable shares the arrays of its base,
+ * marks replaced and deleted base rows in a bitmap and holds the changed rows
+ * in an overlay whose row indexes follow those of the base. The overlay is a
+ * chain of SnapshotTables of the same kind, one per segment of changes. Row
+ * indexes are then no longer contiguous, so they should be taken from rows or
+ * a filter
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public final class SnapshotTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private final ColumnShape shape;
+    private final Column[] columns;
+    private final int rowCount;
+    private final long[] deleted;
+    private final int deletedCount;
+    private final SnapshotTable overlay;
+
+    private SnapshotTable(final ColumnShape shape, final Column[] columns, final int rowCount, final long[] deleted, final int deletedCount, final SnapshotTable overlay) {
+        this.shape = shape;
+        this.columns = columns;
+        this.rowCount = rowCount;
+        this.deleted = deleted;
+        this.deletedCount = deletedCount;
+        this.overlay = overlay;
+    }
+
+    /**
+     * Reads the ResultSet to the end
+     *
+     * @param shape ColumnShape of rs
+     * @param rs ResultSet to copy
+     * @return SnapshotTable with all remaining rows of rs
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     */
+    static SnapshotTable load(final ColumnShape shape, final java.sql.ResultSet rs) throws java.sql.SQLException {
+        return load(shape, rs, null);
+    }
+
+    /**
+     * Reads the ResultSet to the end
+     *
+     * @param shape ColumnShape of rs
+     * @param rs ResultSet to copy
+     * @param include SQLPredicate that selects the rows to copy, null for all
+     * @return SnapshotTable with the selected remaining rows of rs
+     * @throws java.sql.SQLException if underlying operation throws SQLException
+     */
+    static SnapshotTable load(final ColumnShape shape, final java.sql.ResultSet rs, final SQLPredicate<java.sql.ResultSet> include) throws java.sql.SQLException {
+        final Builder builder = new Builder(shape);
+        while (rs.next()) {
+            if (include == null || include.test(rs)) {
+                builder.add(rs);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     *
+     * @param deleted bitmap of the rows of this table that are replaced or
+     * deleted
+     * @param deletedCount number of bits set in deleted
+     * @param overlay SnapshotTable with the changed rows, may have replaced rows
+     * and an overlay of its own
+     * @return SnapshotTable sharing the columns of this table
+     */
+    SnapshotTable withChanges(final long[] deleted, final int deletedCount, final SnapshotTable overlay) {
+        return new SnapshotTable(shape, columns, rowCount, deleted, deletedCount, overlay);
+    }
+
+    /**
+     *
+     * @return number of rows
+     */
+    public int getRowCount() {
+        return rowCount - deletedCount + (overlay == null ? 0 : overlay.getRowCount());
+    }
+
+    /**
+     *
+     * @return number of rows held in the own arrays, including deleted rows
+     */
+    int baseRowCount() {
+        return rowCount;
+    }
+
+    /**
+     *
+     * @return SnapshotTable with the changed rows, null if there are none
+     */
+    SnapshotTable overlay() {
+        return overlay;
+    }
+
+    /**
+     *
+     * @param row 0 based index of a row in the own arrays
+     * @return true if the row was replaced or deleted
+     */
+    boolean isDeleted(final int row) {
+        return deleted != null && (deleted[row >> 6] & 1L << row) != 0;
+    }
+
+    /**
+     *
+     * @return bitmap of replaced and deleted rows, not copied, null if there
+     * are none
+     */
+    long[] deleted() {
+        return deleted;
+    }
+
+    int deletedCount() {
+        return deletedCount;
+    }
+
+    /**
+     *
+     * @return ColumnShape of the query
+     */
+    public ColumnShape getColumnShape() {
+        return shape;
+    }
+
+    /**
+     *
+     * @param columnLabel column label, case insensitive
+     * @return 1 based column index
+     * @throws SQLDataAccessException if there is no such column
+     */
+    public int columnIndex(final String columnLabel) throws SQLDataAccessException {
+        final int column = shape.indexOf(columnLabel);
+        if (column < 0) {
+            throw new SQLDataAccessException(String.format("Unknown column %s", columnLabel));
+        }
+        return column;
+    }
+
+    Column column(final int column) {
+        return columns[column - 1];
+    }
+
+    /**
+     *
+     * @param row 0 based row index
+     * @param column 1 based column index
+     * @return true if the value is SQL NULL
+     */
+    public boolean isNull(final int row, final int column) {
+        return row < rowCount ? columns[column - 1].isNull(row) : overlay.isNull(row - rowCount, column);
+    }
+
+    /**
+     *
+     * @param row 0 based row index
+     * @param column 1 based column index
+     * @return value, 0 if SQL NULL
+     * @throws ClassCastException if the column is not numeric
+     */
+    public long getLong(final int row, final int column) {
+        return row < rowCount ? columns[column - 1].getLong(row) : overlay.getLong(row - rowCount, column);
+    }
+
+    /**
+     *
+     * @param row 0 based row index
+     * @param column 1 based column index
+     * @return value, 0 if SQL NULL
+     * @throws ClassCastException if the column is not numeric
+     */
+    public double getDouble(final int row, final int column) {
+        return row < rowCount ? columns[column - 1].getDouble(row) : overlay.getDouble(row - rowCount, column);
+    }
+
+    /**
+     *
+     * @param row 0 based row index
+     * @param column 1 based column index
+     * @return value as String, null if SQL NULL
+     */
+    public String getString(final int row, final int column) {
+        final Object value = getObject(row, column);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     *
+     * @param row 0 based row index
+     * @param column 1 based column index
+     * @return value, null if SQL NULL
+     */
+    public Object getObject(final int row, final int column) {
+        return row < rowCount ? columns[column - 1].getObject(row) : overlay.getObject(row - rowCount, column);
+    }
+
+    /**
+     *
+     * @param row 0 based row index
+     * @return DetachedRow with the values of the row
+     */
+    public DetachedRow getRow(final int row) {
+        if (row >= rowCount) {
+            return overlay.getRow(row - rowCount);
+        }
+        final Object[] values = new Object[columns.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = columns[i].getObject(row);
+        }
+        return new DetachedRow(shape, values);
+    }
+
+    /**
+     *
+     * @return indexes of all rows
+     */
+    public IntStream rows() {
+        return withOverlay(live(), SnapshotTable::rows);
+    }
+
+    /**
+     *
+     * @return indexes of the rows in the own arrays that are not deleted
+     */
+    private IntStream live() {
+        final IntStream all = IntStream.range(0, rowCount);
+        return deleted == null ? all : all.filter(row -> !isDeleted(row));
+    }
+
+    /**
+     *
+     * @param own indexes selected from the own arrays
+     * @param select same selection on the overlay
+     * @return own followed by the selection on the overlay
+     */
+    private IntStream withOverlay(final IntStream own, final java.util.function.Function<SnapshotTable, IntStream> select) {
+        if (overlay == null) {
+            return own;
+        }
+        final int offset = rowCount;
+        return IntStream.concat(own, select.apply(overlay).map(row -> row + offset));
+    }
+
+    /**
+     *
+     * @param column 1 based index of an integral or boolean column
+     * @param predicate LongPredicate on the value
+     * @return indexes of the rows with a non null value matching predicate
+     * @throws ClassCastException if the column is not integral or boolean
+     */
+    public IntStream filterLong(final int column, final java.util.function.LongPredicate predicate) {
+        final LongColumn longs = (LongColumn) columns[column - 1];
+        return withOverlay(live().filter(row -> !longs.isNull(row) && predicate.test(longs.values[row])), table -> table.filterLong(column, predicate));
+    }
+
+    /**
+     *
+     * @param column 1 based index of a floating point column
+     * @param predicate DoublePredicate on the value
+     * @return indexes of the rows with a non null value matching predicate
+     * @throws ClassCastException if the column is not floating point
+     */
+    public IntStream filterDouble(final int column, final java.util.function.DoublePredicate predicate) {
+        final DoubleColumn doubles = (DoubleColumn) columns[column - 1];
+        return withOverlay(live().filter(row -> !doubles.isNull(row) && predicate.test(doubles.values[row])), table -> table.filterDouble(column, predicate));
+    }
+
+    /**
+     * On a character column the predicate is tested once per distinct value
+     *
+     * @param column 1 based column index
+     * @param predicate Predicate on the value
+     * @return indexes of the rows with a non null value matching predicate
+     */
+    public IntStream filterString(final int column, final java.util.function.Predicate<String> predicate) {
+        final Column source = columns[column - 1];
+        final IntStream own;
+        if (source instanceof StringColumn && ((StringColumn) source).dictionary != null) {
+            final StringColumn strings = (StringColumn) source;
+            final boolean[] matches = new boolean[strings.dictionary.length];
+            for (int i = 0; i < matches.length; i++) {
+                matches[i] = predicate.test(strings.dictionary[i]);
+            }
+            own = live().filter(row -> strings.codes[row] >= 0 && matches[strings.codes[row]]);
+        } else {
+            own = live().filter(row -> !source.isNull(row) && predicate.test(source.getObject(row).toString()));
+        }
+        return withOverlay(own, table -> table.filterString(column, predicate));
+    }
+
+    /**
+     * On a character column the value is resolved to its dictionary code once
+     *
+     * @param column 1 based column index
+     * @param value value to compare with equals, null matches SQL NULL
+     * @return indexes of the rows with value
+     */
+    public IntStream filterEquals(final int column, final Object value) {
+        final Column source = columns[column - 1];
+        final IntStream own;
+        if (value == null) {
+            own = live().filter(source::isNull);
+        } else if (source instanceof StringColumn && ((StringColumn) source).dictionary != null) {
+            final StringColumn strings = (StringColumn) source;
+            final int match = java.util.Arrays.asList(strings.dictionary).indexOf(value.toString());
+            own = match < 0 ? IntStream.empty() : live().filter(row -> strings.codes[row] == match);
+        } else if (source instanceof LongColumn && value instanceof Number) {
+            final LongColumn longs = (LongColumn) source;
+            final long match = ((Number) value).longValue();
+            own = live().filter(row -> longs.values[row] == match && !longs.isNull(row));
+        } else {
+            own = live().filter(row -> value.equals(source.getObject(row)));
+        }
+        return withOverlay(own, table -> table.filterEquals(column, value));
+    }
+
+    /**
+     *
+     * @param column 1 based index of an integral or boolean column
+     * @return non null values of the column
+     * @throws ClassCastException if the column is not integral or boolean
+     */
+    public LongStream longs(final int column) {
+        final LongColumn longs = (LongColumn) columns[column - 1];
+        return longs.nulls == null && deleted == null && overlay == null ? LongStream.of(longs.values) : longs(column, rows());
+    }
+
+    /**
+     *
+     * @param column 1 based index of an integral or boolean column
+     * @param rows indexes of the rows, for example from a filter
+     * @return non null values of the column in rows
+     * @throws ClassCastException if the column is not integral or boolean
+     */
+    public LongStream longs(final int column, final IntStream rows) {
+        if (!(columns[column - 1] instanceof LongColumn)) {
+            throw new ClassCastException(String.format("Column %d is not integral", column));
+        }
+        return rows.filter(row -> !isNull(row, column)).mapToLong(row -> getLong(row, column));
+    }
+
+    /**
+     *
+     * @param column 1 based index of a floating point column
+     * @return non null values of the column
+     * @throws ClassCastException if the column is not floating point
+     */
+    public DoubleStream doubles(final int column) {
+        final DoubleColumn doubles = (DoubleColumn) columns[column - 1];
+        return doubles.nulls == null && deleted == null && overlay == null ? DoubleStream.of(doubles.values) : doubles(column, rows());
+    }
+
+    /**
+     *
+     * @param column 1 based index of a floating point column
+     * @param rows indexes of the rows, for example from a filter
+     * @return non null values of the column in rows
+     * @throws ClassCastException if the column is not floating point
+     */
+    public DoubleStream doubles(final int column, final IntStream rows) {
+        if (!(columns[column - 1] instanceof DoubleColumn)) {
+            throw new ClassCastException(String.format("Column %d is not floating point", column));
+        }
+        return rows.filter(row -> !isNull(row, column)).mapToDouble(row -> getDouble(row, column));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SnapshotTable[%d rows, %s]", getRowCount(), shape);
+    }
+
+    /**
+     *
+     * Appends rows column by column, the arrays are trimmed on build
+     */
+    static final class Builder {
+
+        private final ColumnShape shape;
+        private final Column[] columns;
+        private int rowCount;
+
+        Builder(final ColumnShape shape) throws java.sql.SQLException {
+            this.shape = shape;
+            this.columns = new Column[shape.getColumnCount()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = Column.of(shape.getColumnType(i + 1), shape.getPrecision(i + 1), shape.getScale(i + 1));
+            }
+        }
+
+        /**
+         *
+         * @param rs ResultSet positioned on the row to add
+         * @throws java.sql.SQLException if underlying operation throws
+         * SQLException
+         */
+        void add(final java.sql.ResultSet rs) throws java.sql.SQLException {
+            for (int i = 0; i < columns.length; i++) {
+                columns[i].add(rowCount, rs, i + 1);
+            }
+            rowCount++;
+        }
+
+        /**
+         *
+         * @param table SnapshotTable with the same ColumnShape
+         * @param row 0 based row index in table
+         */
+        void add(final SnapshotTable table, final int row) {
+            for (int i = 0; i < columns.length; i++) {
+                columns[i].add(rowCount, table.columns[i], row);
+            }
+            rowCount++;
+        }
+
+        SnapshotTable build() {
+            for (final Column column : columns) {
+                column.trim(rowCount);
+            }
+            return new SnapshotTable(shape, columns, rowCount, null, 0, null);
+        }
+    }
+
+    /**
+     *
+     * Values of one column with a null bitmap
+     */
+    abstract static class Column {
+
+        long[] nulls;
+
+        /**
+         *
+         * @param sqlType java.sql.Types of the column
+         * @param precision precision of the column, 0 if unknown
+         * @param scale scale of the column
+         * @return empty Column for the type
+         */
+        static Column of(final int sqlType, final int precision, final int scale) {
+            switch (sqlType) {
+                case java.sql.Types.DECIMAL:
+                case java.sql.Types.NUMERIC:
+                    return scale == 0 && precision > 0 && precision <= MAX_LONG_DIGITS ? new LongColumn(false) : new ObjectColumn();
+                case java.sql.Types.BIT:
+                case java.sql.Types.BOOLEAN:
+                    return new LongColumn(true);
+                case java.sql.Types.TINYINT:
+                case java.sql.Types.SMALLINT:
+                case java.sql.Types.INTEGER:
+                case java.sql.Types.BIGINT:
+                    return new LongColumn(false);
+                case java.sql.Types.REAL:
+                case java.sql.Types.FLOAT:
+                case java.sql.Types.DOUBLE:
+                    return new DoubleColumn();
+                case java.sql.Types.CHAR:
+                case java.sql.Types.VARCHAR:
+                case java.sql.Types.LONGVARCHAR:
+                case java.sql.Types.NCHAR:
+                case java.sql.Types.NVARCHAR:
+                case java.sql.Types.LONGNVARCHAR:
+                    return new StringColumn();
+                default:
+                    return new ObjectColumn();
+            }
+        }
+
+        final boolean isNull(final int row) {
+            return nulls != null && row >> 6 < nulls.length && (nulls[row >> 6] & 1L << row) != 0;
+        }
+
+        final void setNull(final int row) {
+            if (nulls == null) {
+                nulls = new long[Math.max(row >> 6, INITIAL_CAPACITY >> 6) + 1];
+            } else if (row >> 6 >= nulls.length) {
+                nulls = java.util.Arrays.copyOf(nulls, Math.max(nulls.length * 2, (row >> 6) + 1));
+            }
+            nulls[row >> 6] |= 1L << row;
+        }
+
+        final void trimNulls(final int rowCount) {
+            if (nulls != null) {
+                nulls = java.util.Arrays.copyOf(nulls, (rowCount + 63) >> 6);
+            }
+        }
+
+        static int grow(final int length) {
+            return Math.max(length * 2, INITIAL_CAPACITY);
+        }
+
+        abstract void add(int row, java.sql.ResultSet rs, int column) throws java.sql.SQLException;
+
+        abstract void add(int row, Column source, int sourceRow);
+
+        abstract void trim(int rowCount);
+
+        abstract Object getObject(int row);
+
+        long getLong(final int row) {
+            throw new ClassCastException(String.format("%s is not numeric", getClass().getSimpleName()));
+        }
+
+        double getDouble(final int row) {
+            throw new ClassCastException(String.format("%s is not numeric", getClass().getSimpleName()));
+        }
+    }
+
+    /**
+     *
+     * Integral and boolean values
+     */
+    static final class LongColumn extends Column {
+
+        private final boolean bool;
+        long[] values = new long[0];
+
+        LongColumn(final boolean bool) {
+            this.bool = bool;
+        }
+
+        @Override
+        void add(final int row, final java.sql.ResultSet rs, final int column) throws java.sql.SQLException {
+            if (row == values.length) {
+                values = java.util.Arrays.copyOf(values, grow(values.length));
+            }
+            values[row] = bool ? (rs.getBoolean(column) ? 1 : 0) : rs.getLong(column);
+            if (rs.wasNull()) {
+                setNull(row);
+            }
+        }
+
+        @Override
+        void add(final int row, final Column source, final int sourceRow) {
+            if (row == values.length) {
+                values = java.util.Arrays.copyOf(values, grow(values.length));
+            }
+            values[row] = ((LongColumn) source).values[sourceRow];
+            if (source.isNull(sourceRow)) {
+                setNull(row);
+            }
+        }
+
+        @Override
+        void trim(final int rowCount) {
+            values = java.util.Arrays.copyOf(values, rowCount);
+            trimNulls(rowCount);
+        }
+
+        @Override
+        Object getObject(final int row) {
+            if (isNull(row)) {
+                return null;
+            }
+            return bool ? (Object) (values[row] != 0) : (Object) values[row];
+        }
+
+        @Override
+        long getLong(final int row) {
+            return values[row];
+        }
+
+        @Override
+        double getDouble(final int row) {
+            return values[row];
+        }
+    }
+
+    /**
+     *
+     * Floating point values
+     */
+    static final class DoubleColumn extends Column {
+
+        double[] values = new double[0];
+
+        @Override
+        void add(final int row, final java.sql.ResultSet rs, final int column) throws java.sql.SQLException {
+            if (row == values.length) {
+                values = java.util.Arrays.copyOf(values, grow(values.length));
+            }
+            values[row] = rs.getDouble(column);
+            if (rs.wasNull()) {
+                setNull(row);
+            }
+        }
+
+        @Override
+        void add(final int row, final Column source, final int sourceRow) {
+            if (row == values.length) {
+                values = java.util.Arrays.copyOf(values, grow(values.length));
+            }
+            values[row] = ((DoubleColumn) source).values[sourceRow];
+            if (source.isNull(sourceRow)) {
+                setNull(row);
+            }
+        }
+
+        @Override
+        void trim(final int rowCount) {
+            values = java.util.Arrays.copyOf(values, rowCount);
+            trimNulls(rowCount);
+        }
+
+        @Override
+        Object getObject(final int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        long getLong(final int row) {
+            return (long) values[row];
+        }
+
+        @Override
+        double getDouble(final int row) {
+            return values[row];
+        }
+    }
+
+    /**
+     *
+     * Character values as codes into a dictionary, -1 for SQL NULL. The lookup
+     * of distinct values is dropped once the column is trimmed. When more than
+     * half of the values are distinct, checked once DICTIONARY_SAMPLE rows are
+     * added and on trim, the column switches to plain values and dictionary
+     * stays null
+     */
+    static final class StringColumn extends Column {
+
+        private static final int DICTIONARY_SAMPLE = 4096;
+
+        private java.util.List<String> distinct = new java.util.ArrayList<>();
+        private java.util.Map<String, Integer> lookup = new java.util.HashMap<>();
+        String[] dictionary;
+        int[] codes = new int[0];
+        String[] values;
+
+        private void add(final int row, final String value) {
+            if (values != null) {
+                if (row == values.length) {
+                    values = java.util.Arrays.copyOf(values, grow(values.length));
+                }
+                values[row] = value;
+                if (value == null) {
+                    setNull(row);
+                }
+                return;
+            }
+            if (row == codes.length) {
+                codes = java.util.Arrays.copyOf(codes, grow(codes.length));
+            }
+            if (value == null) {
+                codes[row] = -1;
+                setNull(row);
+                return;
+            }
+            Integer code = lookup.get(value);
+            if (code == null) {
+                code = distinct.size();
+                distinct.add(value);
+                lookup.put(value, code);
+            }
+            codes[row] = code;
+            if (row >= DICTIONARY_SAMPLE && distinct.size() * 2 > row + 1 && code == distinct.size() - 1) {
+                toPlain(row + 1);
+            }
+        }
+
+        private void toPlain(final int rowCount) {
+            final String[] plain = new String[codes.length];
+            for (int row = 0; row < rowCount; row++) {
+                plain[row] = codes[row] < 0 ? null : distinct.get(codes[row]);
+            }
+            values = plain;
+            codes = null;
+            distinct = null;
+            lookup = null;
+        }
+
+        @Override
+        void add(final int row, final java.sql.ResultSet rs, final int column) throws java.sql.SQLException {
+            add(row, rs.getString(column));
+        }
+
+        @Override
+        void add(final int row, final Column source, final int sourceRow) {
+            add(row, (String) source.getObject(sourceRow));
+        }
+
+        @Override
+        void trim(final int rowCount) {
+            trimNulls(rowCount);
+            if (values == null && distinct.size() * 2 > rowCount) {
+                toPlain(rowCount);
+            }
+            if (values != null) {
+                values = java.util.Arrays.copyOf(values, rowCount);
+                return;
+            }
+            codes = java.util.Arrays.copyOf(codes, rowCount);
+            dictionary = distinct.toArray(new String[distinct.size()]);
+            distinct = null;
+            lookup = null;
+        }
+
+        @Override
+        Object getObject(final int row) {
+            if (values != null) {
+                return values[row];
+            }
+            final int code = codes[row];
+            return code < 0 ? null : dictionary[code];
+        }
+    }
+
+    /**
+     *
+     * Any other values as returned by ResultSet#getObject
+     */
+    static final class ObjectColumn extends Column {
+
+        Object[] values = new Object[0];
+
+        @Override
+        void add(final int row, final java.sql.ResultSet rs, final int column) throws java.sql.SQLException {
+            if (row == values.length) {
+                values = java.util.Arrays.copyOf(values, grow(values.length));
+            }
+            values[row] = rs.getObject(column);
+            if (values[row] == null) {
+                setNull(row);
+            }
+        }
+
+        @Override
+        void add(final int row, final Column source, final int sourceRow) {
+            if (row == values.length) {
+                values = java.util.Arrays.copyOf(values, grow(values.length));
+            }
+            values[row] = source.getObject(sourceRow);
+            if (values[row] == null) {
+                setNull(row);
+            }
+        }
+
+        @Override
+        void trim(final int rowCount) {
+            values = java.util.Arrays.copyOf(values, rowCount);
+            trimNulls(rowCount);
+        }
+
+        @Override
+        Object getObject(final int row) {
+            return values[row];
+        }
+
+        @Override
+        long getLong(final int row) {
+            return values[row] == null ? 0 : ((Number) values[row]).longValue();
+        }
+
+        @Override
+        double getDouble(final int row) {
+            return values[row] == null ? 0 : ((Number) values[row]).doubleValue();
+        }
+    }
+}
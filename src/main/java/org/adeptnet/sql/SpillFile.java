@@ -0,0 +1,265 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ *
+ * Temporary file that is written once sequentially and then read once
+ * sequentially through a buffered FileChannel. The output is opened on the
+ * first write and released by finishWrite, the input is opened on the first
+ * read, so only the files in use hold a descriptor and a buffer. The file is
+ * deleted on close
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+final class SpillFile implements java.lang.AutoCloseable {
+
+    private final java.nio.file.Path path;
+    private final int bufferSize;
+    private java.io.DataOutputStream out;
+    private java.io.DataInputStream in;
+    private long count;
+    private boolean finished;
+    private boolean closed;
+
+    private SpillFile(final java.nio.file.Path path, final int bufferSize) {
+        this.path = path;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     *
+     * @param options SpillOptions with the directory and buffer size
+     * @return SpillFile open for writing
+     * @throws SQLDataAccessException if the file can not be created
+     */
+    static SpillFile create(final SpillOptions options) throws SQLDataAccessException {
+        java.nio.file.Path path = null;
+        try {
+            path = options.getTempDirectory() == null
+                    ? Files.createTempFile("sql-spill", ".tmp")
+                    : Files.createTempFile(options.getTempDirectory(), "sql-spill", ".tmp");
+            return new SpillFile(path, options.getBufferSize());
+        } catch (IOException ex) {
+            delete(path);
+            throw failed(ex);
+        }
+    }
+
+    /**
+     *
+     * @param count number of files
+     * @param options SpillOptions with the directory and buffer size
+     * @return SpillFiles open for writing
+     * @throws SQLDataAccessException if a file can not be created
+     */
+    static SpillFile[] create(final int count, final SpillOptions options) throws SQLDataAccessException {
+        final SpillFile[] files = new SpillFile[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                files[i] = create(options);
+            }
+            return files;
+        } catch (RuntimeException ex) {
+            closeAll(files);
+            throw ex;
+        }
+    }
+
+    static SQLDataAccessException failed(final IOException ex) {
+        return new SQLDataAccessException(String.format("Spill file failed: %s", ex.getMessage()), ex);
+    }
+
+    /**
+     *
+     * @return DataOutput to write a record to, has to be followed by written
+     * @throws SQLDataAccessException if the file can not be opened
+     */
+    java.io.DataOutput output() throws SQLDataAccessException {
+        if (out == null) {
+            if (finished || closed) {
+                throw new IllegalStateException("Spill file is no longer writable");
+            }
+            try {
+                out = new java.io.DataOutputStream(new java.io.BufferedOutputStream(Channels.newOutputStream(FileChannel.open(path, StandardOpenOption.WRITE)), bufferSize));
+            } catch (IOException ex) {
+                throw failed(ex);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Counts the record just written to output
+     */
+    void written() {
+        count++;
+    }
+
+    /**
+     *
+     * @param <T> the type of the rows
+     * @param row row to write as one record
+     * @param serializer RowSerializer for row
+     * @throws SQLDataAccessException if writing fails
+     */
+    <T> void write(final T row, final RowSerializer<? super T> serializer) throws SQLDataAccessException {
+        try {
+            serializer.write(row, output());
+        } catch (IOException ex) {
+            throw failed(ex);
+        }
+        count++;
+    }
+
+    /**
+     *
+     * @return number of records written
+     */
+    long count() {
+        return count;
+    }
+
+    /**
+     * Flushes and closes the output once all records are written, the file
+     * can only be read afterwards
+     *
+     * @throws SQLDataAccessException if flushing fails
+     */
+    void finishWrite() throws SQLDataAccessException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ex) {
+                throw failed(ex);
+            } finally {
+                out = null;
+            }
+        }
+    }
+
+    /**
+     * Finishes the output and opens the input on the first call
+     *
+     * @return DataInput positioned on the first record
+     * @throws SQLDataAccessException if the file can not be read
+     */
+    java.io.DataInput input() throws SQLDataAccessException {
+        if (in == null) {
+            finishWrite();
+            try {
+                in = new java.io.DataInputStream(new java.io.BufferedInputStream(Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ)), bufferSize));
+            } catch (IOException ex) {
+                throw failed(ex);
+            }
+        }
+        return in;
+    }
+
+    /**
+     *
+     * @param <T> the type of the rows
+     * @param serializer RowSerializer of the records
+     * @return Spliterator over all records, the file is closed once the last
+     * record was read
+     */
+    <T> java.util.Spliterator<T> spliterator(final RowSerializer<T> serializer) {
+        return new java.util.Spliterators.AbstractSpliterator<T>(count, java.util.Spliterator.ORDERED | java.util.Spliterator.SIZED) {
+            private long remaining = count;
+
+            @Override
+            public boolean tryAdvance(final Consumer<? super T> action) {
+                if (remaining == 0) {
+                    close();
+                    return false;
+                }
+                final T row;
+                try {
+                    row = serializer.read(input());
+                } catch (IOException ex) {
+                    throw failed(ex);
+                }
+                remaining--;
+                action.accept(row);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Closes the file and deletes it, only the first call has any effect
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        SQLResources.close(out);
+        SQLResources.close(in);
+        out = null;
+        in = null;
+        delete(path);
+    }
+
+    private static void delete(final java.nio.file.Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            java.util.logging.Logger.getLogger(SpillFile.class.getName()).log(java.util.logging.Level.SEVERE, ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     *
+     * @param files SpillFiles whose output is complete
+     * @throws SQLDataAccessException if flushing fails
+     */
+    static void finishAll(final SpillFile[] files) throws SQLDataAccessException {
+        for (final SpillFile file : files) {
+            file.finishWrite();
+        }
+    }
+
+    /**
+     *
+     * @param files SpillFiles to close, entries may be null
+     */
+    static void closeAll(final SpillFile[] files) {
+        if (files == null) {
+            return;
+        }
+        for (final SpillFile file : files) {
+            if (file != null) {
+                file.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+/**
+ *
+ * Options for the SQLStreams operators that spill to disk
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class SpillOptions {
+
+    private int memoryBudget = 1000000;
+    private int partitions = 32;
+    private int bufferSize = 64 * 1024;
+    private int mergeFanIn = 64;
+    private java.nio.file.Path tempDirectory;
+
+    /**
+     *
+     * @param memoryBudget rows or groups held in memory before spilling, rows
+     * per sorted run
+     * @return this
+     */
+    public SpillOptions withMemoryBudget(final int memoryBudget) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("memoryBudget has to be positive");
+        }
+        this.memoryBudget = memoryBudget;
+        return this;
+    }
+
+    /**
+     *
+     * @param partitions number of partitions a hash operator spills into
+     * @return this
+     */
+    public SpillOptions withPartitions(final int partitions) {
+        if (partitions <= 1) {
+            throw new IllegalArgumentException("partitions has to be more than 1");
+        }
+        this.partitions = partitions;
+        return this;
+    }
+
+    /**
+     *
+     * @param bufferSize bytes buffered per open spill file
+     * @return this
+     */
+    public SpillOptions withBufferSize(final int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize has to be positive");
+        }
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     *
+     * @param mergeFanIn maximum number of sorted runs merged at once, more
+     * runs are merged in several passes
+     * @return this
+     */
+    public SpillOptions withMergeFanIn(final int mergeFanIn) {
+        if (mergeFanIn <= 1) {
+            throw new IllegalArgumentException("mergeFanIn has to be more than 1");
+        }
+        this.mergeFanIn = mergeFanIn;
+        return this;
+    }
+
+    /**
+     *
+     * @param tempDirectory directory for spill files, null for java.io.tmpdir
+     * @return this
+     */
+    public SpillOptions withTempDirectory(final java.nio.file.Path tempDirectory) {
+        this.tempDirectory = tempDirectory;
+        return this;
+    }
+
+    public int getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getMergeFanIn() {
+        return mergeFanIn;
+    }
+
+    public java.nio.file.Path getTempDirectory() {
+        return tempDirectory;
+    }
+}
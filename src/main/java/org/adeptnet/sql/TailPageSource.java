@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ *
+ * Endless keyset pages of a table that only grows at the end of its key. An
+ * empty page waits for the poll interval, doubling up to 16 times the
+ * interval while the table stays idle, and a full page doubles the page size
+ * up to the maximum so that a backlog is read in large batches. Transient
+ * failures, such as a lost Connection, are logged and retried after the key of
+ * the last returned row, any other failure ends the tail
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ * @param <T> Result Type of applying row function on ResultSet
+ */
+final class TailPageSource<T> implements SQLPageSource<T> {
+
+    private static final Logger LOG = Logger.getLogger(TailPageSource.class.getName());
+    private static final int MAX_BACKOFF_SHIFT = 4;
+
+    private final KeysetPageSource<T> keyset;
+    private final KeysetCheckpoint checkpoint;
+    private final long pollNanos;
+    private final int initialPageSize;
+    private final int maxPageSize;
+    private volatile boolean closed;
+    private volatile Thread waiter;
+    private Object[] lastKey;
+
+    /**
+     *
+     * @param fsql FunctionalSql to read the pages with
+     * @param sql SQL Statement to tail, may use named parameters
+     * @param params Map with Named Parameters for sql
+     * @param keyColumn increasing unique key column
+     * @param pollInterval time to wait after an empty page
+     * @param options PagingOptions with the initial and maximum page size and
+     * the limit clause
+     * @param rowFunction SQLFunction that transforms ResultSet to T
+     * @param checkpoint KeysetCheckpoint to start after, may be null
+     */
+    TailPageSource(final FunctionalSql fsql, final String sql, final java.util.Map<String, Object> params, final String keyColumn, final java.time.Duration pollInterval, final PagingOptions options, final SQLFunction<java.sql.ResultSet, T> rowFunction, final KeysetCheckpoint checkpoint) {
+        if (pollInterval.isNegative() || pollInterval.isZero()) {
+            throw new IllegalArgumentException("pollInterval has to be positive");
+        }
+        this.keyset = new KeysetPageSource<>(fsql, sql, params, java.util.Collections.singletonList(keyColumn), options.getPageSize(), options.getLimitClause(), rowFunction, checkpoint);
+        this.checkpoint = checkpoint;
+        this.pollNanos = pollInterval.toNanos();
+        this.initialPageSize = options.getPageSize();
+        this.maxPageSize = Math.max(options.getMaxPageSize(), options.getPageSize());
+    }
+
+    @Override
+    public int getPageSize() {
+        return keyset.getPageSize();
+    }
+
+    @Override
+    public void setPageSize(final int pageSize) {
+        keyset.setPageSize(pageSize);
+    }
+
+    @Override
+    public SQLPage<T> first() throws SQLDataAccessException {
+        lastKey = checkpoint == null ? null : checkpoint.lastKey();
+        return poll();
+    }
+
+    @Override
+    public SQLPage<T> next(final SQLPage<T> previous) throws SQLDataAccessException {
+        return poll();
+    }
+
+    /**
+     *
+     * @return next page with at least one row, null once closed or
+     * interrupted
+     */
+    private SQLPage<T> poll() {
+        int idle = 0;
+        int failures = 0;
+        while (!closed) {
+            final SQLPage<T> page;
+            try {
+                page = keyset.read(lastKey);
+            } catch (java.sql.SQLException | SQLDataAccessException ex) {
+                if (!isTransient(ex)) {
+                    throw ex instanceof SQLDataAccessException ? (SQLDataAccessException) ex : new SQLDataAccessException(ex.getMessage(), ex);
+                }
+                LOG.log(Level.WARNING, String.format("Tail read failed, retry %d: %s", ++failures, ex.getMessage()), ex);
+                if (!pause(failures)) {
+                    return null;
+                }
+                continue;
+            }
+            if (!page.rows.isEmpty()) {
+                lastKey = page.lastKey();
+                keyset.setPageSize(page.isLast() ? initialPageSize : Math.min(page.pageSize * 2, maxPageSize));
+                return page;
+            }
+            failures = 0;
+            if (!pause(++idle)) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     *
+     * @param ex failure of a read, with its causes
+     * @return true if a later read may succeed, for a transient or
+     * recoverable SQLException or a connection exception (SQLState class 08)
+     */
+    static boolean isTransient(final Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof java.sql.SQLTransientException || cause instanceof java.sql.SQLRecoverableException) {
+                return true;
+            }
+            if (cause instanceof java.sql.SQLException) {
+                final String state = ((java.sql.SQLException) cause).getSQLState();
+                if (state != null && state.startsWith("08")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     *
+     * @param attempt number of consecutive empty or failed reads
+     * @return false if closed or interrupted while waiting
+     */
+    private boolean pause(final int attempt) {
+        final long deadline = System.nanoTime() + (pollNanos << Math.min(attempt - 1, MAX_BACKOFF_SHIFT));
+        waiter = Thread.currentThread();
+        try {
+            long remaining;
+            while (!closed && (remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.currentThread().isInterrupted()) {
+                    closed = true;
+                }
+            }
+        } finally {
+            waiter = null;
+        }
+        return !closed;
+    }
+
+    /**
+     * Ends the tail, wakes up a waiting reader
+     */
+    void close() {
+        closed = true;
+        final Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
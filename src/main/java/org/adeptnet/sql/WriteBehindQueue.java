@@ -0,0 +1,261 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ *
+ * Buffers Named Parameter updates from any thread and writes them behind in
+ * batches, one transaction per flush, instead of a Connection and commit per
+ * update. Producers only append to a lock free queue; a single daemon thread
+ * flushes when the batch size is reached or the flush interval passes. Within
+ * a flush the updates are grouped by SQL, and updates with the same merge key
+ * are merged so that only the last one is written. The future of an update
+ * completes with its update count once the flush is committed. Updates that
+ * were not flushed yet are lost if the process dies, so the flush interval is
+ * also the durability window
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class WriteBehindQueue implements java.lang.AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(WriteBehindQueue.class.getName());
+
+    private final FunctionalSql fsql;
+    private final java.util.concurrent.ConcurrentLinkedQueue<Update> queue = new java.util.concurrent.ConcurrentLinkedQueue<>();
+    private final java.util.concurrent.atomic.AtomicInteger size = new java.util.concurrent.atomic.AtomicInteger();
+    private final java.util.concurrent.atomic.AtomicBoolean started = new java.util.concurrent.atomic.AtomicBoolean();
+    private volatile int batchSize = 500;
+    private volatile long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(50);
+    private volatile java.util.function.Function<java.util.Map<String, ?>, ?> mergeKey;
+    private volatile Thread worker;
+    private volatile boolean flushRequested;
+    private volatile boolean closed;
+
+    /**
+     *
+     * @param fsql FunctionalSql to write with
+     */
+    WriteBehindQueue(final FunctionalSql fsql) {
+        this.fsql = fsql;
+    }
+
+    /**
+     *
+     * @param batchSize number of queued updates that triggers a flush, also
+     * the most updates written per transaction
+     * @return this
+     */
+    public WriteBehindQueue withBatchSize(final int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize has to be positive");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     *
+     * @param flushInterval longest time an update waits to be flushed
+     * @return this
+     */
+    public WriteBehindQueue withFlushInterval(final java.time.Duration flushInterval) {
+        if (flushInterval.isNegative() || flushInterval.isZero()) {
+            throw new IllegalArgumentException("flushInterval has to be positive");
+        }
+        this.flushIntervalNanos = flushInterval.toNanos();
+        return this;
+    }
+
+    /**
+     * Updates of the same SQL with the same merge key in one flush are merged,
+     * only the last one is written and all of them complete with its update
+     * count
+     *
+     * @param mergeKey Function that returns the merge key of the Named
+     * Parameters of an update, null for updates that are never merged
+     * @return this
+     */
+    public WriteBehindQueue withMergeKey(final java.util.function.Function<java.util.Map<String, ?>, ?> mergeKey) {
+        this.mergeKey = mergeKey;
+        return this;
+    }
+
+    /**
+     *
+     * @param sql SQL Statement to be executed
+     * @param params Map with Named Parameters
+     * @return CompletableFuture of the update count, completed when the flush
+     * is committed
+     * @throws IllegalStateException if the queue is closed
+     */
+    public CompletableFuture<Integer> submit(final String sql, final java.util.Map<String, ?> params) {
+        if (closed) {
+            throw new IllegalStateException("WriteBehindQueue is closed");
+        }
+        final java.util.function.Function<java.util.Map<String, ?>, ?> merge = mergeKey;
+        final Update update = new Update(sql, params, merge == null ? null : merge.apply(params));
+        queue.add(update);
+        final int queued = size.incrementAndGet();
+        if (closed && queue.remove(update)) {
+            size.decrementAndGet();
+            throw new IllegalStateException("WriteBehindQueue is closed");
+        }
+        if (started.compareAndSet(false, true)) {
+            final Thread thread = new Thread(this::run, "SQLWriteBehind");
+            thread.setDaemon(true);
+            worker = thread;
+            thread.start();
+        } else if (queued == batchSize) {
+            LockSupport.unpark(worker);
+        }
+        return update.future;
+    }
+
+    /**
+     * Flushes the queued updates without waiting for the flush interval
+     */
+    public void flush() {
+        flushRequested = true;
+        final Thread thread = worker;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     *
+     * @return number of updates waiting to be flushed
+     */
+    public int getPending() {
+        return size.get();
+    }
+
+    /**
+     * Flushes all queued updates and stops the flush thread, waiting for it to
+     * finish
+     */
+    @Override
+    public void close() {
+        closed = true;
+        final Thread thread = worker;
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            if (!closed && !flushRequested && size.get() < batchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            flushRequested = false;
+            final java.util.List<Update> updates = drain();
+            if (!updates.isEmpty()) {
+                write(updates);
+            } else if (closed) {
+                return;
+            }
+        }
+    }
+
+    private java.util.List<Update> drain() {
+        final int max = batchSize;
+        final java.util.List<Update> updates = new java.util.ArrayList<>(Math.min(max, size.get()));
+        Update update;
+        while (updates.size() < max && (update = queue.poll()) != null) {
+            updates.add(update);
+        }
+        size.addAndGet(-updates.size());
+        return updates;
+    }
+
+    /**
+     * Any failure, including an Error from the driver or from a merge key,
+     * fails the futures of all the updates and leaves the flush thread running
+     *
+     * @param updates updates to write in one transaction
+     */
+    private void write(final java.util.List<Update> updates) {
+        try {
+            final java.util.Map<String, java.util.Map<Object, Update>> bySql = new java.util.LinkedHashMap<>();
+            for (final Update update : updates) {
+                java.util.Map<Object, Update> latest = bySql.get(update.sql);
+                if (latest == null) {
+                    latest = new java.util.LinkedHashMap<>();
+                    bySql.put(update.sql, latest);
+                }
+                final Update previous = latest.put(update.key == null ? update : update.key, update);
+                if (previous != null) {
+                    update.merged = previous;
+                }
+            }
+            final NamedParameterBatch batch = new NamedParameterBatch();
+            final java.util.List<Update> written = new java.util.ArrayList<>(updates.size());
+            for (final java.util.Map<Object, Update> latest : bySql.values()) {
+                for (final Update update : latest.values()) {
+                    batch.add(update.sql, update.params);
+                    written.add(update);
+                }
+            }
+            final int[] counts = fsql.executeAll(batch, true);
+            for (int i = 0; i < counts.length; i++) {
+                written.get(i).complete(counts[i]);
+            }
+        } catch (Throwable ex) {
+            LOG.log(Level.SEVERE, ex.getMessage(), ex);
+            for (final Update update : updates) {
+                update.future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /**
+     *
+     * One queued update
+     */
+    private static final class Update {
+
+        private final String sql;
+        private final java.util.Map<String, ?> params;
+        private final Object key;
+        private final CompletableFuture<Integer> future = new CompletableFuture<>();
+        private Update merged;
+
+        private Update(final String sql, final java.util.Map<String, ?> params, final Object key) {
+            this.sql = sql;
+            this.params = params;
+            this.key = key;
+        }
+
+        private void complete(final int count) {
+            for (Update update = this; update != null; update = update.merged) {
+                update.future.complete(count);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ *
+ * Query lifecycle events emitted as jdk.jfr events. Only active when the
+ * system property org.adeptnet.sql.jfr is true, and then each event still has
+ * to be enabled in the recording settings
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+final class SQLEvents {
+
+    static final int CONNECTION_ACQUIRE = 0;
+    static final int STATEMENT_PREPARE = 1;
+    static final int EXECUTE = 2;
+    static final int ITERATE = 3;
+    static final int CLOSE = 4;
+
+    private static final boolean ENABLED = Boolean.getBoolean("org.adeptnet.sql.jfr");
+
+    private SQLEvents() {
+    }
+
+    /**
+     *
+     * @param type one of the event type constants
+     * @return event handle to pass to commit, null when not recording
+     */
+    static Object begin(final int type) {
+        if (!ENABLED) {
+            return null;
+        }
+        final SQLEvent event;
+        switch (type) {
+            case CONNECTION_ACQUIRE:
+                event = new ConnectionAcquireEvent();
+                break;
+            case STATEMENT_PREPARE:
+                event = new StatementPrepareEvent();
+                break;
+            case EXECUTE:
+                event = new ExecuteEvent();
+                break;
+            case ITERATE:
+                event = new IterateEvent();
+                break;
+            default:
+                event = new CloseEvent();
+                break;
+        }
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     *
+     * @param event handle returned by begin
+     * @param sql SQL Statement the event is for, may be null
+     * @param rows number of rows, -1 if not applicable
+     */
+    static void commit(final Object event, final String sql, final long rows) {
+        if (event == null) {
+            return;
+        }
+        final SQLEvent sqlEvent = (SQLEvent) event;
+        sqlEvent.end();
+        if (sqlEvent.shouldCommit()) {
+            sqlEvent.fingerprint = SQLFingerprint.of(sql);
+            sqlEvent.rows = rows;
+            sqlEvent.commit();
+        }
+    }
+
+    @Category({"Database", "SQL"})
+    @StackTrace(false)
+    abstract static class SQLEvent extends Event {
+
+        @Label("SQL Fingerprint")
+        String fingerprint;
+
+        @Label("Rows")
+        long rows;
+    }
+
+    @Name("org.adeptnet.sql.ConnectionAcquire")
+    @Label("Connection Acquire")
+    @Enabled(false)
+    static class ConnectionAcquireEvent extends SQLEvent {
+    }
+
+    @Name("org.adeptnet.sql.StatementPrepare")
+    @Label("Statement Prepare")
+    @Enabled(false)
+    static class StatementPrepareEvent extends SQLEvent {
+    }
+
+    @Name("org.adeptnet.sql.Execute")
+    @Label("Execute")
+    @Enabled(false)
+    static class ExecuteEvent extends SQLEvent {
+    }
+
+    @Name("org.adeptnet.sql.Iterate")
+    @Label("Result Iteration")
+    @Enabled(false)
+    static class IterateEvent extends SQLEvent {
+    }
+
+    @Name("org.adeptnet.sql.Close")
+    @Label("Close")
+    @Enabled(false)
+    static class CloseEvent extends SQLEvent {
+    }
+}
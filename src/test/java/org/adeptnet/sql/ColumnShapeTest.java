@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class ColumnShapeTest {
+
+    private static final String URL = "jdbc:h2:mem:shape;DB_CLOSE_DELAY=-1";
+
+    private static java.sql.Connection con;
+
+    @BeforeClass
+    public static void setUp() throws java.sql.SQLException {
+        con = java.sql.DriverManager.getConnection(URL);
+        try (final java.sql.Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE TABLE t (id BIGINT, name VARCHAR(10))");
+            stmt.execute("INSERT INTO t VALUES (1, 'a'), (2, 'b')");
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() throws java.sql.SQLException {
+        con.close();
+    }
+
+    private static ColumnShape shape(final FunctionalSql fsql, final String sql) throws java.sql.SQLException {
+        try (final java.util.stream.Stream<ColumnShape> stream = fsql.stream(sql, rs -> ((ForwardOnlyReadResultSet) rs).getColumnShape())) {
+            return stream.findFirst().get();
+        }
+    }
+
+    @Test
+    public void testCachedPerFunctionalSql() throws java.sql.SQLException {
+        final FunctionalSql fsql = new FunctionalSql(() -> java.sql.DriverManager.getConnection(URL));
+        final FunctionalSql other = new FunctionalSql(() -> java.sql.DriverManager.getConnection(URL));
+        final ColumnShape shape = shape(fsql, "SELECT id, name FROM t WHERE id = 1");
+        assertEquals(2, shape.getColumnCount());
+        assertEquals(2, shape.indexOf("NAME"));
+        assertSame(shape, shape(fsql, "SELECT id, name FROM t WHERE id = 2"));
+        assertSame(shape, shape(fsql.withDeadline(SQLDeadline.after(java.time.Duration.ofMinutes(1))), "SELECT id, name FROM t WHERE id = 1"));
+        assertNotSame(shape, shape(other, "SELECT id, name FROM t WHERE id = 1"));
+        fsql.clearColumnShapes();
+        assertNotSame(shape, shape(fsql, "SELECT id, name FROM t WHERE id = 1"));
+    }
+
+    @Test
+    public void testLiteralTypeArgumentsAreNotShared() throws java.sql.SQLException {
+        final FunctionalSql fsql = new FunctionalSql(() -> java.sql.DriverManager.getConnection(URL));
+        final ColumnShape whole = shape(fsql, "SELECT CAST(id AS DECIMAL(12,0)) AS v FROM t");
+        final ColumnShape cents = shape(fsql, "SELECT CAST(id AS DECIMAL(12,2)) AS v FROM t");
+        assertEquals(0, whole.getScale(1));
+        assertEquals(2, cents.getScale(1));
+        assertSame(cents, shape(fsql, "SELECT CAST(id AS DECIMAL(12,2)) AS v FROM t"));
+        assertEquals(java.sql.Types.INTEGER, shape(fsql, "SELECT 1 AS v FROM t").getColumnType(1));
+        assertEquals(java.sql.Types.VARCHAR, shape(fsql, "SELECT 'x' AS v FROM t").getColumnType(1));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class GroupCommitTest {
+
+    private static final String URL = "jdbc:h2:mem:group;DB_CLOSE_DELAY=-1";
+
+    private static java.sql.Connection con;
+    private static FunctionalSql fsql;
+
+    @BeforeClass
+    public static void setUp() throws java.sql.SQLException {
+        con = java.sql.DriverManager.getConnection(URL);
+        fsql = new FunctionalSql(() -> java.sql.DriverManager.getConnection(URL));
+    }
+
+    @AfterClass
+    public static void tearDown() throws java.sql.SQLException {
+        con.close();
+    }
+
+    @Test
+    public void testFailingUnitsRollBackAlone() throws Exception {
+        fsql.execute("CREATE TABLE units (id INT)");
+        final FunctionalSql group = fsql.withGroupCommit(java.time.Duration.ofMillis(5));
+        final java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(8);
+        final java.util.List<java.util.concurrent.Future<Boolean>> results = new java.util.ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            final int id = i;
+            results.add(executor.submit(() -> {
+                try {
+                    return group.transactional(unit -> {
+                        unit.execute(String.format("INSERT INTO units VALUES (%d)", id));
+                        if (id % 10 == 0) {
+                            throw new java.sql.SQLException("failing unit");
+                        }
+                        return true;
+                    });
+                } catch (java.sql.SQLException ex) {
+                    return false;
+                }
+            }));
+        }
+        int committed = 0;
+        for (final java.util.concurrent.Future<Boolean> result : results) {
+            committed += result.get() ? 1 : 0;
+        }
+        executor.shutdown();
+        assertEquals(360, committed);
+        assertEquals(Integer.valueOf(360), fsql.executeQuery("SELECT COUNT(*) FROM units", rs -> rs.next() ? rs.getInt(1) : 0));
+        assertEquals(Integer.valueOf(0), fsql.executeQuery("SELECT COUNT(*) FROM units WHERE MOD(id, 10) = 0", rs -> rs.next() ? rs.getInt(1) : 0));
+    }
+
+    @Test
+    public void testErrorInUnitDoesNotStopTheGroup() throws java.sql.SQLException {
+        fsql.execute("CREATE TABLE errors (id INT)");
+        final FunctionalSql group = fsql.withGroupCommit(java.time.Duration.ofMillis(1));
+        try {
+            group.transactional(unit -> {
+                unit.execute("INSERT INTO errors VALUES (1)");
+                throw new AssertionError("failing unit");
+            });
+            throw new IllegalStateException("expected AssertionError");
+        } catch (AssertionError ex) {
+            assertEquals("failing unit", ex.getMessage());
+        }
+        assertEquals(Boolean.TRUE, group.transactional(unit -> {
+            unit.execute("INSERT INTO errors VALUES (2)");
+            return true;
+        }));
+        assertEquals(Integer.valueOf(2), fsql.executeQuery("SELECT SUM(id) FROM errors", rs -> rs.next() ? rs.getInt(1) : 0));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class KeysetStreamTest {
+
+    private static final String URL = "jdbc:h2:mem:keyset;DB_CLOSE_DELAY=-1";
+
+    private static java.sql.Connection con;
+    private static FunctionalSql fsql;
+
+    @BeforeClass
+    public static void setUp() throws java.sql.SQLException {
+        con = java.sql.DriverManager.getConnection(URL);
+        try (final java.sql.Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE TABLE t AS SELECT x / 10 AS a, MOD(x, 10) AS b FROM SYSTEM_RANGE(0, 999)");
+        }
+        fsql = new FunctionalSql(() -> java.sql.DriverManager.getConnection(URL));
+    }
+
+    @AfterClass
+    public static void tearDown() throws java.sql.SQLException {
+        con.close();
+    }
+
+    @Test
+    public void testPageSqlEndsWithLimit() {
+        final String sql = KeysetPageSource.pageSql("SELECT a, b FROM t", java.util.Arrays.asList("a", "b"), true, PagingOptions.STANDARD_LIMIT_CLAUSE);
+        assertEquals("SELECT * FROM (SELECT a, b FROM t) keyset_page WHERE (a > :keyset_0) OR (a = :keyset_0 AND b > :keyset_1) ORDER BY a, b FETCH FIRST :keyset_limit ROWS ONLY", sql);
+    }
+
+    @Test
+    public void testResumeFromToken() throws java.sql.SQLException {
+        final KeysetCheckpoint checkpoint = KeysetCheckpoint.start();
+        final java.util.List<String> keys = java.util.Arrays.asList("a", "b");
+        final java.util.List<Long> first;
+        try (final java.util.stream.Stream<Long> stream = fsql.keysetStream("SELECT a, b FROM t", java.util.Collections.emptyMap(), keys, 64, rs -> rs.getLong("a") * 10 + rs.getLong("b"), checkpoint)) {
+            first = stream.limit(150).collect(java.util.stream.Collectors.toList());
+        }
+        final KeysetCheckpoint resumed = KeysetCheckpoint.fromToken(checkpoint.toToken());
+        final java.util.List<Long> rest;
+        try (final java.util.stream.Stream<Long> stream = fsql.keysetStream("SELECT a, b FROM t", java.util.Collections.emptyMap(), keys, new PagingOptions().withPageSize(64).withPrefetchDepth(0), rs -> rs.getLong("a") * 10 + rs.getLong("b"), resumed)) {
+            rest = stream.collect(java.util.stream.Collectors.toList());
+        }
+        assertEquals(150, first.size());
+        assertEquals(850, rest.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Long.valueOf(i), i < 150 ? first.get(i) : rest.get(i - 150));
+        }
+    }
+
+    @Test
+    public void testTokenRoundTrip() {
+        final java.sql.Timestamp timestamp = java.sql.Timestamp.valueOf("2015-06-30 23:59:59.123456789");
+        final Object[] key = {null, "ключ", true, (byte) 1, (short) 2, 3, 4L, 5.5f, 6.5d,
+            new java.math.BigInteger("123456789012345678901234567890"), new java.math.BigDecimal("-1234.5600"),
+            java.sql.Date.valueOf("2015-06-30"), java.sql.Time.valueOf("12:34:56"), timestamp,
+            java.time.LocalDate.of(1969, 12, 31), java.time.LocalTime.of(1, 2, 3, 4), java.time.LocalDateTime.of(2015, 6, 30, 1, 2, 3, 4),
+            java.time.OffsetDateTime.of(2015, 6, 30, 1, 2, 3, 4, java.time.ZoneOffset.ofHours(2)), java.time.Instant.ofEpochSecond(-1, 5),
+            java.util.UUID.randomUUID()};
+        final Object[] decoded = KeysetCheckpoint.fromToken(KeysetCheckpoint.after(key).toToken()).getLastKey();
+        assertArrayEquals(key, decoded);
+        assertEquals(timestamp.getNanos(), ((java.sql.Timestamp) decoded[13]).getNanos());
+        final byte[] bytes = {1, 2, 3};
+        assertArrayEquals(bytes, (byte[]) KeysetCheckpoint.fromToken(KeysetCheckpoint.after((Object) bytes).toToken()).getLastKey()[0]);
+    }
+
+    @Test
+    public void testRejectsUnknownTypesAndTokens() {
+        try {
+            KeysetCheckpoint.after(new Object()).toToken();
+            throw new AssertionError("expected SQLDataAccessException");
+        } catch (SQLDataAccessException ex) {
+            assertTrue(ex.getMessage().contains("unsupported key type"));
+        }
+        try {
+            KeysetCheckpoint.fromToken("AQABFQ");
+            throw new AssertionError("expected SQLDataAccessException");
+        } catch (SQLDataAccessException ex) {
+            assertTrue(ex.getMessage().contains("unknown type tag"));
+        }
+    }
+}
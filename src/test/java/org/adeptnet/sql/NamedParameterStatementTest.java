@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class NamedParameterStatementTest {
+
+    private static java.sql.Connection con;
+
+    @BeforeClass
+    public static void setUp() throws java.sql.SQLException {
+        con = java.sql.DriverManager.getConnection("jdbc:h2:mem:named;DB_CLOSE_DELAY=-1");
+        try (final java.sql.Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE TABLE t AS SELECT x AS id FROM SYSTEM_RANGE(1, 10)");
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() throws java.sql.SQLException {
+        con.close();
+    }
+
+    @Test
+    public void testInListPaddedToBucket() throws java.sql.SQLException {
+        final java.util.Map<String, Object> params = java.util.Collections.singletonMap("ids", java.util.Arrays.asList(2L, 3L, 5L));
+        try (final NamedParameterStatement stmt = new NamedParameterStatement(con, "SELECT COUNT(*) FROM t WHERE id NOT IN (:ids)", params)) {
+            stmt.setAll(params);
+            try (final java.sql.ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                assertEquals(7, rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyInListRejected() throws java.sql.SQLException {
+        final java.util.Map<String, Object> params = java.util.Collections.singletonMap("ids", java.util.Collections.emptyList());
+        try {
+            new NamedParameterStatement(con, "SELECT COUNT(*) FROM t WHERE id NOT IN (:ids)", params).close();
+            throw new AssertionError("expected SQLException");
+        } catch (java.sql.SQLException ex) {
+            assertTrue(ex.getMessage().contains("empty"));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class RefreshableSnapshotTest {
+
+    private static final String URL = "jdbc:h2:mem:refresh;DB_CLOSE_DELAY=-1";
+    private static final String SQL = "SELECT id, name, version, deleted FROM items";
+
+    private java.sql.Connection con;
+    private FunctionalSql fsql;
+
+    @Before
+    public void setUp() throws java.sql.SQLException {
+        con = java.sql.DriverManager.getConnection(URL);
+        try (final java.sql.Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE TABLE items AS SELECT x AS id, CONCAT('item', x) AS name, CAST(1 AS BIGINT) AS version, FALSE AS deleted FROM SYSTEM_RANGE(1, 2000)");
+        }
+        fsql = new FunctionalSql(() -> java.sql.DriverManager.getConnection(URL));
+    }
+
+    @After
+    public void tearDown() throws java.sql.SQLException {
+        try (final java.sql.Statement stmt = con.createStatement()) {
+            stmt.execute("DROP TABLE items");
+        }
+        con.close();
+    }
+
+    private java.util.Map<Long, String> expected() throws java.sql.SQLException {
+        return fsql.executeQuery("SELECT id, name FROM items WHERE NOT deleted", rs -> {
+            final java.util.Map<Long, String> rows = new java.util.TreeMap<>();
+            while (rs.next()) {
+                rows.put(rs.getLong(1), rs.getString(2));
+            }
+            return rows;
+        });
+    }
+
+    private static java.util.Map<Long, String> actual(final SnapshotTable table) {
+        final java.util.Map<Long, String> rows = new java.util.TreeMap<>();
+        table.rows().forEach(row -> {
+            if (rows.put(table.getLong(row, 1), table.getString(row, 2)) != null) {
+                throw new AssertionError(String.format("duplicate key %d", table.getLong(row, 1)));
+            }
+        });
+        assertEquals(rows.size(), table.getRowCount());
+        return rows;
+    }
+
+    @Test
+    public void testRandomChangesMatchTheDatabase() throws java.sql.SQLException {
+        final RefreshableSnapshot snapshot = fsql.refreshableSnapshot(SQL, "id", "version", "deleted");
+        final java.util.Random random = new java.util.Random(42);
+        long version = 1;
+        for (int round = 0; round < 60; round++) {
+            final int changes = round % 10 == 9 ? 400 : 1 + random.nextInt(40);
+            for (int i = 0; i < changes; i++) {
+                final long id = 1 + random.nextInt(2500);
+                final int action = random.nextInt(10);
+                if (random.nextBoolean()) {
+                    version++;
+                }
+                if (action == 0) {
+                    fsql.execute(String.format("UPDATE items SET deleted = TRUE, version = %d WHERE id = %d", version, id));
+                } else {
+                    fsql.execute(String.format("MERGE INTO items (id, name, version, deleted) KEY (id) VALUES (%d, 'r%d-%d', %d, FALSE)", id, round, i, version));
+                }
+            }
+            assertEquals(expected(), actual(snapshot.refresh()));
+        }
+    }
+
+    @Test
+    public void testLateRowWithTheSameVersion() throws java.sql.SQLException {
+        final RefreshableSnapshot snapshot = fsql.refreshableSnapshot(SQL, "id", "version", "deleted");
+        fsql.execute("UPDATE items SET name = 'first', version = 5 WHERE id = 1");
+        assertEquals("first", snapshot.refresh().getString(snapshot.get().filterEquals(1, 1L).findFirst().getAsInt(), 2));
+        fsql.execute("UPDATE items SET name = 'late', version = 5 WHERE id = 2");
+        assertEquals(expected(), actual(snapshot.refresh()));
+        final SnapshotTable table = snapshot.get();
+        assertSame(table, snapshot.refresh());
+        assertEquals(Long.valueOf(5), snapshot.getHighWaterMark());
+    }
+}
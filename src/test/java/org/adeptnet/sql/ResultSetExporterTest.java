@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class ResultSetExporterTest {
+
+    private static final String URL = "jdbc:h2:mem:export;DB_CLOSE_DELAY=-1";
+    private static final String SQL = "SELECT id, amount, name FROM exports ORDER BY id";
+
+    private static java.sql.Connection con;
+    private static FunctionalSql fsql;
+    private static String expected;
+
+    @BeforeClass
+    public static void setUpClass() throws java.sql.SQLException {
+        con = java.sql.DriverManager.getConnection(URL);
+        try (final java.sql.Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE TABLE exports (id INT PRIMARY KEY, amount DECFLOAT, name VARCHAR(20))");
+            stmt.execute("INSERT INTO exports VALUES (1, 12.5, 'a'), (2, 1E+300, 'b'), (3, NULL, 'c,d')");
+        }
+        fsql = new FunctionalSql(() -> java.sql.DriverManager.getConnection(URL));
+        final StringBuilder sb = new StringBuilder("ID,AMOUNT,NAME\n1,12.5,a\n2,1");
+        for (int i = 0; i < 300; i++) {
+            sb.append('0');
+        }
+        expected = sb.append(",b\n3,,\"c,d\"\n").toString();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws java.sql.SQLException {
+        con.close();
+    }
+
+    @Test
+    public void testLongDecimalExceedsTheBuffer() throws java.sql.SQLException {
+        final java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        final ExportResult result = fsql.exportCsv(SQL, java.nio.channels.Channels.newChannel(out), new ExportOptions().withBufferSize(64));
+        assertEquals(3, result.getRows());
+        assertEquals(expected, new String(out.toByteArray(), java.nio.charset.StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testGzip() throws java.sql.SQLException, java.io.IOException {
+        final java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        final ExportResult result = fsql.exportCsv(SQL, java.nio.channels.Channels.newChannel(out), new ExportOptions().withBufferSize(64).withGzip(true));
+        assertEquals(out.size(), result.getBytes());
+        final java.io.ByteArrayOutputStream plain = new java.io.ByteArrayOutputStream();
+        try (final java.util.zip.GZIPInputStream in = new java.util.zip.GZIPInputStream(new java.io.ByteArrayInputStream(out.toByteArray()))) {
+            final byte[] chunk = new byte[256];
+            for (int read; (read = in.read(chunk)) > 0;) {
+                plain.write(chunk, 0, read);
+            }
+        }
+        assertEquals(expected, new String(plain.toByteArray(), java.nio.charset.StandardCharsets.UTF_8));
+    }
+}
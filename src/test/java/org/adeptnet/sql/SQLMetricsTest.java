@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class SQLMetricsTest {
+
+    @Test
+    public void testSampledDrainsWhileCancelling() throws java.sql.SQLException {
+        final String url = "jdbc:h2:mem:metrics;DB_CLOSE_DELAY=-1";
+        try (final java.sql.Connection con = java.sql.DriverManager.getConnection(url); final java.sql.Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE TABLE t AS SELECT x AS id FROM SYSTEM_RANGE(1, 1000)");
+        }
+        final FunctionalSql fsql = new FunctionalSql(() -> java.sql.DriverManager.getConnection(url));
+        fsql.setCancelOnEarlyClose(true);
+        assertEquals(0, fsql.getMetrics().getDrainSampleInterval());
+        for (int i = 0; i < 4; i++) {
+            try (final java.util.stream.Stream<Long> stream = fsql.stream("SELECT id FROM t", rs -> rs.getLong(1))) {
+                assertEquals(Long.valueOf(1), stream.findFirst().get());
+            }
+        }
+        assertEquals(4, fsql.getMetrics().getCancelledCloses());
+        assertEquals(0, fsql.getMetrics().getDrainedCloses());
+        fsql.getMetrics().setDrainSampleInterval(4);
+        for (int i = 0; i < 8; i++) {
+            try (final java.util.stream.Stream<Long> stream = fsql.stream("SELECT id FROM t", rs -> rs.getLong(1))) {
+                assertEquals(Long.valueOf(1), stream.findFirst().get());
+            }
+        }
+        assertEquals(10, fsql.getMetrics().getCancelledCloses());
+        assertEquals(2, fsql.getMetrics().getDrainedCloses());
+    }
+}
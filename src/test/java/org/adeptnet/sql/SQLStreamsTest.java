@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class SQLStreamsTest {
+
+    private static final RowSerializer<Long> LONGS = new RowSerializer<Long>() {
+        @Override
+        public void write(final Long row, final java.io.DataOutput out) throws java.io.IOException {
+            out.writeLong(row);
+        }
+
+        @Override
+        public Long read(final java.io.DataInput in) throws java.io.IOException {
+            return in.readLong();
+        }
+    };
+
+    private static long files(final java.nio.file.Path directory) throws java.io.IOException {
+        try (final java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static java.util.Map<Long, String> groups(final java.util.stream.Stream<AggregateGroup> stream) {
+        try (final java.util.stream.Stream<AggregateGroup> groups = stream) {
+            final java.util.Map<Long, String> result = new java.util.TreeMap<>();
+            groups.forEach(group -> result.put(group.getKey(), String.format("%d %d %d %.1f", group.getLong(0), group.getLong(1), group.getLong(2), group.getDouble(3))));
+            return result;
+        }
+    }
+
+    @Test
+    public void testGroupAggregateSpillsLikeInMemory() {
+        final java.util.List<Aggregate<? super Long>> aggregates = java.util.Arrays.asList(
+                Aggregate.count(),
+                Aggregate.<Long>sumLong(value -> value),
+                Aggregate.<Long>maxLong(value -> value),
+                Aggregate.<Long>sumDouble(value -> value / 2.0));
+        final java.util.Map<Long, String> expected = groups(SQLStreams.groupAggregate(java.util.stream.LongStream.range(0, 20000).boxed(), value -> value % 997, aggregates));
+        final java.util.Map<Long, String> spilled = groups(SQLStreams.groupAggregate(java.util.stream.LongStream.range(0, 20000).boxed(), value -> value % 997, new SpillOptions().withMemoryBudget(100).withPartitions(4), aggregates));
+        assertEquals(997, expected.size());
+        assertEquals("21 209370 19940 104685.0", expected.get(0L));
+        assertEquals(expected, spilled);
+    }
+
+    @Test
+    public void testSortedExternallyMergesManyRuns() throws java.io.IOException {
+        final java.nio.file.Path directory = java.nio.file.Files.createTempDirectory("sql-sort");
+        try {
+            final java.util.List<Long> rows = new java.util.Random(7).longs(10000, 0, 5000).boxed().collect(java.util.stream.Collectors.toList());
+            final java.util.List<Long> expected = new java.util.ArrayList<>(rows);
+            expected.sort(null);
+            final SpillOptions options = new SpillOptions().withMemoryBudget(100).withMergeFanIn(4).withBufferSize(512).withTempDirectory(directory);
+            try (final java.util.stream.Stream<Long> sorted = SQLStreams.sortedExternally(rows.stream(), java.util.Comparator.naturalOrder(), LONGS, options)) {
+                assertEquals(expected, sorted.collect(java.util.stream.Collectors.toList()));
+            }
+            assertEquals(0, files(directory));
+        } finally {
+            java.nio.file.Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testHashJoinSpillsLikeInMemory() throws java.io.IOException {
+        final java.nio.file.Path directory = java.nio.file.Files.createTempDirectory("sql-join");
+        try {
+            final SpillOptions options = new SpillOptions().withMemoryBudget(50).withPartitions(8).withTempDirectory(directory);
+            final java.util.List<String> expected;
+            try (final java.util.stream.Stream<String> joined = SQLStreams.hashJoin(java.util.stream.LongStream.range(0, 1000).boxed(), java.util.stream.LongStream.range(0, 3000).boxed(), value -> value, value -> value % 1500, (build, probe) -> build + ":" + probe)) {
+                expected = joined.sorted().collect(java.util.stream.Collectors.toList());
+            }
+            try (final java.util.stream.Stream<String> joined = SQLStreams.hashJoin(java.util.stream.LongStream.range(0, 1000).boxed(), java.util.stream.LongStream.range(0, 3000).boxed(), value -> value, value -> value % 1500, (build, probe) -> build + ":" + probe, LONGS, LONGS, options)) {
+                assertEquals(expected, joined.sorted().collect(java.util.stream.Collectors.toList()));
+            }
+            assertEquals(2000, expected.size());
+            assertEquals(0, files(directory));
+        } finally {
+            java.nio.file.Files.delete(directory);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class SnapshotTableTest {
+
+    private static final String URL = "jdbc:h2:mem:snapshot;DB_CLOSE_DELAY=-1";
+
+    private static java.sql.Connection con;
+    private static FunctionalSql fsql;
+
+    @BeforeClass
+    public static void setUp() throws java.sql.SQLException {
+        con = java.sql.DriverManager.getConnection(URL);
+        try (final java.sql.Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE TABLE t (id NUMERIC(12, 0), amount DECIMAL(10, 2), status VARCHAR(10), code VARCHAR(20))");
+            stmt.execute("INSERT INTO t SELECT x, x / 100.0, CASE WHEN MOD(x, 3) = 0 THEN 'open' ELSE 'closed' END, CASE WHEN MOD(x, 7) = 0 THEN NULL ELSE CONCAT('c', x) END FROM SYSTEM_RANGE(1, 10000)");
+        }
+        fsql = new FunctionalSql(() -> java.sql.DriverManager.getConnection(URL));
+    }
+
+    @AfterClass
+    public static void tearDown() throws java.sql.SQLException {
+        con.close();
+    }
+
+    @Test
+    public void testColumnTypes() throws java.sql.SQLException {
+        final SnapshotTable table = fsql.snapshot("SELECT id, amount, status, code FROM t ORDER BY id");
+        assertEquals(10000, table.getRowCount());
+        assertTrue(table.column(1) instanceof SnapshotTable.LongColumn);
+        assertEquals(Long.valueOf(42), table.getObject(41, 1));
+        assertEquals(50005000L, table.longs(1).sum());
+        assertTrue(table.column(2) instanceof SnapshotTable.ObjectColumn);
+        assertEquals(new java.math.BigDecimal("0.42"), table.getObject(41, 2));
+        assertNotNull(((SnapshotTable.StringColumn) table.column(3)).dictionary);
+        assertNull(((SnapshotTable.StringColumn) table.column(4)).dictionary);
+    }
+
+    @Test
+    public void testPlainStringsFilter() throws java.sql.SQLException {
+        final SnapshotTable table = fsql.snapshot("SELECT id, amount, status, code FROM t ORDER BY id");
+        assertEquals("c41", table.getString(40, 4));
+        assertNull(table.getObject(41, 4));
+        assertTrue(table.isNull(41, 4));
+        assertEquals(8572, table.filterString(4, value -> value.startsWith("c")).count());
+        assertEquals(1, table.filterEquals(4, "c41").count());
+        assertEquals(1428, table.filterEquals(4, null).count());
+        assertEquals(3333, table.filterEquals(3, "open").count());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * Measures the bytes allocated by the stream path against plain JDBC on the
+ * same Connection, so that only the allocations of FunctionalSql count
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class StreamAllocationTest {
+
+    private static final int ROWS = 100_000;
+    private static final int QUERIES = 2_000;
+    private static final Object MARKER = new Object();
+
+    private static java.sql.Connection con;
+    private static FunctionalSql fsql;
+
+    @BeforeClass
+    public static void setUp() throws java.sql.SQLException {
+        con = java.sql.DriverManager.getConnection("jdbc:h2:mem:allocation;DB_CLOSE_DELAY=-1");
+        try (final java.sql.Statement stmt = con.createStatement()) {
+            stmt.execute(String.format("CREATE TABLE t AS SELECT x AS id FROM SYSTEM_RANGE(1, %d)", ROWS));
+        }
+        final java.sql.Connection shared = NonClosingConnection.of(con);
+        fsql = new FunctionalSql(() -> shared);
+    }
+
+    @AfterClass
+    public static void tearDown() throws java.sql.SQLException {
+        NonClosingConnection.release(con);
+        con.close();
+    }
+
+    @Test
+    public void testNoAllocationPerRow() throws java.sql.SQLException {
+        final String sql = "SELECT id FROM t";
+        for (int i = 0; i < 20; i++) {
+            assertEquals(ROWS, plain(sql));
+            assertEquals(ROWS, streamed(sql));
+        }
+        final long plainBytes = allocated(() -> plain(sql));
+        final long streamBytes = allocated(() -> streamed(sql));
+        final double perRow = (double) (streamBytes - plainBytes) / ROWS;
+        assertTrue(String.format("%.2f bytes per row", perRow), perRow < 1);
+    }
+
+    @Test
+    public void testBoundedAllocationPerQuery() throws java.sql.SQLException {
+        final String sql = "SELECT id FROM t WHERE id = 42";
+        final SQLSupplier<Long> plainQueries = () -> {
+            long count = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                count += plain(sql);
+            }
+            return count;
+        };
+        final SQLSupplier<Long> streamedQueries = () -> {
+            long count = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                count += streamed(sql);
+            }
+            return count;
+        };
+        for (int i = 0; i < 20; i++) {
+            plainQueries.get();
+            streamedQueries.get();
+        }
+        final long plainBytes = allocated(plainQueries);
+        final long streamBytes = allocated(streamedQueries);
+        final long perQuery = (streamBytes - plainBytes) / QUERIES;
+        assertTrue(String.format("%d bytes per query", perQuery), perQuery < 512);
+    }
+
+    private static long plain(final String sql) throws java.sql.SQLException {
+        long count = 0;
+        try (final java.sql.Statement stmt = con.createStatement(); final java.sql.ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long streamed(final String sql) throws java.sql.SQLException {
+        try (final java.util.stream.Stream<Object> stream = fsql.stream(sql, rs -> MARKER)) {
+            return stream.count();
+        }
+    }
+
+    private static long allocated(final SQLSupplier<Long> work) throws java.sql.SQLException {
+        final java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        final long id = Thread.currentThread().getId();
+        final long before = threads.getThreadAllocatedBytes(id);
+        work.get();
+        return threads.getThreadAllocatedBytes(id) - before;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class TailStreamTest {
+
+    private static final String URL = "jdbc:h2:mem:tail;DB_CLOSE_DELAY=-1";
+
+    private static java.sql.Connection con;
+    private static FunctionalSql fsql;
+
+    @BeforeClass
+    public static void setUpClass() throws java.sql.SQLException {
+        con = java.sql.DriverManager.getConnection(URL);
+        try (final java.sql.Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE TABLE outbox (id BIGINT PRIMARY KEY, payload VARCHAR(20))");
+        }
+        fsql = new FunctionalSql(() -> java.sql.DriverManager.getConnection(URL));
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws java.sql.SQLException {
+        con.close();
+    }
+
+    @Test
+    public void testTailFollowsInsertsAndClosesFromAnotherThread() throws InterruptedException {
+        final int rows = 50;
+        final java.util.List<Long> seen = java.util.Collections.synchronizedList(new java.util.ArrayList<>());
+        final java.util.concurrent.CountDownLatch all = new java.util.concurrent.CountDownLatch(rows);
+        final java.util.concurrent.atomic.AtomicReference<Throwable> failure = new java.util.concurrent.atomic.AtomicReference<>();
+        final java.util.stream.Stream<DetachedRow> stream = fsql.tail("SELECT id, payload FROM outbox", "id", java.time.Duration.ofMillis(5));
+        final Thread consumer = new Thread(() -> {
+            try {
+                stream.forEach(row -> {
+                    seen.add(row.getLong(1));
+                    all.countDown();
+                });
+            } catch (RuntimeException ex) {
+                failure.set(ex);
+            }
+        });
+        final Thread producer = new Thread(() -> {
+            try {
+                for (int i = 1; i <= rows; i++) {
+                    fsql.execute(String.format("INSERT INTO outbox (id, payload) VALUES (%d, 'p%d')", i, i));
+                    if (i % 7 == 0) {
+                        java.util.concurrent.locks.LockSupport.parkNanos(20_000_000L);
+                    }
+                }
+            } catch (java.sql.SQLException ex) {
+                failure.set(ex);
+            }
+        });
+        consumer.start();
+        producer.start();
+        assertTrue(all.await(30, java.util.concurrent.TimeUnit.SECONDS));
+        producer.join();
+        stream.close();
+        consumer.join(5000);
+        assertFalse(consumer.isAlive());
+        assertEquals(null, failure.get());
+        final java.util.List<Long> expected = new java.util.ArrayList<>();
+        for (long i = 1; i <= rows; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, seen);
+    }
+
+    @Test(expected = SQLDataAccessException.class)
+    public void testNonTransientFailureEndsTheTail() {
+        try (final java.util.stream.Stream<DetachedRow> stream = fsql.tail("SELECT id FROM missing", "id", java.time.Duration.ofMillis(5))) {
+            stream.findFirst();
+        }
+    }
+
+    @Test
+    public void testTransientFailures() {
+        assertTrue(TailPageSource.isTransient(new java.sql.SQLTransientConnectionException("timeout")));
+        assertTrue(TailPageSource.isTransient(new SQLDataAccessException("wrapped", new java.sql.SQLException("link failure", "08S01"))));
+        assertFalse(TailPageSource.isTransient(new java.sql.SQLSyntaxErrorException("bad", "42000")));
+        assertFalse(TailPageSource.isTransient(new SQLDataAccessException("plain")));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.adeptnet.sql;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Francois Steyn - Adept Internet (PTY) LTD (francois.s@adept.co.za)
+ */
+public class WriteBehindQueueTest {
+
+    private static final String URL = "jdbc:h2:mem:writebehind;DB_CLOSE_DELAY=-1";
+
+    private static java.sql.Connection con;
+    private static FunctionalSql fsql;
+
+    @BeforeClass
+    public static void setUp() throws java.sql.SQLException {
+        con = java.sql.DriverManager.getConnection(URL);
+        fsql = new FunctionalSql(() -> java.sql.DriverManager.getConnection(URL));
+    }
+
+    @AfterClass
+    public static void tearDown() throws java.sql.SQLException {
+        con.close();
+    }
+
+    @Test
+    public void testMergedUpdatesCompleteWithTheLastCount() throws Exception {
+        fsql.execute("CREATE TABLE counters (id INT PRIMARY KEY, total INT)");
+        fsql.execute("INSERT INTO counters VALUES (1, 0), (2, 0)");
+        try (final WriteBehindQueue queue = fsql.writeBehind().withFlushInterval(java.time.Duration.ofSeconds(10)).withMergeKey(params -> params.get("id"))) {
+            final java.util.List<java.util.concurrent.CompletableFuture<Integer>> futures = new java.util.ArrayList<>();
+            for (int i = 1; i <= 10; i++) {
+                futures.add(queue.submit("UPDATE counters SET total = :total WHERE id = :id", params(1 + i % 2, i)));
+            }
+            queue.flush();
+            for (final java.util.concurrent.CompletableFuture<Integer> future : futures) {
+                assertEquals(Integer.valueOf(1), future.get(10, java.util.concurrent.TimeUnit.SECONDS));
+            }
+        }
+        assertEquals(Integer.valueOf(19), fsql.executeQuery("SELECT SUM(total) FROM counters", rs -> rs.next() ? rs.getInt(1) : 0));
+    }
+
+    @Test
+    public void testErrorInBatchDoesNotStopTheQueue() throws Exception {
+        fsql.execute("CREATE TABLE items (id INT)");
+        try (final WriteBehindQueue queue = fsql.writeBehind().withFlushInterval(java.time.Duration.ofMillis(1)).withMergeKey(params -> new Object() {
+            @Override
+            public int hashCode() {
+                if (params.get("id").equals(1)) {
+                    throw new AssertionError("failing key");
+                }
+                return super.hashCode();
+            }
+        })) {
+            try {
+                queue.submit("INSERT INTO items VALUES (:id)", params(1, 0)).get(10, java.util.concurrent.TimeUnit.SECONDS);
+                throw new IllegalStateException("expected AssertionError");
+            } catch (java.util.concurrent.ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof AssertionError);
+            }
+            assertEquals(Integer.valueOf(1), queue.submit("INSERT INTO items VALUES (:id)", params(2, 0)).get(10, java.util.concurrent.TimeUnit.SECONDS));
+        }
+        assertEquals(Integer.valueOf(2), fsql.executeQuery("SELECT SUM(id) FROM items", rs -> rs.next() ? rs.getInt(1) : 0));
+    }
+
+    private static java.util.Map<String, Object> params(final int id, final int total) {
+        final java.util.Map<String, Object> params = new java.util.HashMap<>();
+        params.put("id", id);
+        params.put("total", total);
+        return params;
+    }
+}